@@ -59,6 +59,12 @@ public final class R {
         public static final int mode_view=0x7f04000c;
         public static final int new_scene=0x7f040003;
         public static final int preferences=0x7f040006;
+        public static final int preferences_approximate_rotations=0x7f040024;
+        public static final int preferences_compress_scenes=0x7f040025;
+        public static final int preferences_deterministic=0x7f040023;
+        public static final int record_simulation=0x7f04001f;
+        public static final int recording_error=0x7f040022;
+        public static final int recording_saved=0x7f040021;
         public static final int save_scene=0x7f040005;
         public static final int scene_load_error=0x7f04001e;
         public static final int scene_loaded=0x7f04001d;
@@ -66,5 +72,6 @@ public final class R {
         public static final int scene_saved=0x7f04001b;
         public static final int select_scene_mode=0x7f04000b;
         public static final int simulate=0x7f040001;
+        public static final int stop_recording=0x7f040020;
     }
 }
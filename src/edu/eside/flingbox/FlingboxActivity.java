@@ -19,13 +19,17 @@
 package edu.eside.flingbox;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
 
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.DialogInterface;
+import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
@@ -43,15 +47,20 @@ import android.widget.ImageButton;
 import android.widget.Toast;
 import android.widget.ZoomControls;
 
+import edu.eside.flingbox.bodies.Body;
+import edu.eside.flingbox.io.CompressedSceneFile;
+import edu.eside.flingbox.io.SceneFile;
+import edu.eside.flingbox.io.SceneLoader;
+import edu.eside.flingbox.physics.SimulationRecorder;
 import edu.eside.flingbox.scene.Scene;
-import edu.eside.flingbox.xml.XmlExporter;
-import edu.eside.flingbox.xml.XmlImporter;
 
 /**
  * Flingbox main activity. Shows scene at full screen.
  */
 public class FlingboxActivity extends Activity {
     private final static String KEY_FIRST_BOOT_DONE = "FIRST_BOOT_DONE";
+    /** Name of settings kept between sessions */
+    private final static String SETTINGS_NAME = "flingbox";
 
     // TODO Play and pause two menus separated
     private final static int MENU_PLAY_PAUSE = 0;
@@ -61,11 +70,24 @@ public class FlingboxActivity extends Activity {
     private final static int MENU_NEW_SCENE = 10;
     private final static int MENU_LOAD_SCENE = 11;
     private final static int MENU_SAVE_SCENE = 12;
+    private final static int MENU_RECORD = 13;
+
+    /** Scene files, relative to external storage */
+    private final static String SCENE_FILE = "flingbox/scene.fbx";
+    private final static String SCENE_XML_FILE = "flingbox/scene.xml";
+    /** Simulation recording, relative to external storage */
+    private final static String RECORDING_FILE = "flingbox/recording.fbr";
 
     private ImageButton mModeButton;
 
     private GLSurfaceView mSurface;
     private Scene mScene;
+    /** Loader of current scene, null if not loading */
+    private SceneLoader mSceneLoader;
+    /** Thread converting a XML scene before loading it, null if none */
+    private volatile Thread mSceneMigration;
+    /** Recorder of current session, null if not recording */
+    private SimulationRecorder mRecorder;
 
     /**
      * Called when the activity is first created.
@@ -80,8 +102,9 @@ public class FlingboxActivity extends Activity {
         setContentView(R.layout.main);
         mSurface = (GLSurfaceView) findViewById(R.id.gl_surface);
 
+        Preferences.onLoadSettings(getSharedPreferences(SETTINGS_NAME, MODE_PRIVATE));
         mScene = new Scene(this);
-        mSurface.setRenderer(mScene.getSceneRenderer());
+        mScene.getSceneRenderer().attachSurface(mSurface);
 
         mScene.setSceneMode(Scene.SCENE_MODE_DRAWING);
 
@@ -138,6 +161,50 @@ public class FlingboxActivity extends Activity {
         chioceDialog.show();
     }
 
+    /**
+     * Shows simulation settings. Changes are applied and 
+     * saved as soon as they are checked.
+     */
+    private void showPreferences() {
+        final CharSequence[] items = { getText(R.string.preferences_deterministic),
+                getText(R.string.preferences_approximate_rotations),
+                getText(R.string.preferences_compress_scenes) };
+        final boolean[] checked = { Preferences.deterministicSimulation,
+                Preferences.approximateRotations,
+                Preferences.compressSavedScenes };
+
+        final AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.preferences);
+        builder.setMultiChoiceItems(items, checked,
+                new DialogInterface.OnMultiChoiceClickListener() {
+                    public void onClick(DialogInterface dialog, int item,
+                            boolean isChecked) {
+                        switch (item) {
+                        case 0:
+                            Preferences.deterministicSimulation = isChecked;
+                            /* Recorder keeps deterministic mode until stopped */
+                            if (mRecorder == null)
+                                mScene.getScenePhysics().setDeterministic(isChecked);
+                            break;
+                        case 1:
+                            /* Ignored by physics while deterministic */
+                            Preferences.approximateRotations = isChecked;
+                            mScene.getScenePhysics().setApproximateRotations(isChecked);
+                            break;
+                        case 2:
+                            /* Used by next save, both formats are loaded */
+                            Preferences.compressSavedScenes = isChecked;
+                            break;
+                        }
+                        final SharedPreferences.Editor settings = getSharedPreferences(
+                                SETTINGS_NAME, MODE_PRIVATE).edit();
+                        Preferences.onSaveSettings(settings);
+                        settings.commit();
+                    }
+                });
+        builder.create().show();
+    }
+
     /**
      * Creates the menu items
      */
@@ -153,7 +220,18 @@ public class FlingboxActivity extends Activity {
         menu.add(10, MENU_LOAD_SCENE, 5, R.string.load_scene);
         menu.add(10, MENU_SAVE_SCENE, 6, R.string.save_scene).setIcon(
                 android.R.drawable.ic_menu_save);
+        menu.add(10, MENU_RECORD, 7, R.string.record_simulation);
+
+        return true;
+    }
 
+    /**
+     * Updates recording item's title
+     */
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(MENU_RECORD).setTitle(
+                mRecorder != null ? R.string.stop_recording : R.string.record_simulation);
         return true;
     }
 
@@ -169,11 +247,15 @@ public class FlingboxActivity extends Activity {
                 mScene.getScenePhysics().startSimulation();
             return true;
         case MENU_PREFERENCES:
+            showPreferences();
             return true;
         case MENU_HELP:
             showHelp();
             return true;
         case MENU_NEW_SCENE:
+            if (mSceneLoader != null)
+                mSceneLoader.cancel();
+            mSceneMigration = null;
             mSurface.onPause();
             mScene.getScenePhysics().stopSimulation();
             mScene.clearScene();
@@ -186,56 +268,126 @@ public class FlingboxActivity extends Activity {
         case MENU_SAVE_SCENE:
             saveScene();
             return true;
+        case MENU_RECORD:
+            if (mRecorder != null)
+                stopRecording();
+            else
+                startRecording();
+            return true;
         }
         return false;
     }
 
+    /**
+     * Loads default scene in background. Bodies are added to
+     * scene while file is being read.
+     * 
+     * @return false if there is no scene to load
+     */
     private boolean loadScene() {
-        final File infile = new File(Environment.getExternalStorageDirectory(),
-                "flingbox/scene.xml");
-        final FileReader inFileReader;
-        boolean readSuccess = false;
+        final File binaryFile = new File(
+                Environment.getExternalStorageDirectory(), SCENE_FILE);
+        final File xmlFile = new File(
+                Environment.getExternalStorageDirectory(), SCENE_XML_FILE);
+        if (mSceneLoader != null)
+            mSceneLoader.cancel();
+        mSceneMigration = null;
         mScene.clearScene();
         mScene.getScenePhysics().stopSimulation();
-        try {
-            if (!infile.exists())
-                return false;
-            inFileReader = new FileReader(infile);
-            readSuccess = XmlImporter.importXml(inFileReader, mScene
-                    .getParser());
-            inFileReader.close();
-        } catch (Exception e) {
-            Log.e("flingbox", "Error loading scene: " + e);
-            e.printStackTrace();
-            readSuccess = false;
-        }
-        if (readSuccess)
-            Toast.makeText(this, R.string.scene_loaded, Toast.LENGTH_SHORT)
-                    .show();
-        else
+
+        if (binaryFile.exists())
+            mSceneLoader = new SceneLoader(binaryFile, false, mSceneLoadListener);
+        else if (xmlFile.exists()) { // Scenes saved by older versions
+            migrateScene(xmlFile, binaryFile);
+            return true;
+        } else {
             Toast.makeText(this, R.string.scene_load_error, Toast.LENGTH_SHORT)
                     .show();
-        return readSuccess;
+            return false;
+        }
+        mSceneLoader.start();
+        return true;
+    }
+
+    /**
+     * Converts a XML scene saved by older versions into a binary 
+     * one in background, then loads it. XML scene is kept, but 
+     * binary one is loaded from now on. If conversion fails, XML 
+     * scene is loaded.
+     */
+    private void migrateScene(final File xmlFile, final File binaryFile) {
+        final Thread migration = new Thread(new Runnable() {
+            public void run() {
+                boolean converted = false;
+                try {
+                    final Reader xml = new FileReader(xmlFile);
+                    try {
+                        converted = SceneFile.fromXml(xml, binaryFile);
+                    } finally {
+                        xml.close();
+                    }
+                } catch (Exception ex) {
+                    Log.e("flingbox", "Error converting XML scene: " + ex);
+                    binaryFile.delete();
+                }
+
+                final Thread current = Thread.currentThread();
+                final boolean isBinary = converted;
+                runOnUiThread(new Runnable() {
+                    public void run() {
+                        if (mSceneMigration != current)
+                            return; // Canceled
+                        mSceneMigration = null;
+                        mSceneLoader = new SceneLoader(isBinary ? binaryFile : xmlFile,
+                                !isBinary, mSceneLoadListener);
+                        mSceneLoader.start();
+                    }
+                });
+            }
+        });
+        mSceneMigration = migration;
+        migration.start();
     }
 
     /**
-     * Exports scene to default output XML
+     * Receives loaded bodies, in UI thread
+     */
+    private final SceneLoader.OnLoadListener mSceneLoadListener = new SceneLoader.OnLoadListener() {
+        public void onBodiesLoaded(ArrayList<Body> bodies) {
+            mScene.addAll(bodies);
+        }
+
+        public void onLoadProgress(float progress) {
+            // Bodies on screen already show progress
+        }
+
+        public void onLoadFinished(boolean success) {
+            mSceneLoader = null;
+            if (success)
+                Toast.makeText(FlingboxActivity.this, R.string.scene_loaded,
+                        Toast.LENGTH_SHORT).show();
+            else
+                Toast.makeText(FlingboxActivity.this,
+                        R.string.scene_load_error, Toast.LENGTH_SHORT).show();
+        }
+    };
+
+    /**
+     * Exports scene to default output file
      * 
      * @return
      */
     private boolean saveScene() {
         final File outfile = new File(
-                Environment.getExternalStorageDirectory(), "flingbox/scene.xml");
-        final FileWriter outFileWriter;
+                Environment.getExternalStorageDirectory(), SCENE_FILE);
         boolean writeSuccess = false;
         try {
-            if (outfile.exists())
-                outfile.delete(); // Clear last saved file
-            outfile.createNewFile(); // Create new file
-            outFileWriter = new FileWriter(outfile);
-            writeSuccess = XmlExporter.exportXml(outFileWriter, mScene
-                    .getSerializer());
-            outFileWriter.close();
+            outfile.getParentFile().mkdirs();
+            if (Preferences.compressSavedScenes)
+                CompressedSceneFile.write(outfile, mScene.getBodies());
+            else
+                SceneFile.write(outfile, mScene.getBodies());
+            writeSuccess = true;
         } catch (Exception e) {
             Log.e("flingbox", "Error saving scene: " + e);
             e.printStackTrace();
@@ -250,6 +402,59 @@ public class FlingboxActivity extends Activity {
         return writeSuccess;
     }
 
+    /**
+     * Records simulation into default recording file, so 
+     * reported problems can be reproduced by replaying it.
+     * 
+     * @return true if recording started
+     */
+    private boolean startRecording() {
+        final File outfile = new File(
+                Environment.getExternalStorageDirectory(), RECORDING_FILE);
+        FileOutputStream out = null;
+        try {
+            outfile.getParentFile().mkdirs();
+            out = new FileOutputStream(outfile);
+            final SimulationRecorder recorder = new SimulationRecorder(out);
+            recorder.start(mScene.getScenePhysics());
+            mRecorder = recorder;
+            return true;
+        } catch (IOException e) {
+            Log.e("flingbox", "Error starting recording: " + e);
+            try {
+                if (out != null)
+                    out.close();
+            } catch (IOException ex) {
+                // Nothing else to do
+            }
+            Toast.makeText(this, R.string.recording_error, Toast.LENGTH_SHORT)
+                    .show();
+            return false;
+        }
+    }
+
+    /**
+     * Stops current recording, if any, and closes its file
+     */
+    private void stopRecording() {
+        final SimulationRecorder recorder = mRecorder;
+        if (recorder == null)
+            return;
+        mRecorder = null;
+        try {
+            recorder.stop();
+            Toast.makeText(this, R.string.recording_saved, Toast.LENGTH_SHORT)
+                    .show();
+        } catch (IOException e) {
+            Log.e("flingbox", "Error saving recording: " + e);
+            Toast.makeText(this, R.string.recording_error, Toast.LENGTH_SHORT)
+                    .show();
+        }
+        /* Mode may have been changed while recording */
+        mScene.getScenePhysics().setDeterministic(
+                Preferences.deterministicSimulation);
+    }
+
     /**
      * Called when activity Pause
      */
@@ -257,6 +462,7 @@ public class FlingboxActivity extends Activity {
     public void onPause() {
         super.onPause();
         mScene.getScenePhysics().stopSimulation();
+        stopRecording();
         mSurface.onPause();
     }
 
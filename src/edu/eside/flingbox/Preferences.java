@@ -18,6 +18,7 @@
 
 package edu.eside.flingbox;
 
+import android.content.SharedPreferences;
 import android.os.Bundle;
 
 public class Preferences {
@@ -36,6 +37,18 @@ public class Preferences {
 	private static final String KEY_STATIC_FRICTION = "PREFERENCES_STATIC_FRICTION";
 	public static float defaultStaticFrictionCoeficient = 0.5f;
 	
+	/** Simulation gives the same result for the same input, see ScenePhysics */
+	private static final String KEY_DETERMINISTIC = "PREFERENCES_DETERMINISTIC";
+	public static boolean deterministicSimulation = false;
+	
+	/** Collisions use approximate rotations, faster. Ignored if deterministic */
+	private static final String KEY_APPROXIMATE_ROTATIONS = "PREFERENCES_APPROXIMATE_ROTATIONS";
+	public static boolean approximateRotations = false;
+	
+	/** Scenes are saved as compressed files, smaller but lossy */
+	private static final String KEY_COMPRESS_SCENES = "PREFERENCES_COMPRESS_SCENES";
+	public static boolean compressSavedScenes = false;
+	
 	/** Haptic feedback will be performed by Preferences */
 	public static long hapticFeedbackTime = 50;
 	public static boolean doHapticFeedback = true;
@@ -57,4 +70,24 @@ public class Preferences {
 		defaultDynamicFrictionCoeficient = savedPreferences.getFloat(KEY_DYNAMIC_FRICTION);
 	}
 	
+	/**
+	 * Loads settings kept between sessions, changed by 
+	 * preferences dialog
+	 */
+	public static void onLoadSettings(SharedPreferences settings) {
+		deterministicSimulation = settings.getBoolean(KEY_DETERMINISTIC, deterministicSimulation);
+		approximateRotations = settings.getBoolean(KEY_APPROXIMATE_ROTATIONS, approximateRotations);
+		compressSavedScenes = settings.getBoolean(KEY_COMPRESS_SCENES, compressSavedScenes);
+	}
+	
+	/**
+	 * Saves settings kept between sessions. Editor must be 
+	 * committed by caller.
+	 */
+	public static void onSaveSettings(SharedPreferences.Editor settings) {
+		settings.putBoolean(KEY_DETERMINISTIC, deterministicSimulation);
+		settings.putBoolean(KEY_APPROXIMATE_ROTATIONS, approximateRotations);
+		settings.putBoolean(KEY_COMPRESS_SCENES, compressSavedScenes);
+	}
+	
 }
@@ -28,6 +28,7 @@ import org.xmlpull.v1.XmlSerializer;
 import android.util.Log;
 
 import edu.eside.flingbox.graphics.RenderPolygon;
+import edu.eside.flingbox.math.PackedPolygon;
 import edu.eside.flingbox.math.PolygonUtils;
 import edu.eside.flingbox.math.Vector2D;
 import edu.eside.flingbox.physics.PhysicPolygon;
@@ -49,7 +50,8 @@ public class Polygon extends Body implements OnMovementListener, XmlSerializable
 	private final static String TAG_POINT = "point";
 	private final static String TAG_FIXED = "fixed";
 	
-	private Vector2D[] mPoints;
+	/** Contour, relative to centroid. Shared by render and physics */
+	private PackedPolygon mContour;
 	private short mPointsCount;
 
 	public Polygon() {
@@ -58,13 +60,22 @@ public class Polygon extends Body implements OnMovementListener, XmlSerializable
 	
 	/**
 	 * Constructor for a Polygon
-	 * @param polygonPoints Array of Polygon's point, this is stored and modified
+	 * @param polygonPoints Array of Polygon's point
 	 * @throws IllegalArgumentException If not enough points
 	 */
 	public Polygon(Vector2D[] polygonPoints) throws IllegalArgumentException {
+		this(new PackedPolygon(polygonPoints));
+	}
+	
+	/**
+	 * Constructor for a Polygon
+	 * @param contour Polygon's contour, this is stored and modified
+	 * @throws IllegalArgumentException If not enough points
+	 */
+	public Polygon(PackedPolygon contour) throws IllegalArgumentException {
 		super();
 		
-		if (polygonPoints.length < 3) {
+		if (contour.getPointsCount() < 3) {
 			Log.e("Flingbox", "Trying to build a polygon with an insuficient number of points");
 			throw new IllegalArgumentException("Not enough points to build a polygon.");
 		}
@@ -72,49 +83,57 @@ public class Polygon extends Body implements OnMovementListener, XmlSerializable
 		/* 
 		 * Set points in Clock-wise order 
 		 */
-		float polygonArea = PolygonUtils.polygonArea(polygonPoints);
+		float polygonArea = PolygonUtils.polygonArea(contour);
 		if (polygonArea > 0) {
 			/* If points are in anti-Clock-wise order the
 			 * returned area will be positive, else, it 
 			 * will be negative.
 			 */
-			Vector2D temp;
-			for (int i = 0, j = polygonPoints.length - 1; i < j; --j, ++i) {
-				temp = polygonPoints[i];  // Just swap polygon order
-				polygonPoints[i] = polygonPoints[j];
-				polygonPoints[j] = temp;
-			}	
+			contour.reverse();
 		} else 
 			polygonArea = -polygonArea;
 
 		/* 
 		 * Relocate polygon to set the centroid at point (0, 0) 
 		 */
-		Vector2D centroid = PolygonUtils.polygonCentroid(polygonPoints);
-		for (Vector2D p : polygonPoints) 
-			p.sub(centroid);
-
-		mPoints = polygonPoints;
-		mPointsCount = (short) (polygonPoints.length); 
-		mRender = new RenderPolygon(polygonPoints);
-		mPhysics = new PhysicPolygon(polygonPoints, polygonArea, centroid, this);
+		Vector2D centroid = PolygonUtils.polygonCentroid(contour);
+		contour.translate(-centroid.i, -centroid.j);
+
+		mContour = contour;
+		mPointsCount = (short) contour.getPointsCount(); 
+		mRender = new RenderPolygon(contour);
+		mPhysics = new PhysicPolygon(contour, polygonArea, centroid, this);
 	}
 	
 	/**
-	 * @return Polygon points
+	 * @return Polygon's contour, relative to its centroid. 
+	 * 		It mustn't be modified.
 	 */
-	public Vector2D[] getPoints() {
-		return mPoints;
+	public PackedPolygon getContour() {
+		return mContour;
 	}
 	
 	/**
-	 * @return Polygon points
+	 * Sets polygon's contour
+	 * 
+	 * @param points contour relative to centroid
+	 * @param centroid polygon's position
 	 */
 	public void setPoints(Vector2D[] points, Vector2D centroid) {
-		mPoints = points;
-		mPointsCount = (short) (points.length); 
-		mRender = new RenderPolygon(points);
-		mPhysics = new PhysicPolygon(points, PolygonUtils.polygonArea(points), centroid, this);
+		setPoints(new PackedPolygon(points), centroid);
+	}
+	
+	/**
+	 * Sets polygon's contour. It's stored, not copied.
+	 * 
+	 * @param contour contour relative to centroid
+	 * @param centroid polygon's position
+	 */
+	public void setPoints(PackedPolygon contour, Vector2D centroid) {
+		mContour = contour;
+		mPointsCount = (short) contour.getPointsCount(); 
+		mRender = new RenderPolygon(contour);
+		mPhysics = new PhysicPolygon(contour, PolygonUtils.polygonArea(contour), centroid, this);
 	}
 
 	/**
@@ -148,11 +167,11 @@ public class Polygon extends Body implements OnMovementListener, XmlSerializable
 		try {
 			serializer.startTag("", TAG_POLYGON);
 				serializer.startTag("", TAG_CONTOUR);
-					serializer.attribute("", ATTRIBUTE_POINTS_COUNT, mPoints.length + "");
-					for (Vector2D point : mPoints) {
+					serializer.attribute("", ATTRIBUTE_POINTS_COUNT, mContour.getPointsCount() + "");
+					for (int i = 0; i < mContour.getPointsCount(); i++) {
 					serializer.startTag("", TAG_POINT);
-						serializer.attribute("", "x", point.i + "");
-						serializer.attribute("", "y", point.j + "");
+						serializer.attribute("", "x", mContour.getX(i) + "");
+						serializer.attribute("", "y", mContour.getY(i) + "");
 					serializer.endTag("", TAG_POINT);
 					}
 				serializer.endTag("", TAG_CONTOUR);
@@ -185,7 +204,7 @@ public class Polygon extends Body implements OnMovementListener, XmlSerializable
 				|| !(parser.getName().equals(TAG_POLYGON))) 
 			throw new InvalidXmlException("polygon start tag expected but " + parser.getName() + " found.");
 		
-		Vector2D[] points = new Vector2D[0];
+		PackedPolygon points = new PackedPolygon(0);
 		Vector2D centroid = new Vector2D();
 		boolean isFixed = false;
 		float angle = 0f;
@@ -197,14 +216,14 @@ public class Polygon extends Body implements OnMovementListener, XmlSerializable
 				if (parser.getName().equals(TAG_CONTOUR)) { 
 					/* Parse contour */
 					int pointsCount = Integer.parseInt(parser.getAttributeValue(0));
-					points = new Vector2D[pointsCount];
+					points = new PackedPolygon(pointsCount);
 					for (int i = 0; i < pointsCount; i++) {
 						if (parser.next() != XmlPullParser.START_TAG 
 								|| !(parser.getName().equals(TAG_POINT))) 
 							throw new InvalidXmlException("point start tag expected but " + parser.getName() + " found.");
 							
-						points[i] = new Vector2D(Float.parseFloat(parser.getAttributeValue(0)), 
-												 Float.parseFloat(parser.getAttributeValue(1)));
+						points.set(i, Float.parseFloat(parser.getAttributeValue(0)), 
+									Float.parseFloat(parser.getAttributeValue(1)));
 						parser.next();
 					}
 				} else if (parser.getName().equals(TAG_POSITION)) {
@@ -0,0 +1,276 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.bodies;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.util.Log;
+
+import edu.eside.flingbox.math.DouglasPeuckerReducer;
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.math.Vector2D;
+import edu.eside.flingbox.physics.PhysicBody;
+
+/**
+ * Builds many polygons at once, for big imported or generated scenes.
+ * Contours are split in chunks taken by a thread for each core, so 
+ * area, centroid, triangulation and render buffers of each polygon 
+ * are computed in parallel. Contours can be simplified first by 
+ * Douglas-Peucker. Polygons read from scenes are built from 
+ * {@link Shape}s.
+ * 
+ * Built polygons keep contours' order, so they can be handed to 
+ * the scene in a single batch.
+ */
+public class PolygonBuilder {
+	/**
+	 * Polygon as stored in scenes, not built yet: contour relative 
+	 * to its centroid, position and physical properties.
+	 */
+	public static class Shape {
+		/** Contour relative to centroid, stored by built polygon */
+		public PackedPolygon contour;
+		/** Centroid's position */
+		public final Vector2D position = new Vector2D();
+		public float angle = 0f;
+		public boolean isFixed = false;
+		/** If false, properties below are ignored and defaults are kept */
+		public boolean hasProperties = false;
+		public float density, restitution, staticFriction, dynamicFriction;
+		
+		/**
+		 * @return polygon built from shape, with a random color
+		 */
+		public Polygon build() {
+			final Polygon polygon = new Polygon();
+			polygon.setPoints(contour, position);
+			final PhysicBody physics = polygon.getPhysics();
+			physics.setAngle(angle);
+			if (hasProperties) {
+				physics.setDensity(density);
+				physics.setRestitutionCoeficient(restitution);
+				physics.setStaticFrictionCoeficient(staticFriction);
+				physics.setDynamicFrictionCoeficient(dynamicFriction);
+			}
+			physics.setBodyFixed(isFixed);
+			polygon.setRandomColor();
+			return polygon;
+		}
+	}
+	
+	/**
+	 * Callback of {@link PolygonBuilder#buildInBackground(List, OnBuildListener)}
+	 */
+	public interface OnBuildListener {
+		/**
+		 * Called when every polygon has been built. Not called 
+		 * if building is canceled.
+		 * 
+		 * @param polygons	built polygons, in contours' order
+		 */
+		public void onPolygonsBuilt(ArrayList<Body> polygons);
+	}
+	
+	/** Min contours taken by a thread at once */
+	private final static int MIN_CHUNK_SIZE = 16;
+	/** Chunks by thread, so threads finishing early take more */
+	private final static int CHUNKS_BY_THREAD = 4;
+	
+	/** Threads building polygons, including caller's one */
+	private final int mThreadsCount;
+	/** Max distance of points removed by simplification, 0 for none */
+	private float mSimplification = 0f;
+	private volatile boolean mCanceled = false;
+	
+	/**
+	 * Creates a builder with a thread for each core
+	 */
+	public PolygonBuilder() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param threadsCount	threads building polygons, at least 1
+	 */
+	public PolygonBuilder(int threadsCount) {
+		mThreadsCount = Math.max(1, threadsCount);
+	}
+	
+	/**
+	 * Sets simplification of contours before building them. 
+	 * Shapes aren't simplified.
+	 * 
+	 * @param epsilon	max distance of removed points, 0 to keep every point
+	 */
+	public void setSimplification(float epsilon) {
+		mSimplification = epsilon;
+	}
+	
+	/**
+	 * Stops building. Polygons not built yet are skipped and 
+	 * listener isn't called.
+	 */
+	public void cancel() {
+		mCanceled = true;
+	}
+	
+	/**
+	 * Builds polygons in background. Must be called from a thread 
+	 * with a looper, usually UI thread, where listener is called.
+	 * 
+	 * @param contours	contours of polygons, they are stored and modified
+	 * @param listener	listener called with built polygons
+	 */
+	public void buildInBackground(final List<PackedPolygon> contours, 
+			final OnBuildListener listener) {
+		final Handler handler = new Handler();
+		new Thread(new Runnable() {
+			public void run() {
+				final ArrayList<Body> polygons = build(contours);
+				handler.post(new Runnable() {
+					public void run() {
+						if (!mCanceled)
+							listener.onPolygonsBuilt(polygons);
+					}
+				});
+			}
+		}).start();
+	}
+	
+	/**
+	 * Builds polygons, blocking until all are built. Caller's 
+	 * thread builds too.
+	 * 
+	 * @param contours	contours of polygons, they are stored and modified
+	 * @return built polygons, in contours' order. Contours witch 
+	 * 		can't make a polygon are skipped
+	 */
+	public ArrayList<Body> build(final List<PackedPolygon> contours) {
+		return buildAll(contours);
+	}
+	
+	/**
+	 * Builds polygons of shapes, blocking until all are built. 
+	 * Caller's thread builds too.
+	 * 
+	 * @param shapes	shapes, their contours are stored
+	 * @return built polygons, in shapes' order. Shapes witch 
+	 * 		can't make a polygon are skipped
+	 */
+	public ArrayList<Body> buildShapes(final List<Shape> shapes) {
+		return buildAll(shapes);
+	}
+	
+	/**
+	 * Builds polygons of contours or shapes
+	 */
+	private ArrayList<Body> buildAll(final List<?> items) {
+		final int contoursCount = items.size();
+		final Polygon[] polygons = new Polygon[contoursCount];
+		final int chunkSize = Math.max(MIN_CHUNK_SIZE, 
+				contoursCount / (CHUNKS_BY_THREAD * mThreadsCount));
+		final int threadsCount = Math.min(mThreadsCount, 
+				(contoursCount + chunkSize - 1) / chunkSize);
+		final AtomicInteger nextChunk = new AtomicInteger(0);
+		
+		final Thread[] workers = new Thread[Math.max(0, threadsCount - 1)];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					buildChunks(items, polygons, chunkSize, nextChunk);
+				}
+			});
+			workers[i].start();
+		}
+		buildChunks(items, polygons, chunkSize, nextChunk);
+		
+		boolean interrupted = false;
+		for (int i = 0; i < workers.length; i++) {
+			try {
+				workers[i].join();
+			} catch (InterruptedException ex) {
+				interrupted = true;
+				i--; // Polygons are still being written, wait again
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		
+		final ArrayList<Body> built = new ArrayList<Body>(contoursCount);
+		for (int i = 0; i < contoursCount; i++)
+			if (polygons[i] != null)
+				built.add(polygons[i]);
+		return built;
+	}
+	
+	/**
+	 * Builds chunks of contours or shapes until none is left
+	 */
+	private void buildChunks(final List<?> items, final Polygon[] polygons, 
+			final int chunkSize, final AtomicInteger nextChunk) {
+		/* Reducer and its buffer are only used by this thread */
+		final DouglasPeuckerReducer reducer = new DouglasPeuckerReducer();
+		float[] reduced = new float[0];
+		final float epsilon = mSimplification;
+		
+		final int contoursCount = polygons.length;
+		for (int first = nextChunk.getAndIncrement() * chunkSize; 
+				first < contoursCount && !mCanceled; 
+				first = nextChunk.getAndIncrement() * chunkSize) {
+			final int last = Math.min(contoursCount, first + chunkSize);
+			for (int i = first; i < last; i++) {
+				final Object item = items.get(i);
+				if (item instanceof Shape) {
+					try {
+						polygons[i] = ((Shape) item).build();
+					} catch (IllegalArgumentException ex) {
+						Log.w("flingbox", "Skipping shape " + i + ": " + ex.getMessage());
+					}
+					continue;
+				}
+				
+				PackedPolygon contour = (PackedPolygon) item;
+				if (epsilon > 0f) {
+					final int pointsCount = contour.getPointsCount();
+					if (reduced.length < 2 * pointsCount)
+						reduced = new float[2 * pointsCount];
+					final int reducedCount = reducer.reduce(contour.getPoints(), 
+							pointsCount, epsilon, reduced);
+					if (reducedCount >= 3 && reducedCount < pointsCount) {
+						/* Polygon keeps its contour, so it can't be in reused array */
+						final float[] points = new float[2 * reducedCount];
+						System.arraycopy(reduced, 0, points, 0, points.length);
+						contour = new PackedPolygon(points, reducedCount);
+					}
+				}
+				
+				try {
+					final Polygon polygon = new Polygon(contour);
+					polygon.setRandomColor();
+					polygons[i] = polygon;
+				} catch (IllegalArgumentException ex) {
+					Log.w("flingbox", "Skipping contour " + i + ": " + ex.getMessage());
+				}
+			}
+		}
+	}
+}
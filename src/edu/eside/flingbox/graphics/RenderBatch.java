@@ -0,0 +1,214 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * {@link RenderBatch} collects already transformed triangles of many
+ * bodies into shared buffers with per-vertex color, so they can be drawn
+ * with a single glDrawElements call. Transformations are done by CPU.
+ *
+ * Indexes are unsigned shorts, so when a batch reaches
+ * {@link #MAX_VERTICES} it is flushed automatically.
+ */
+public class RenderBatch {
+	/**
+	 * Interface of a render that can be drawn into a batch
+	 */
+	public interface Batchable {
+		/**
+		 * Called instead of {@link RenderBody#onRender(GL10)} when body
+		 * is drawn with other bodies.
+		 * 
+		 * @param gl	OpenGL's space
+		 * @param batch	batch where body should be added
+		 * @return false if body has to be rendered on its own
+		 */
+		public boolean onBatch(GL10 gl, RenderBatch batch);
+	}
+
+	/** Max vertices that can be indexed by an unsigned short */
+	public final static int MAX_VERTICES = 0xffff;
+
+	/** Initial capacity, in vertices */
+	private final static int INITIAL_CAPACITY = 1024;
+
+	/** Transformed vertices, 2 coords each */
+	private float[] mVertices = new float[2 * INITIAL_CAPACITY];
+	/** Vertices colors, 4 channels each */
+	private byte[] mColors = new byte[4 * INITIAL_CAPACITY];
+	/** Triangles indexes */
+	private short[] mIndexes = new short[3 * INITIAL_CAPACITY];
+
+	/** Vertices in batch */
+	private int mVerticesCount = 0;
+	/** Indexes in batch */
+	private int mIndexesCount = 0;
+
+	/** Direct buffers passed to OpenGL, reused while they are big enough */
+	private FloatBuffer mVertexBuffer;
+	private ByteBuffer mColorBuffer;
+	private ShortBuffer mIndexBuffer;
+
+	/** Draw calls done since last {@link #resetDrawCallsCount()} */
+	private int mDrawCallsCount = 0;
+
+	/**
+	 * Adds a body to the batch. Local vertices are rotated and
+	 * translated to world space.
+	 *
+	 * @param gl		OpenGL's space, used if batch has to be flushed
+	 * @param vertices	Local vertices, as x, y pairs
+	 * @param indexes	Triangles indexes
+	 * @param x			Body's x position
+	 * @param y			Body's y position
+	 * @param cos		Cosine of body's angle
+	 * @param sin		Sine of body's angle
+	 * @param color		Body's color, 4 bytes RGBA
+	 * @return false if body has too many vertices to be indexed 
+	 * 		in a batch, then it must be rendered on its own
+	 */
+	public boolean add(GL10 gl, final float[] vertices, final short[] indexes,
+			final float x, final float y, final float cos, final float sin,
+			final byte[] color) {
+		final int verticesCount = vertices.length / 2;
+		final int indexesCount = indexes.length;
+		if (verticesCount > MAX_VERTICES)
+			return false;
+		if (mVerticesCount + verticesCount > MAX_VERTICES)
+			flush(gl);
+		ensureCapacity(mVerticesCount + verticesCount, mIndexesCount + indexesCount);
+
+		/* Transform vertices */
+		final float[] batchVertices = mVertices;
+		final byte[] batchColors = mColors;
+		final byte r = color[0], g = color[1], b = color[2], a = color[3];
+		int v = 2 * mVerticesCount, c = 4 * mVerticesCount;
+		for (int i = 0; i < 2 * verticesCount; i += 2) {
+			final float px = vertices[i], py = vertices[i + 1];
+			batchVertices[v++] = cos * px - sin * py + x;
+			batchVertices[v++] = sin * px + cos * py + y;
+			batchColors[c++] = r;
+			batchColors[c++] = g;
+			batchColors[c++] = b;
+			batchColors[c++] = a;
+		}
+
+		/* Relocate indexes */
+		final short[] batchIndexes = mIndexes;
+		final int base = mVerticesCount;
+		int n = mIndexesCount;
+		for (int i = 0; i < indexesCount; i++)
+			batchIndexes[n++] = (short) (indexes[i] + base);
+
+		mVerticesCount += verticesCount;
+		mIndexesCount = n;
+		return true;
+	}
+
+	/**
+	 * Draws everything in batch and empties it.
+	 * Modelview matrix should be identity.
+	 *
+	 * @param gl	OpenGL's space
+	 */
+	public void flush(GL10 gl) {
+		if (mIndexesCount == 0) {
+			mVerticesCount = 0;
+			return;
+		}
+		final int verticesCount = mVerticesCount;
+		final int indexesCount = mIndexesCount;
+
+		/* Grow buffers only when needed */
+		if (mVertexBuffer == null || mVertexBuffer.capacity() < 2 * verticesCount) {
+			mVertexBuffer = ByteBuffer.allocateDirect(4 * mVertices.length)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+			mColorBuffer = ByteBuffer.allocateDirect(mColors.length)
+				.order(ByteOrder.nativeOrder());
+		}
+		if (mIndexBuffer == null || mIndexBuffer.capacity() < indexesCount)
+			mIndexBuffer = ByteBuffer.allocateDirect(2 * mIndexes.length)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+
+		/* Bulk copy, much faster than put by element */
+		mVertexBuffer.clear();
+		mVertexBuffer.put(mVertices, 0, 2 * verticesCount).position(0);
+		mColorBuffer.clear();
+		mColorBuffer.put(mColors, 0, 4 * verticesCount).position(0);
+		mIndexBuffer.clear();
+		mIndexBuffer.put(mIndexes, 0, indexesCount).position(0);
+
+		gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
+		gl.glVertexPointer(2, GL10.GL_FLOAT, 0, mVertexBuffer);
+		gl.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, 0, mColorBuffer);
+		gl.glDrawElements(GL10.GL_TRIANGLES, indexesCount,
+				GL10.GL_UNSIGNED_SHORT, mIndexBuffer);
+		gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
+		mDrawCallsCount++;
+
+		mVerticesCount = 0;
+		mIndexesCount = 0;
+	}
+
+	/**
+	 * @return draw calls done since last reset
+	 */
+	public int getDrawCallsCount() {
+		return mDrawCallsCount;
+	}
+
+	/**
+	 * Resets draw calls counter. Should be called at the beginning of a frame.
+	 */
+	public void resetDrawCallsCount() {
+		mDrawCallsCount = 0;
+	}
+
+	/**
+	 * Grows arrays to store, at least, given vertices and indexes
+	 */
+	private void ensureCapacity(int verticesCount, int indexesCount) {
+		if (2 * verticesCount > mVertices.length) {
+			int capacity = mVertices.length / 2;
+			while (capacity < verticesCount)
+				capacity *= 2;
+			final float[] vertices = new float[2 * capacity];
+			System.arraycopy(mVertices, 0, vertices, 0, 2 * mVerticesCount);
+			mVertices = vertices;
+			final byte[] colors = new byte[4 * capacity];
+			System.arraycopy(mColors, 0, colors, 0, 4 * mVerticesCount);
+			mColors = colors;
+		}
+		if (indexesCount > mIndexes.length) {
+			int capacity = mIndexes.length;
+			while (capacity < indexesCount)
+				capacity *= 2;
+			final short[] indexes = new short[capacity];
+			System.arraycopy(mIndexes, 0, indexes, 0, mIndexesCount);
+			mIndexes = indexes;
+		}
+	}
+}
@@ -23,6 +23,10 @@ import javax.microedition.khronos.opengles.GL10;
 /**
  * {@link Renderizable} interface witch should be 
  * implemented by on scene bodys to be rendered.
+ * 
+ * Bodies should be renderable by both backends, fixed-function
+ * OpenGL ES 1.x {@link SceneRenderer} and OpenGL ES 2.0 
+ * {@link SceneRenderer20}.
  */
 public interface RenderBody {
 	/**
@@ -35,4 +39,13 @@ public interface RenderBody {
 	 * @return		true if render consumed
 	 */
 	public abstract boolean onRender(GL10 gl);
+	
+	/**
+	 * Called when object has to be rendered by OpenGL ES 2.0
+	 * backend. Program is already in use.
+	 * 
+	 * @param program	Program to draw with
+	 * @return		true if render consumed
+	 */
+	public abstract boolean onRender(ShaderProgram program);
 }
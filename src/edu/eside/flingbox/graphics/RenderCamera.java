@@ -37,11 +37,24 @@ public class RenderCamera {
 	
 	/** Surface size */
 	private float mSurfaceWidth, mSurfaceHeight;
+	
+	/** Renderer to be notified of changes, can be null */
+	private final SceneRenderer mRenderer;
 
 	/**
 	 * Default constructor for a surface
 	 */
 	public RenderCamera(float surfaceWidth, float surfaceHeight) {
+		this(surfaceWidth, surfaceHeight, null);
+	}
+	
+	/**
+	 * Constructor for a surface rendered on demand
+	 * 
+	 * @param renderer Renderer to be notified when camera changes
+	 */
+	public RenderCamera(float surfaceWidth, float surfaceHeight, SceneRenderer renderer) {
+		mRenderer = renderer;
 		mPosition = new Vector2D();
 		mAperture = new Vector2D(surfaceWidth, surfaceHeight);
 		
@@ -96,6 +109,8 @@ public class RenderCamera {
 		this.top = mPosition.j + halfHeight;
 		
 		this.isChanged = true;
+		if (mRenderer != null)
+			mRenderer.requestRender();
 	}
 	
 	/** @return projected vector */
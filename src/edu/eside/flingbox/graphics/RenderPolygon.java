@@ -24,9 +24,11 @@ import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
 
 import edu.eside.flingbox.bodies.Polygon;
-import edu.eside.flingbox.math.PolygonUtils;
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.math.PolygonTriangulator;
 import edu.eside.flingbox.math.Vector2D;
 
 /**
@@ -36,8 +38,15 @@ import edu.eside.flingbox.math.Vector2D;
  * and calculated by physic engine.
  * 
  * This should only be instantiate by {@link Polygon}.
+ * 
+ * Small polygons are drawn into {@link RenderBatch}es, big ones are drawn
+ * on their own from vertex buffer objects, uploaded only once since 
+ * polygon's shape never changes.
  */
-public class RenderPolygon implements RenderBody {
+public class RenderPolygon implements RenderBody, RenderBatch.Batchable {
+	/** Polygons with this vertices or more are drawn from buffer objects */
+	private final static int BUFFER_OBJECT_MIN_VERTICES = 64;
+	
 	/** Buffer with vertex, for OpenGL */
 	private final FloatBuffer mVertexBuffer;
 	/** Buffer with triangulation indexes, for OpenGL */
@@ -45,48 +54,79 @@ public class RenderPolygon implements RenderBody {
 	/** Triangles count */
 	private final short mTrianglesCount;
 	
+	/** Local vertices, as x, y pairs. Used by batches */
+	private final float[] mVertices;
+	/** Triangulation indexes. Used by batches */
+	private final short[] mIndexes;
+	
+	/** Vertex and index buffer objects names */
+	private final int[] mBufferObjects = new int[2];
+	/** OpenGL context in witch buffer objects were created, -1 if none */
+	private int mBufferObjectsContext = -1;
+	
 	/** Position to draw polygon */
 	private final Vector2D mPosition = new Vector2D();
 	/** Angle of the polygon */
 	private float mAngle = 0f;
+	/** Cosine and sine of the angle, to transform vertices */
+	private float mCos = 1f, mSin = 0f;
+	
+	/** Distance from centroid to farthest vertex */
+	private final float mBoundingRadius;
+	/** World space bounds, updated by {@link #setPosition(Vector2D, float)} */
+	private float mLeft, mRight, mBottom, mTop;
+	
+	/** Renderer drawing this polygon, notified on changes */
+	private volatile SceneRenderer mRenderer;
 	
 	/** Stores polygon's color */
 	private float[] mColor = new float[] { 0f, 0f, 0f, 1f };
+	/** Polygon's color as bytes, for batches */
+	private final byte[] mColorBytes = new byte[] { 0, 0, 0, (byte) 255 };
 
 	/**
 	 * Default constructor of PolygonRender.
 	 * initializes values needed by OpenGL.
 	 * 
-	 * @param points	Polygon's points, with centroid at 0,0
+	 * @param points	Polygon's points, with centroid at 0,0. They 
+	 * 					aren't copied, so they mustn't be modified later
 	 */
-	public RenderPolygon(final Vector2D[] points) {
-		final int pointsCount = points.length;
+	public RenderPolygon(final PackedPolygon points) {
+		final int pointsCount = points.getPointsCount();
 		
-		/* Fill 2D polygon into 3D space */
-		float[] points3D = new float[3 * pointsCount];
-		for (int i = 0; i < pointsCount; i++) {
-			points3D[3 * i + 0] = points[i].i;		// x
-			points3D[3 * i + 1] = points[i].j;		// y
-			points3D[3 * i + 2] = 0f;				// z
+		/* Share packed points, unless array has unused room */
+		float[] points2D = points.getPoints();
+		if (points2D.length != 2 * pointsCount) {
+			final float[] exact = new float[2 * pointsCount];
+			System.arraycopy(points2D, 0, exact, 0, exact.length);
+			points2D = exact;
 		}
+		mVertices = points2D;
+		/* Bounds must hold polygon at any angle */
+		mBoundingRadius = points.getBoundingRadius();
+		updateBounds();
 		
 		mVertexBuffer = ByteBuffer // Fill buffers with correspondent vertex
-			.allocateDirect(4 * 3 * pointsCount)
+			.allocateDirect(4 * 2 * pointsCount)
 			.order(ByteOrder.nativeOrder())
 			.asFloatBuffer()
-			.put(points3D);
+			.put(points2D);
 		mVertexBuffer.position(0);
 		
-		/* Set point drawing order by triangulation */
-		short[] triangulationIndexes = PolygonUtils.triangulatePolygon(points);
+		/* Set point drawing order by triangulation, n - 2 triangles */
+		final int indexesCount = pointsCount >= 3 ? 3 * (pointsCount - 2) : 0;
 		mIndexBuffer = ByteBuffer
-			.allocateDirect(2 * triangulationIndexes.length)
+			.allocateDirect(2 * indexesCount)
 			.order(ByteOrder.nativeOrder())
-			.asShortBuffer()
-			.put(triangulationIndexes);
+			.asShortBuffer();
+		final int trianglesCount = new PolygonTriangulator().triangulate(points2D, 
+				pointsCount, mIndexBuffer);
 		mIndexBuffer.position(0);
 		
-		mTrianglesCount = (short) (triangulationIndexes.length / 3);
+		/* Batches and buffer objects need a copy in heap */
+		mIndexes = new short[3 * trianglesCount];
+		mIndexBuffer.get(mIndexes).position(0);
+		mTrianglesCount = (short) trianglesCount;
 	}
 	
 	/**
@@ -103,6 +143,15 @@ public class RenderPolygon implements RenderBody {
 		mColor[1] = g;
 		mColor[2] = b;
 		mColor[3] = alpha;
+		
+		mColorBytes[0] = (byte) (r * 255f);
+		mColorBytes[1] = (byte) (g * 255f);
+		mColorBytes[2] = (byte) (b * 255f);
+		mColorBytes[3] = (byte) (alpha * 255f);
+		
+		final SceneRenderer renderer = mRenderer;
+		if (renderer != null)
+			renderer.requestRender();
 	}
 	
 	/**
@@ -117,6 +166,42 @@ public class RenderPolygon implements RenderBody {
 		
 		/* Set angle into degrees */
 		mAngle = rotation * 360.0f / (2f * (float) Math.PI);
+		mCos = (float) Math.cos(rotation);
+		mSin = (float) Math.sin(rotation);
+		
+		/* Renderer is notified once per step by scene's physics */
+		updateBounds();
+	}
+	
+	/**
+	 * Sets renderer to be notified when polygon changes
+	 */
+	void setRenderer(SceneRenderer renderer) {
+		mRenderer = renderer;
+	}
+	
+	/**
+	 * Recomputes world space bounds from position
+	 */
+	private void updateBounds() {
+		final float radius = mBoundingRadius;
+		mLeft = mPosition.i - radius;
+		mRight = mPosition.i + radius;
+		mBottom = mPosition.j - radius;
+		mTop = mPosition.j + radius;
+	}
+	
+	/**
+	 * Checks if polygon's world space bounds are inside 
+	 * camera's frame. Polygon may still be out of the 
+	 * frame if true is returned.
+	 * 
+	 * @param camera	Current camera
+	 * @return false if polygon surely is out of camera's frame
+	 */
+	public boolean isVisible(RenderCamera camera) {
+		return mRight >= camera.left && mLeft <= camera.rigth
+			&& mTop >= camera.bottom && mBottom <= camera.top;
 	}
 	
 	/**
@@ -128,16 +213,118 @@ public class RenderPolygon implements RenderBody {
 		
 		/* First translate object for it's position */
 		gl.glTranslatef(mPosition.i, mPosition.j, 0f);
-		/* Then rotate it */
-		gl.glRotatef(((int) mAngle) % 360, 0f, 0f, 1.0f);
+		/* Then rotate it, by exact angle as batches do */
+		gl.glRotatef(mAngle, 0f, 0f, 1.0f);
 		try {
 			/* Draw it */
-			gl.glVertexPointer(3, GL10.GL_FLOAT, 0, mVertexBuffer);
-			gl.glDrawElements(GL10.GL_TRIANGLES, 3 * mTrianglesCount, 
-					GL10.GL_UNSIGNED_SHORT, mIndexBuffer);
+			if (SceneRenderer.areBufferObjectsSupported()) {
+				final GL11 gl11 = (GL11) gl;
+				bindBufferObjects(gl11);
+				gl11.glVertexPointer(2, GL10.GL_FLOAT, 0, 0);
+				gl11.glDrawElements(GL10.GL_TRIANGLES, 3 * mTrianglesCount, 
+						GL10.GL_UNSIGNED_SHORT, 0);
+				gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+				gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+			} else {
+				gl.glVertexPointer(2, GL10.GL_FLOAT, 0, mVertexBuffer);
+				gl.glDrawElements(GL10.GL_TRIANGLES, 3 * mTrianglesCount, 
+						GL10.GL_UNSIGNED_SHORT, mIndexBuffer);
+			}
 		} catch (Exception ex) {
 			return false; // Body couldn't be rendered
 		}
 		return true; // Body render succeed
 	}
+	
+	/**
+	 * Renderizes Polygon with OpenGL ES 2.0
+	 */
+	public boolean onRender(ShaderProgram program) {
+		try {
+			program.draw(GL10.GL_TRIANGLES, mVertexBuffer, mIndexBuffer, 
+					3 * mTrianglesCount, mPosition.i, mPosition.j, mCos, mSin, mColor);
+		} catch (Exception ex) {
+			return false; // Body couldn't be rendered
+		}
+		return true;
+	}
+	
+	/**
+	 * @return local vertices, as x, y pairs. Shouldn't be modified
+	 */
+	float[] getVertices() {
+		return mVertices;
+	}
+	
+	/**
+	 * @return triangulation indexes. Shouldn't be modified
+	 */
+	short[] getIndexes() {
+		return mIndexes;
+	}
+	
+	/**
+	 * Writes current transform as x, y, cos and sin 
+	 * 
+	 * @param transform	array where transform is stored
+	 * @param offset	first position to be written
+	 */
+	void getTransform(float[] transform, int offset) {
+		transform[offset] = mPosition.i;
+		transform[offset + 1] = mPosition.j;
+		transform[offset + 2] = mCos;
+		transform[offset + 3] = mSin;
+	}
+	
+	/**
+	 * @return polygon's color, as RGBA floats
+	 */
+	float[] getColor() {
+		return mColor;
+	}
+	
+	/**
+	 * Adds polygon, transformed to world space, into batch.
+	 * Big polygons aren't batched if they can be drawn from buffer objects.
+	 */
+	public boolean onBatch(GL10 gl, RenderBatch batch) {
+		if (mVertices.length >= 2 * BUFFER_OBJECT_MIN_VERTICES 
+				&& SceneRenderer.areBufferObjectsSupported())
+			return false;
+		return batch.add(gl, mVertices, mIndexes, mPosition.i, mPosition.j, 
+				mCos, mSin, mColorBytes);
+	}
+	
+	/**
+	 * Binds polygon's buffer objects, uploading them if they
+	 * don't exist in current OpenGL context.
+	 */
+	private void bindBufferObjects(GL11 gl) {
+		final int[] buffers = mBufferObjects;
+		final int context = SceneRenderer.getContextGeneration();
+		if (mBufferObjectsContext != context) {
+			/* Old names died with their context, just create new ones */
+			gl.glGenBuffers(2, buffers, 0);
+			gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, buffers[0]);
+			gl.glBufferData(GL11.GL_ARRAY_BUFFER, 4 * mVertexBuffer.capacity(), 
+					mVertexBuffer, GL11.GL_STATIC_DRAW);
+			gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+			gl.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER, 2 * mIndexBuffer.capacity(), 
+					mIndexBuffer, GL11.GL_STATIC_DRAW);
+			mBufferObjectsContext = context;
+		} else {
+			gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, buffers[0]);
+			gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+		}
+	}
+	
+	/**
+	 * Deletes polygon's buffer objects. Must be called from OpenGL's 
+	 * thread when polygon won't be rendered anymore.
+	 */
+	public void releaseBufferObjects(GL10 gl) {
+		if (mBufferObjectsContext == SceneRenderer.getContextGeneration())
+			((GL11) gl).glDeleteBuffers(2, mBufferObjects, 0);
+		mBufferObjectsContext = -1;
+	}
 }
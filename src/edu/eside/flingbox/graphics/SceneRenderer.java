@@ -18,15 +18,23 @@
 
 package edu.eside.flingbox.graphics;
 
-import java.util.ArrayList;
-import java.util.concurrent.Semaphore;
+import java.util.List;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
 
 import edu.eside.flingbox.Preferences;
+import edu.eside.flingbox.utils.IndexedList;
+import edu.eside.flingbox.utils.PendingChangesQueue;
 
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.ConfigurationInfo;
+import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.Renderer;
+import android.os.Build;
+import android.util.Log;
 
 /**
  * {@link SceneRenderer} handles functions to render 
@@ -35,46 +43,198 @@ import android.opengl.GLSurfaceView.Renderer;
  *
  * Defines {@link Renderizable} interface witch should be 
  * implemented by on scene bodys to be rendered.
+ * 
+ * This is the fixed-function OpenGL ES 1.x backend, 
+ * {@link #newInstance(Context)} chooses the best backend for the device.
  */
 public class SceneRenderer implements Renderer {
+	/** Min SDK with full OpenGL ES 2.0 bindings, buffer objects offsets included */
+	private final static int GLES20_MIN_SDK = 9;
+	/** Tag of debug messages, enabled with "setprop log.tag.flingbox DEBUG" */
+	final static String LOG_TAG = "flingbox";
+	
+
 	/** Stores objects that will be renderized */
-	private final ArrayList<RenderBody> mGraphicsToRender = new ArrayList<RenderBody>();
-	/** Manages mGraphicsToRender access */
-	private final Semaphore mGraphicsToRenderMutex = new Semaphore(1, true);
+	private final IndexedList<RenderBody> mGraphicsToRender = new IndexedList<RenderBody>();
+	/** Renders added or removed, applied by GL thread before drawing a frame */
+	private final PendingChangesQueue<RenderBody> mPendingChanges = new PendingChangesQueue<RenderBody>();
+	
+	/** Incremented each time OpenGL context is created, old buffer objects are lost */
+	private static volatile int contextGeneration = 0;
+	/** True if current OpenGL context has vertex buffer objects (OpenGL ES 1.1) */
+	private static volatile boolean bufferObjectsSupported = false;
+	
+	/** Deletes buffer objects of removed polygons and notifies changes */
+	private final RendersChangesListener mChangesListener = new RendersChangesListener();
+	
+	/** Batch where polygons are drawn together */
+	private final RenderBatch mBatch = new RenderBatch();
 	
 	/** Camera for this scene */
-	private RenderCamera mCamera = new RenderCamera(100, 100);
+	private RenderCamera mCamera = new RenderCamera(100, 100, this);
+	
+	/** Surface where scene is rendered */
+	private GLSurfaceView mSurface;
+	/** Set when something changed since last frame started */
+	private volatile boolean mDirty = true;
+	/** True if current frame was requested by a change */
+	private boolean mFrameDirty = true;
+	/** False when surface only renders on demand */
+	private volatile boolean mRenderingContinuously = true;
+	/** Lock of render mode's changes */
+	private final Object mRenderModeLock = new Object();
+	
+	/** Bodies skipped on last frame because they were out of camera */
+	private int mCulledBodiesCount = 0;
 	
 	/**
-	 * Adds one object to be rendered.
+	 * Adds one object to be rendered. Never blocks, 
+	 * object will be rendered from next frame.
 	 * 
 	 * @param render object
 	 */
 	public void add(RenderBody render) {
-		try { // Wait until everything rendered
-			mGraphicsToRenderMutex.acquire();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-		mGraphicsToRender.add(render);
-		mGraphicsToRenderMutex.release();
+		if (render instanceof RenderPolygon)
+			((RenderPolygon) render).setRenderer(this);
+		mPendingChanges.add(render);
+		requestRender();
+	}
+	
+	/**
+	 * Adds many objects to be rendered. Never blocks, 
+	 * objects will be rendered from next frame.
+	 * 
+	 * @param renders objects
+	 */
+	public void addAll(List<? extends RenderBody> renders) {
+		for (int i = 0, n = renders.size(); i < n; i++)
+			if (renders.get(i) instanceof RenderPolygon)
+				((RenderPolygon) renders.get(i)).setRenderer(this);
+		mPendingChanges.addAll(renders);
+		requestRender();
 	}
 	
 	/**
-	 * Removes object from scene
+	 * Removes object from scene. Never blocks, 
+	 * object will not be rendered from next frame.
 	 * 
 	 * @param render Render to be removed
-	 * @return true if removed, else false
 	 */
-	public boolean remove(RenderBody render) {
-		try { // Wait until everything rendered
-			mGraphicsToRenderMutex.acquire();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+	public void remove(RenderBody render) {
+		mPendingChanges.remove(render);
+		requestRender();
+	}
+	
+	/**
+	 * Removes many objects from scene. Never blocks, 
+	 * objects will not be rendered from next frame.
+	 * 
+	 * @param renders Renders to be removed
+	 */
+	public void removeAll(List<? extends RenderBody> renders) {
+		mPendingChanges.removeAll(renders);
+		requestRender();
+	}
+	
+	/**
+	 * Removes every object from scene. Never blocks, 
+	 * objects will not be rendered from next frame.
+	 */
+	public void clear() {
+		mPendingChanges.clear();
+		requestRender();
+	}
+	
+	/**
+	 * Creates the best renderer for the device. OpenGL ES 2.0 
+	 * renderer if it is supported and its shaders can be built, 
+	 * else fixed-function renderer.
+	 * 
+	 * @param c context
+	 * @return new renderer
+	 */
+	public static SceneRenderer newInstance(Context c) {
+		if (Build.VERSION.SDK_INT >= GLES20_MIN_SDK) {
+			final ActivityManager am = (ActivityManager) c.getSystemService(Context.ACTIVITY_SERVICE);
+			final ConfigurationInfo info = am.getDeviceConfigurationInfo();
+			if (info != null && info.reqGlEsVersion >= 0x20000 
+					&& SceneRenderer20.isSupported())
+				return new SceneRenderer20();
 		}
-		boolean succeed = mGraphicsToRender.remove(render);
-		mGraphicsToRenderMutex.release();
-		return succeed;
+		return new SceneRenderer();
+	}
+	
+	/**
+	 * Sets this renderer as surface's renderer. Must be called 
+	 * instead of surface.setRenderer(), since each backend needs 
+	 * its own context.
+	 * 
+	 * @param surface surface to render on
+	 */
+	public void attachSurface(GLSurfaceView surface) {
+		mSurface = surface;
+		surface.setRenderer(this);
+	}
+	
+	/**
+	 * Marks scene as changed. If surface was idle it renders 
+	 * continuously again, until a frame goes by without changes.
+	 * Can be called from any thread.
+	 */
+	public void requestRender() {
+		mDirty = true;
+		final GLSurfaceView surface = mSurface;
+		if (mRenderingContinuously || surface == null)
+			return;
+		synchronized (mRenderModeLock) {
+			if (!mRenderingContinuously) {
+				mRenderingContinuously = true;
+				surface.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+			}
+		}
+	}
+	
+	/**
+	 * Must be called at the beginning of each frame
+	 */
+	protected void startFrame() {
+		mFrameDirty = mDirty;
+		mDirty = false;
+	}
+	
+	/**
+	 * Must be called at the end of each frame. If nothing changed 
+	 * since last frame, surface is set to render only on demand.
+	 */
+	protected void finishFrame() {
+		final GLSurfaceView surface = mSurface;
+		if (mFrameDirty || !mRenderingContinuously || surface == null)
+			return;
+		synchronized (mRenderModeLock) {
+			mRenderingContinuously = false;
+			/* A change coming now may have seen flag still set, so 
+			 * it wouldn't switch mode back. Flag is cleared first 
+			 * and changes are checked after */
+			if (mDirty) {
+				mRenderingContinuously = true;
+				return;
+			}
+			surface.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+		}
+	}
+	
+	/**
+	 * @return current OpenGL context identifier
+	 */
+	static int getContextGeneration() {
+		return contextGeneration;
+	}
+	
+	/**
+	 * @return true if buffer objects can be used in current context
+	 */
+	static boolean areBufferObjectsSupported() {
+		return bufferObjectsSupported;
 	}
 	
 	/**
@@ -84,11 +244,31 @@ public class SceneRenderer implements Renderer {
 		return mCamera;
 	}
 	
+	/**
+	 * @return bodies out of camera's frame, not drawn on last frame
+	 */
+	public int getCulledBodiesCount() {
+		return mCulledBodiesCount;
+	}
+	
+	/**
+	 * Sets bodies culled on current frame. Changes are 
+	 * logged if debug messages are enabled.
+	 */
+	protected void setCulledBodiesCount(int culledBodiesCount) {
+		if (culledBodiesCount != mCulledBodiesCount && Log.isLoggable(LOG_TAG, Log.DEBUG))
+			Log.d(LOG_TAG, "Culled " + culledBodiesCount + " of " 
+					+ mGraphicsToRender.size() + " bodies");
+		mCulledBodiesCount = culledBodiesCount;
+	}
+	
 	/**
 	 * Called to draw the current frame.
 	 */
 	@Override
 	public synchronized void onDrawFrame(GL10 gl) {
+		startFrame();
+		final RenderCamera camera = mCamera;
 		if (mCamera.isChanged) {
 			/* Set camera. */
 			gl.glMatrixMode(GL10.GL_PROJECTION);
@@ -110,25 +290,81 @@ public class SceneRenderer implements Renderer {
 				Preferences.backgroundColor[2], 1.0f);
 
 		/* Render All objectsCount */
-		final ArrayList<RenderBody> renders = mGraphicsToRender;
+		final IndexedList<RenderBody> renders = mGraphicsToRender;
+		applyPendingChanges(gl);
 			
-		try {
-			mGraphicsToRenderMutex.acquire();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+		final RenderBatch batch = mBatch;
+		batch.resetDrawCallsCount();
+		int culledCount = 0;
 		for (RenderBody r : renders) {
+			/* Skip polygons out of camera's frame */
+			if (r instanceof RenderPolygon && !((RenderPolygon) r).isVisible(camera)) {
+				culledCount++;
+				continue;
+			}
+			if (r instanceof RenderBatch.Batchable 
+					&& ((RenderBatch.Batchable) r).onBatch(gl, batch))
+				continue;
+			/* Keep drawing order, draw batched bodies first */
+			batch.flush(gl);
 			/* Work with new stacked matrix */
 			gl.glPushMatrix();
 			gl.glLoadIdentity();
 			r.onRender(gl);
 			gl.glPopMatrix();
 		}
-		mGraphicsToRenderMutex.release();
+		batch.flush(gl);
+		setCulledBodiesCount(culledCount);
 		/* End drawing */
 		gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+		finishFrame();
 	}
 
+	/**
+	 * Applies queued additions and removals. Must be called 
+	 * from OpenGL's thread, before rendering a frame.
+	 * 
+	 * @param gl OpenGL's space
+	 * @return true if renders changed
+	 */
+	protected boolean applyPendingChanges(GL10 gl) {
+		mChangesListener.gl = gl;
+		return mPendingChanges.applyTo(mGraphicsToRender, mChangesListener);
+	}
+	
+	/**
+	 * Called by OpenGL's thread when pending changes add a render
+	 * 
+	 * @param render render added
+	 */
+	protected void onRenderAdded(RenderBody render) { }
+	
+	/**
+	 * Called by OpenGL's thread when pending changes remove a render
+	 * 
+	 * @param render render removed
+	 */
+	protected void onRenderRemoved(RenderBody render) { }
+	
+	/**
+	 * @return renders to be drawn, in drawing order. Should 
+	 * be only used by OpenGL's thread
+	 */
+	protected IndexedList<RenderBody> getRenders() {
+		return mGraphicsToRender;
+	}
+	
+	/**
+	 * Must be called when a new OpenGL context is created
+	 * 
+	 * @param buffersSupported true if polygons can use GL11 buffer objects
+	 */
+	protected static void onContextCreated(boolean buffersSupported) {
+		/* Every buffer object has been lost with last context */
+		contextGeneration++;
+		bufferObjectsSupported = buffersSupported;
+	}
+	
 	/**
 	 * Called when the surface is resized and after onSurfaceCreated.
 	 */
@@ -151,6 +387,10 @@ public class SceneRenderer implements Renderer {
 	 */
 	@Override
 	public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+		final String version = gl.glGetString(GL10.GL_VERSION);
+		onContextCreated((gl instanceof GL11) && (version != null) 
+				&& !version.contains("1.0"));
+		
 		// Disable some features that we won't need in 2D,
 		// Just for better performance.
 		gl.glHint(GL10.GL_PERSPECTIVE_CORRECTION_HINT, GL10.GL_FASTEST);
@@ -164,4 +404,38 @@ public class SceneRenderer implements Renderer {
 
 	}
 	
+	/**
+	 * Releases OpenGL resources of renders removed from scene, 
+	 * and notifies each change to renderer
+	 */
+	private class RendersChangesListener 
+			implements PendingChangesQueue.OnChangeListener<RenderBody> {
+		/** OpenGL's space of current frame */
+		GL10 gl;
+		
+		public void onAdded(RenderBody render) {
+			onRenderAdded(render);
+		}
+		
+		public void onRemoved(RenderBody render) {
+			if (render instanceof RenderPolygon)
+				((RenderPolygon) render).releaseBufferObjects(gl);
+			onRenderRemoved(render);
+		}
+		
+		public void onAddedAll(List<RenderBody> renders) {
+			for (int i = 0, n = renders.size(); i < n; i++)
+				onAdded(renders.get(i));
+		}
+		
+		public void onRemovedAll(List<RenderBody> renders) {
+			for (int i = 0, n = renders.size(); i < n; i++)
+				onRemoved(renders.get(i));
+		}
+		
+		public void onCleared(List<RenderBody> renders) {
+			onRemovedAll(renders);
+		}
+	}
+	
 }
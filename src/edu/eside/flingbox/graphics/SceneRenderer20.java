@@ -0,0 +1,516 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+
+import android.opengl.GLES20;
+import android.opengl.GLSurfaceView;
+import android.opengl.Matrix;
+import android.util.Log;
+
+import edu.eside.flingbox.Preferences;
+
+/**
+ * OpenGL ES 2.0 backend of {@link SceneRenderer}.
+ *
+ * Polygons' geometry never changes, so it is uploaded once into
+ * buffer objects, grouped in chunks of up to
+ * {@link ShaderProgram#SLOTS_COUNT} polygons. Each frame only
+ * transforms and colors are sent, as uniform arrays, and each
+ * chunk is drawn with a single call.
+ *
+ * Should be only created by {@link SceneRenderer#newInstance(android.content.Context)}.
+ */
+public class SceneRenderer20 extends SceneRenderer {
+	/** EGL 1.3 values, missing in {@link EGL10} */
+	private final static int EGL_OPENGL_ES2_BIT = 4;
+	private final static int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+	
+	/** Set if program couldn't be built on a surface's context */
+	private static volatile boolean programFailed = false;
+	
+	/** Program used to draw, it must be built for each context */
+	private ShaderProgram mProgram;
+	/** Camera projection */
+	private final float[] mProjection = new float[16];
+
+	/** Chunks with on scene polygons, new polygons go into last one */
+	private final ArrayList<PolygonChunk> mChunks = new ArrayList<PolygonChunk>();
+	/** Chunk of each on scene polygon */
+	private final HashMap<RenderPolygon, PolygonChunk> mPolygonsChunks =
+		new HashMap<RenderPolygon, PolygonChunk>();
+	/** Renders that aren't polygons, drawn one by one after polygons */
+	private final ArrayList<RenderBody> mOtherRenders = new ArrayList<RenderBody>();
+
+	SceneRenderer20() {
+		super();
+	}
+
+	/**
+	 * Requests an OpenGL ES 2.0 context
+	 */
+	@Override
+	public void attachSurface(GLSurfaceView surface) {
+		surface.setEGLContextClientVersion(2);
+		super.attachSurface(surface);
+	}
+
+	/**
+	 * Called to draw the current frame.
+	 */
+	@Override
+	public synchronized void onDrawFrame(GL10 gl) {
+		startFrame();
+		final RenderCamera camera = getCamera();
+		if (camera.isChanged) {
+			Matrix.orthoM(mProjection, 0, camera.left, camera.rigth,
+					camera.bottom, camera.top, -1f, 1f);
+			camera.isChanged = false;
+		}
+
+		/* Set background color */
+		GLES20.glClearColor(Preferences.backgroundColor[0], Preferences.backgroundColor[1],
+				Preferences.backgroundColor[2], 1.0f);
+		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+		/* Chunks are updated by onRenderAdded() and onRenderRemoved() */
+		applyPendingChanges(gl);
+
+		final ShaderProgram program = mProgram;
+		if (program == null) {
+			/* Program couldn't be built, only background is drawn */
+			finishFrame();
+			return;
+		}
+		program.use();
+		program.setProjection(mProjection);
+
+		final ArrayList<PolygonChunk> chunks = mChunks;
+		int culledCount = 0;
+		for (int i = 0, n = chunks.size(); i < n; i++) {
+			final PolygonChunk chunk = chunks.get(i);
+			chunk.updateBuffers();
+			culledCount += chunk.draw(program, camera);
+		}
+		setCulledBodiesCount(culledCount);
+
+		final ArrayList<RenderBody> others = mOtherRenders;
+		for (int i = 0, n = others.size(); i < n; i++)
+			others.get(i).onRender(program);
+		finishFrame();
+	}
+
+	/**
+	 * Puts added polygon into last chunk, or into a new one if it's full
+	 */
+	@Override
+	protected void onRenderAdded(RenderBody render) {
+		if (!(render instanceof RenderPolygon)) {
+			mOtherRenders.add(render);
+			return;
+		}
+		final RenderPolygon polygon = (RenderPolygon) render;
+		final ArrayList<PolygonChunk> chunks = mChunks;
+		PolygonChunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if (chunk == null || !chunk.canAdd(polygon)) {
+			chunk = new PolygonChunk();
+			chunks.add(chunk);
+		}
+		chunk.add(polygon);
+		mPolygonsChunks.put(polygon, chunk);
+	}
+
+	/**
+	 * Frees removed polygon's slot. Chunks left empty are deleted.
+	 */
+	@Override
+	protected void onRenderRemoved(RenderBody render) {
+		final PolygonChunk chunk = mPolygonsChunks.remove(render);
+		if (chunk == null) {
+			mOtherRenders.remove(render);
+			return;
+		}
+		chunk.remove((RenderPolygon) render);
+		if (chunk.polygonsCount == 0) {
+			chunk.release();
+			mChunks.remove(chunk);
+		}
+	}
+
+	/**
+	 * Called when the surface is resized and after onSurfaceCreated.
+	 */
+	@Override
+	public void onSurfaceChanged(GL10 gl, int width, int height) {
+		/* Create camera for current surface */
+		getCamera().setSurface(width, height);
+		GLES20.glViewport(0, 0, width, height);
+	}
+
+	/**
+	 * First called when Surface is Created.
+	 */
+	@Override
+	public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+		/* GL11 buffer objects can't be used in this context. Chunks'
+		 * buffer objects died with last context, they are uploaded
+		 * again on next frame */
+		onContextCreated(false);
+
+		GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+		GLES20.glDisable(GLES20.GL_DITHER);
+
+		try {
+			mProgram = new ShaderProgram();
+		} catch (RuntimeException e) {
+			/* Renderer can't be switched with surface's context alive, 
+			 * next scenes will be drawn by fixed-function renderer */
+			Log.e(LOG_TAG, "Shader program can't be built, scene won't be drawn", e);
+			mProgram = null;
+			programFailed = true;
+		}
+	}
+
+	/**
+	 * Builds shader program on a temporary OpenGL ES 2.0 context. 
+	 * Some drivers report OpenGL ES 2.0 but can't build it, and 
+	 * surface's context can't be changed once renderer is chosen.
+	 * 
+	 * @return true if this renderer can be used
+	 */
+	static boolean isSupported() {
+		if (programFailed)
+			return false;
+		final EGL10 egl = (EGL10) EGLContext.getEGL();
+		final EGLDisplay display = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+		if (display == EGL10.EGL_NO_DISPLAY || !egl.eglInitialize(display, new int[2]))
+			return false;
+		final EGLConfig[] configs = new EGLConfig[1];
+		final int[] configsCount = new int[1];
+		if (!egl.eglChooseConfig(display, new int[] { 
+				EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT, 
+				EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT, EGL10.EGL_NONE }, 
+				configs, 1, configsCount) || configsCount[0] == 0)
+			return false;
+		final EGLContext context = egl.eglCreateContext(display, configs[0], EGL10.EGL_NO_CONTEXT, 
+				new int[] { EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE });
+		if (context == EGL10.EGL_NO_CONTEXT)
+			return false;
+		final EGLSurface surface = egl.eglCreatePbufferSurface(display, configs[0], 
+				new int[] { EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE });
+		try {
+			if (surface == EGL10.EGL_NO_SURFACE 
+					|| !egl.eglMakeCurrent(display, surface, surface, context))
+				return false;
+			/* Program dies with context */
+			new ShaderProgram();
+			return true;
+		} catch (RuntimeException e) {
+			Log.w(LOG_TAG, "Shader program can't be built, using fixed-function renderer", e);
+			return false;
+		} finally {
+			egl.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, 
+					EGL10.EGL_NO_CONTEXT);
+			if (surface != EGL10.EGL_NO_SURFACE)
+				egl.eglDestroySurface(display, surface);
+			egl.eglDestroyContext(display, context);
+		}
+	}
+
+	/**
+	 * Group of polygons that share buffer objects and are
+	 * drawn with a single call.
+	 *
+	 * Each polygon keeps its slot, and its vertices their place in
+	 * vertex buffer object, until it's removed. Chunk's last polygon
+	 * is then moved into the freed slot, so only the slots that
+	 * changed are written. Space of removed vertices is reused when
+	 * chunk is compacted.
+	 */
+	private static class PolygonChunk {
+		/** Floats by vertex: x, y and slot */
+		private final static int VERTEX_SIZE = 3;
+		/** Vertices of smallest buffer objects */
+		private final static int MIN_VERTICES_CAPACITY = 256;
+		/** No slot has to be written */
+		private final static int NONE = ShaderProgram.SLOTS_COUNT;
+
+		/** Buffers to write buffer objects, only used by OpenGL's thread */
+		private static FloatBuffer mVerticesBuffer = null;
+		private static ShortBuffer mIndexesBuffer = null;
+
+		final RenderPolygon[] polygons = new RenderPolygon[ShaderProgram.SLOTS_COUNT];
+		int polygonsCount = 0;
+		/** Vertices of polygons in chunk */
+		private int mVerticesCount = 0;
+		/** Vertices used in vertex buffer, including removed ones */
+		private int mVerticesEnd = 0;
+		private int mIndexesCount = 0;
+
+		/** First vertex of each slot's polygon */
+		private final int[] mVerticesOffsets = new int[ShaderProgram.SLOTS_COUNT];
+		/** First index of each slot's polygon */
+		private final int[] mIndexesOffsets = new int[ShaderProgram.SLOTS_COUNT];
+		/** Slots whose vertices must be written */
+		private final boolean[] mOutdatedSlots = new boolean[ShaderProgram.SLOTS_COUNT];
+		private boolean mHasOutdatedSlots = false;
+		/** First slot whose indexes must be written */
+		private int mFirstOutdatedIndexes = NONE;
+
+		/** Vertex and index buffer objects */
+		private final int[] mBuffers = new int[2];
+		private int mBuffersContext = -1;
+		/** Vertices fitting in vertex buffer object, indexes in index one */
+		private int mVerticesCapacity = 0;
+
+		/** Uniforms of each frame */
+		private final float[] mTransforms = new float[4 * ShaderProgram.SLOTS_COUNT];
+		private final float[] mColors = new float[4 * ShaderProgram.SLOTS_COUNT];
+
+		/**
+		 * @return true if polygon fits into this chunk
+		 */
+		boolean canAdd(RenderPolygon polygon) {
+			return polygonsCount < ShaderProgram.SLOTS_COUNT
+				&& mVerticesCount + polygon.getVertices().length / 2 <= RenderBatch.MAX_VERTICES;
+		}
+
+		/**
+		 * Puts polygon into first free slot
+		 */
+		void add(RenderPolygon polygon) {
+			final int verticesCount = polygon.getVertices().length / 2;
+			if (mVerticesEnd + verticesCount > RenderBatch.MAX_VERTICES)
+				compact();
+			final int slot = polygonsCount++;
+			polygons[slot] = polygon;
+			mVerticesOffsets[slot] = mVerticesEnd;
+			mVerticesEnd += verticesCount;
+			mVerticesCount += verticesCount;
+			setSlotOutdated(slot);
+		}
+
+		/**
+		 * Frees polygon's slot, moving last polygon into it
+		 */
+		void remove(RenderPolygon polygon) {
+			int slot = 0;
+			while (polygons[slot] != polygon)
+				slot++;
+			final int last = --polygonsCount;
+			mVerticesCount -= polygon.getVertices().length / 2;
+			if (slot != last) {
+				/* Moved vertices keep their place, but not their slot */
+				polygons[slot] = polygons[last];
+				mVerticesOffsets[slot] = mVerticesOffsets[last];
+				setSlotOutdated(slot);
+			}
+			polygons[last] = null;
+			mOutdatedSlots[last] = false;
+			mFirstOutdatedIndexes = Math.min(mFirstOutdatedIndexes, slot);
+			if (polygonsCount == 0)
+				mVerticesEnd = 0;
+		}
+
+		private void setSlotOutdated(int slot) {
+			mOutdatedSlots[slot] = true;
+			mHasOutdatedSlots = true;
+			mFirstOutdatedIndexes = Math.min(mFirstOutdatedIndexes, slot);
+		}
+
+		/**
+		 * Places polygons' vertices together, dropping removed ones
+		 */
+		private void compact() {
+			mVerticesEnd = 0;
+			for (int slot = 0; slot < polygonsCount; slot++) {
+				mVerticesOffsets[slot] = mVerticesEnd;
+				mVerticesEnd += polygons[slot].getVertices().length / 2;
+				setSlotOutdated(slot);
+			}
+		}
+
+		/**
+		 * Writes changed slots into buffer objects. Buffer objects
+		 * are only created again if they are too small or were lost
+		 * with last context.
+		 */
+		void updateBuffers() {
+			if (mBuffersContext != getContextGeneration() || mVerticesEnd > mVerticesCapacity) {
+				release();
+				compact();
+				createBuffers(Math.min(RenderBatch.MAX_VERTICES,
+						Math.max(MIN_VERTICES_CAPACITY, 2 * mVerticesEnd)));
+			}
+
+			if (mHasOutdatedSlots) {
+				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBuffers[0]);
+				for (int slot = 0; slot < polygonsCount; slot++)
+					if (mOutdatedSlots[slot]) {
+						writeVertices(slot);
+						mOutdatedSlots[slot] = false;
+					}
+				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+				mHasOutdatedSlots = false;
+			}
+
+			if (mFirstOutdatedIndexes != NONE) {
+				writeIndexes(Math.min(mFirstOutdatedIndexes, polygonsCount));
+				mFirstOutdatedIndexes = NONE;
+			}
+		}
+
+		/**
+		 * Creates empty buffer objects
+		 *
+		 * @param verticesCapacity	vertices fitting into vertex buffer
+		 */
+		private void createBuffers(int verticesCapacity) {
+			/* Polygons have less than 3 indexes by vertex */
+			final int[] buffers = mBuffers;
+			GLES20.glGenBuffers(2, buffers, 0);
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+			GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, 4 * VERTEX_SIZE * verticesCapacity,
+					null, GLES20.GL_STATIC_DRAW);
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+			GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 2 * 3 * verticesCapacity,
+					null, GLES20.GL_STATIC_DRAW);
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+			mVerticesCapacity = verticesCapacity;
+			mBuffersContext = getContextGeneration();
+		}
+
+		/**
+		 * Writes vertices of a slot's polygon. Vertex buffer object
+		 * must be bound.
+		 */
+		private void writeVertices(int slot) {
+			final float[] polygonVertices = polygons[slot].getVertices();
+			final int size = VERTEX_SIZE * polygonVertices.length / 2;
+			if (mVerticesBuffer == null || mVerticesBuffer.capacity() < size)
+				mVerticesBuffer = ByteBuffer.allocateDirect(4 * size)
+					.order(ByteOrder.nativeOrder()).asFloatBuffer();
+			final FloatBuffer vertices = mVerticesBuffer;
+			vertices.clear();
+			for (int i = 0; i < polygonVertices.length; i += 2) {
+				vertices.put(polygonVertices[i]);
+				vertices.put(polygonVertices[i + 1]);
+				vertices.put(slot);
+			}
+			vertices.position(0);
+			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER,
+					4 * VERTEX_SIZE * mVerticesOffsets[slot], 4 * size, vertices);
+		}
+
+		/**
+		 * Writes indexes of polygons from a slot to the last one
+		 */
+		private void writeIndexes(int firstSlot) {
+			final int first = firstSlot == 0 ? 0 : mIndexesOffsets[firstSlot - 1]
+					+ polygons[firstSlot - 1].getIndexes().length;
+			int count = first;
+			for (int slot = firstSlot; slot < polygonsCount; slot++) {
+				mIndexesOffsets[slot] = count;
+				count += polygons[slot].getIndexes().length;
+			}
+			mIndexesCount = count;
+			if (count == first)
+				return;
+
+			if (mIndexesBuffer == null || mIndexesBuffer.capacity() < count - first)
+				mIndexesBuffer = ByteBuffer.allocateDirect(2 * (count - first))
+					.order(ByteOrder.nativeOrder()).asShortBuffer();
+			final ShortBuffer indexes = mIndexesBuffer;
+			indexes.clear();
+			for (int slot = firstSlot; slot < polygonsCount; slot++) {
+				final short[] polygonIndexes = polygons[slot].getIndexes();
+				final int base = mVerticesOffsets[slot];
+				for (int i = 0; i < polygonIndexes.length; i++)
+					indexes.put((short) (polygonIndexes[i] + base));
+			}
+			indexes.position(0);
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBuffers[1]);
+			GLES20.glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 2 * first,
+					2 * (count - first), indexes);
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		}
+
+		/**
+		 * Deletes buffer objects, if they still exist
+		 */
+		void release() {
+			if (mBuffersContext == getContextGeneration())
+				GLES20.glDeleteBuffers(2, mBuffers, 0);
+			mBuffersContext = -1;
+			mVerticesCapacity = 0;
+		}
+
+		/**
+		 * Draws every polygon in chunk with current transforms.
+		 * Whole chunk is skipped if all its polygons are out of 
+		 * camera's frame, else clipping is left to OpenGL.
+		 * 
+		 * @return polygons culled
+		 */
+		int draw(ShaderProgram program, RenderCamera camera) {
+			final float[] transforms = mTransforms;
+			final float[] colors = mColors;
+			if (polygonsCount == 0)
+				return 0;
+			boolean visible = false;
+			for (int slot = 0; slot < polygonsCount; slot++) {
+				final RenderPolygon polygon = polygons[slot];
+				if (!visible && polygon.isVisible(camera))
+					visible = true;
+				polygon.getTransform(transforms, 4 * slot);
+				System.arraycopy(polygon.getColor(), 0, colors, 4 * slot, 4);
+			}
+			if (!visible)
+				return polygonsCount;
+			program.setSlots(transforms, colors, polygonsCount);
+
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBuffers[0]);
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBuffers[1]);
+			GLES20.glEnableVertexAttribArray(program.slotAttribute);
+			GLES20.glVertexAttribPointer(program.positionAttribute, 2, GLES20.GL_FLOAT,
+					false, 4 * VERTEX_SIZE, 0);
+			GLES20.glVertexAttribPointer(program.slotAttribute, 1, GLES20.GL_FLOAT,
+					false, 4 * VERTEX_SIZE, 4 * 2);
+			GLES20.glDrawElements(GLES20.GL_TRIANGLES, mIndexesCount,
+					GLES20.GL_UNSIGNED_SHORT, 0);
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.graphics;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * {@link ShaderProgram} wraps the OpenGL ES 2.0 program used to draw
+ * bodies. Each vertex has its local position and the slot of its body;
+ * bodies' transforms (position, cosine and sine of angle) and colors
+ * are uniform arrays indexed by slot, so up to {@link #SLOTS_COUNT}
+ * bodies can be drawn with a single call.
+ *
+ * Must be only used from OpenGL's thread.
+ */
+public class ShaderProgram {
+	/** Bodies that can be drawn by a single call */
+	public final static int SLOTS_COUNT = 32;
+
+	private final static String VERTEX_SHADER =
+		  "uniform mat4 uProjection;\n"
+		+ "uniform vec4 uTransforms[" + SLOTS_COUNT + "];\n"
+		+ "uniform vec4 uColors[" + SLOTS_COUNT + "];\n"
+		+ "attribute vec2 aPosition;\n"
+		+ "attribute float aSlot;\n"
+		+ "varying vec4 vColor;\n"
+		+ "void main() {\n"
+		+ "  int slot = int(aSlot);\n"
+		+ "  vec4 t = uTransforms[slot];\n"
+		+ "  vec2 p = vec2(t.z * aPosition.x - t.w * aPosition.y,\n"
+		+ "                t.w * aPosition.x + t.z * aPosition.y) + t.xy;\n"
+		+ "  vColor = uColors[slot];\n"
+		+ "  gl_Position = uProjection * vec4(p, 0.0, 1.0);\n"
+		+ "}\n";
+
+	private final static String FRAGMENT_SHADER =
+		  "precision mediump float;\n"
+		+ "varying vec4 vColor;\n"
+		+ "void main() {\n"
+		+ "  gl_FragColor = vColor;\n"
+		+ "}\n";
+
+	/** Program name */
+	private final int mProgram;
+	/** Attributes locations */
+	final int positionAttribute, slotAttribute;
+	/** Uniforms locations */
+	private final int mProjectionUniform, mTransformsUniform, mColorsUniform;
+
+	/** Transform of single drawn bodies */
+	private final float[] mSingleTransform = new float[4];
+
+	/**
+	 * Compiles and links program. Must be called from OpenGL's
+	 * thread, once each context is created.
+	 *
+	 * @throws RuntimeException if program can't be built
+	 */
+	public ShaderProgram() {
+		final int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+		final int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+
+		final int program = GLES20.glCreateProgram();
+		GLES20.glAttachShader(program, vertexShader);
+		GLES20.glAttachShader(program, fragmentShader);
+		GLES20.glLinkProgram(program);
+		/* Shaders aren't needed anymore once linked */
+		GLES20.glDeleteShader(vertexShader);
+		GLES20.glDeleteShader(fragmentShader);
+
+		final int[] status = new int[1];
+		GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+		if (status[0] != GLES20.GL_TRUE) {
+			final String log = GLES20.glGetProgramInfoLog(program);
+			GLES20.glDeleteProgram(program);
+			Log.e("flingbox", "Error linking shader program: " + log);
+			throw new RuntimeException("Shader program can't be linked: " + log);
+		}
+
+		mProgram = program;
+		positionAttribute = GLES20.glGetAttribLocation(program, "aPosition");
+		slotAttribute = GLES20.glGetAttribLocation(program, "aSlot");
+		mProjectionUniform = GLES20.glGetUniformLocation(program, "uProjection");
+		mTransformsUniform = GLES20.glGetUniformLocation(program, "uTransforms");
+		mColorsUniform = GLES20.glGetUniformLocation(program, "uColors");
+	}
+
+	/**
+	 * Compiles a shader
+	 */
+	private static int compileShader(int type, String source) {
+		final int shader = GLES20.glCreateShader(type);
+		GLES20.glShaderSource(shader, source);
+		GLES20.glCompileShader(shader);
+
+		final int[] status = new int[1];
+		GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+		if (status[0] != GLES20.GL_TRUE) {
+			final String log = GLES20.glGetShaderInfoLog(shader);
+			GLES20.glDeleteShader(shader);
+			Log.e("flingbox", "Error compiling shader: " + log);
+			throw new RuntimeException("Shader can't be compiled: " + log);
+		}
+		return shader;
+	}
+
+	/**
+	 * Sets program as current one
+	 */
+	public void use() {
+		GLES20.glUseProgram(mProgram);
+		GLES20.glEnableVertexAttribArray(positionAttribute);
+	}
+
+	/**
+	 * Sets projection matrix
+	 *
+	 * @param projection 4x4 column-major matrix
+	 */
+	public void setProjection(float[] projection) {
+		GLES20.glUniformMatrix4fv(mProjectionUniform, 1, false, projection, 0);
+	}
+
+	/**
+	 * Sets transforms and colors of the slots
+	 *
+	 * @param transforms x, y, cos and sin for each slot
+	 * @param colors RGBA for each slot
+	 * @param slotsCount slots to be set
+	 */
+	public void setSlots(float[] transforms, float[] colors, int slotsCount) {
+		GLES20.glUniform4fv(mTransformsUniform, slotsCount, transforms, 0);
+		GLES20.glUniform4fv(mColorsUniform, slotsCount, colors, 0);
+	}
+
+	/**
+	 * Draws a single body from client side buffers.
+	 * Vertices should have 2 coords.
+	 *
+	 * @param mode OpenGL's primitive
+	 * @param vertices Local vertices
+	 * @param indexes Indexes, if null vertices are drawn in order
+	 * @param count Indexes or vertices to be drawn
+	 * @param x Position
+	 * @param y Position
+	 * @param cos Cosine of angle
+	 * @param sin Sine of angle
+	 * @param color RGBA color
+	 */
+	public void draw(int mode, FloatBuffer vertices, ShortBuffer indexes, int count,
+			float x, float y, float cos, float sin, float[] color) {
+		final float[] transform = mSingleTransform;
+		transform[0] = x;
+		transform[1] = y;
+		transform[2] = cos;
+		transform[3] = sin;
+		setSlots(transform, color, 1);
+
+		/* Every vertex uses slot 0 */
+		GLES20.glDisableVertexAttribArray(slotAttribute);
+		GLES20.glVertexAttrib1f(slotAttribute, 0f);
+		GLES20.glVertexAttribPointer(positionAttribute, 2, GLES20.GL_FLOAT, false, 0, vertices);
+		if (indexes != null)
+			GLES20.glDrawElements(mode, count, GLES20.GL_UNSIGNED_SHORT, indexes);
+		else
+			GLES20.glDrawArrays(mode, 0, count);
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import edu.eside.flingbox.bodies.Body;
+import edu.eside.flingbox.bodies.Polygon;
+import edu.eside.flingbox.bodies.PolygonBuilder;
+import edu.eside.flingbox.io.SceneFile.OnBodyReadListener;
+import edu.eside.flingbox.io.SceneFile.OnShapeReadListener;
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.physics.PhysicBody;
+
+/**
+ * Compressed scene file, much smaller than {@link SceneFile} 
+ * but lossy: contour points are quantized.
+ * 
+ * After an uncompressed header (magic, version and quantization 
+ * step) everything is deflated. Each body stores its attributes 
+ * as floats and its contour as differences between consecutive 
+ * quantized points, zig-zag and varint encoded.
+ */
+public class CompressedSceneFile {
+	/** "FBZ1" */
+	final static int MAGIC = 0x46425a31;
+	private final static int VERSION = 1;
+	
+	/** Default distance between quantized coordinates */
+	public final static float DEFAULT_QUANTIZATION_STEP = 1f / 64f;
+	
+	private final static int BODY_TYPE_POLYGON = 1;
+	private final static int FLAG_FIXED = 0x01;
+	
+	/** Only static methods */
+	private CompressedSceneFile() { }
+	
+	/**
+	 * Writes bodies with default quantization step
+	 * 
+	 * @see #write(File, List, float)
+	 */
+	public static void write(File file, List<Body> bodies) throws IOException {
+		write(file, bodies, DEFAULT_QUANTIZATION_STEP);
+	}
+	
+	/**
+	 * Writes bodies into a compressed scene file. 
+	 * Bodies which aren't polygons are skipped.
+	 * 
+	 * @param file		output file, overwritten if it exists
+	 * @param bodies	bodies to be written
+	 * @param step		distance between quantized coordinates
+	 * @throws IOException if file can't be written
+	 */
+	public static void write(File file, List<Body> bodies, float step) throws IOException {
+		final OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			final DataOutputStream header = new DataOutputStream(fileOut);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeFloat(step);
+			header.flush();
+			
+			final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			final DataOutputStream out = new DataOutputStream(
+					new DeflaterOutputStream(fileOut, deflater));
+			int bodiesCount = 0;
+			for (int i = 0, n = bodies.size(); i < n; i++)
+				if (bodies.get(i) instanceof Polygon)
+					bodiesCount++;
+			writeVarint(out, bodiesCount);
+			
+			final float inverseStep = 1f / step;
+			for (int i = 0, n = bodies.size(); i < n; i++) {
+				if (!(bodies.get(i) instanceof Polygon))
+					continue;
+				final Polygon polygon = (Polygon) bodies.get(i);
+				final PhysicBody physics = polygon.getPhysics();
+				
+				writeVarint(out, BODY_TYPE_POLYGON);
+				writeVarint(out, physics.isFixed() ? FLAG_FIXED : 0);
+				out.writeFloat(physics.getPosition().i);
+				out.writeFloat(physics.getPosition().j);
+				out.writeFloat(physics.getAngle());
+				out.writeFloat(physics.getDensity());
+				out.writeFloat(physics.getRestitutionCoeficient());
+				out.writeFloat(physics.getStaticFrictionCoeficient());
+				out.writeFloat(physics.getDynamicFrictionCoeficient());
+				
+				/* Delta encoded contour */
+				final PackedPolygon points = polygon.getContour();
+				writeVarint(out, points.getPointsCount());
+				int lastX = 0, lastY = 0;
+				for (int j = 0; j < points.getPointsCount(); j++) {
+					final int x = Math.round(points.getX(j) * inverseStep);
+					final int y = Math.round(points.getY(j) * inverseStep);
+					writeVarint(out, zigZag(x - lastX));
+					writeVarint(out, zigZag(y - lastY));
+					lastX = x;
+					lastY = y;
+				}
+			}
+			out.close();
+			deflater.end();
+		} finally {
+			fileOut.close();
+		}
+	}
+	
+	/**
+	 * Reads a compressed scene file
+	 * 
+	 * @param file	input file
+	 * @return bodies read
+	 * @throws IOException if file can't be read or is corrupted
+	 */
+	public static ArrayList<Body> read(File file) throws IOException {
+		final SceneFile.BodiesCollector collector = new SceneFile.BodiesCollector();
+		read(file, collector);
+		return collector.bodies;
+	}
+	
+	/**
+	 * Reads a compressed scene file. Listener is called 
+	 * as soon as each body is read.
+	 * 
+	 * @param file		input file
+	 * @param listener	listener for bodies read
+	 * @return false if reading was stopped by listener
+	 * @throws IOException if file can't be read or is corrupted
+	 */
+	public static boolean read(File file, OnBodyReadListener listener) throws IOException {
+		return read(file, new SceneFile.ShapesBuilder(listener));
+	}
+	
+	/**
+	 * Reads a compressed scene file. Listener is called as 
+	 * soon as each body is read, before it's built.
+	 * 
+	 * @param file		input file
+	 * @param listener	listener for bodies read
+	 * @return false if reading was stopped by listener
+	 * @throws IOException if file can't be read or is corrupted
+	 */
+	public static boolean read(File file, OnShapeReadListener listener) throws IOException {
+		final InputStream fileIn = new BufferedInputStream(new FileInputStream(file));
+		try {
+			final DataInputStream header = new DataInputStream(fileIn);
+			if (header.readInt() != MAGIC)
+				throw new IOException("Not a compressed flingbox scene file");
+			final int version = header.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported scene file version: " + version);
+			final float step = header.readFloat();
+			
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new InflaterInputStream(fileIn)));
+			final int bodiesCount = readVarint(in);
+			for (int i = 0; i < bodiesCount; i++) {
+				final int type = readVarint(in);
+				if (type != BODY_TYPE_POLYGON)
+					throw new IOException("Unknown body type: " + type);
+				final PolygonBuilder.Shape shape = new PolygonBuilder.Shape();
+				shape.isFixed = (readVarint(in) & FLAG_FIXED) != 0;
+				shape.position.set(in.readFloat(), in.readFloat());
+				shape.angle = in.readFloat();
+				shape.hasProperties = true;
+				shape.density = in.readFloat();
+				shape.restitution = in.readFloat();
+				shape.staticFriction = in.readFloat();
+				shape.dynamicFriction = in.readFloat();
+				
+				final int pointsCount = readVarint(in);
+				if (pointsCount < 3)
+					throw new IOException("Invalid contour for body " + i);
+				final PackedPolygon points = new PackedPolygon(pointsCount);
+				int x = 0, y = 0;
+				for (int j = 0; j < pointsCount; j++) {
+					x += unZigZag(readVarint(in));
+					y += unZigZag(readVarint(in));
+					points.set(j, x * step, y * step);
+				}
+				
+				shape.contour = points;
+				if (!listener.onShapeRead(shape, i, bodiesCount))
+					return false;
+			}
+			return true;
+		} finally {
+			fileIn.close();
+		}
+	}
+	
+	/**
+	 * Maps signed values to unsigned ones, small magnitudes first
+	 */
+	private static int zigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+	
+	private static int unZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	/**
+	 * Writes an unsigned int in 7 bits groups, least significant first
+	 */
+	private static void writeVarint(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+	
+	private static int readVarint(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			final int b = in.read();
+			if (b < 0)
+				throw new EOFException("Truncated scene file");
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+}
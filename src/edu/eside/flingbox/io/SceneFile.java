@@ -0,0 +1,304 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.eside.flingbox.bodies.Body;
+import edu.eside.flingbox.bodies.Polygon;
+import edu.eside.flingbox.bodies.PolygonBuilder;
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.physics.PhysicBody;
+import edu.eside.flingbox.xml.InvalidXmlException;
+import edu.eside.flingbox.xml.SceneXmlReader;
+
+/**
+ * Binary scene file. Much faster to read and write than XML, 
+ * since points are stored as raw floats.
+ * 
+ * Layout, little endian:
+ * <pre>
+ * header:     magic, version, bodies count, total points  (4 ints)
+ * body table: type, points count, first point,            (3 ints)
+ *             x, y, angle,                                (3 floats)
+ *             flags                                       (1 int)
+ * contours:   x, y of every point, packed                 (floats)
+ * </pre>
+ * Points are relative to body's centroid, as kept by {@link Polygon}.
+ */
+public class SceneFile {
+	/** "FBX1" */
+	private final static int MAGIC = 0x46425831;
+	private final static int VERSION = 1;
+	
+	private final static int HEADER_SIZE = 4 * 4;
+	private final static int BODY_ENTRY_SIZE = 7 * 4;
+	
+	private final static int BODY_TYPE_POLYGON = 1;
+	private final static int FLAG_FIXED = 0x01;
+	
+	/**
+	 * Listener called for each body read, so scenes can be 
+	 * used while they are being read.
+	 */
+	public interface OnBodyReadListener {
+		/**
+		 * Called when a body has been read
+		 * 
+		 * @param body			body read
+		 * @param index			index of body in file
+		 * @param bodiesCount	bodies in file, -1 if unknown
+		 * @return false to stop reading
+		 */
+		public boolean onBodyRead(Body body, int index, int bodiesCount);
+	}
+	
+	/**
+	 * Listener called for each body read, before it's built, 
+	 * so bodies can be built in parallel by {@link PolygonBuilder}.
+	 */
+	public interface OnShapeReadListener {
+		/**
+		 * Called when a body has been read
+		 * 
+		 * @param shape			body read, can be kept
+		 * @param index			index of body in file
+		 * @param bodiesCount	bodies in file, -1 if unknown
+		 * @return false to stop reading
+		 */
+		public boolean onShapeRead(PolygonBuilder.Shape shape, int index, int bodiesCount);
+	}
+	
+	/**
+	 * Builds each shape read, as soon as it's read
+	 */
+	public static class ShapesBuilder implements OnShapeReadListener {
+		private final OnBodyReadListener mListener;
+		
+		/**
+		 * @param listener	listener of built bodies
+		 */
+		public ShapesBuilder(OnBodyReadListener listener) {
+			mListener = listener;
+		}
+		
+		public boolean onShapeRead(PolygonBuilder.Shape shape, int index, int bodiesCount) {
+			return mListener.onBodyRead(shape.build(), index, bodiesCount);
+		}
+	}
+	
+	/** Only static methods */
+	private SceneFile() { }
+	
+	/**
+	 * Writes bodies into a binary scene file, with a single 
+	 * gathering write. Bodies which aren't polygons are skipped.
+	 * 
+	 * @param file		output file, overwritten if it exists
+	 * @param bodies	bodies to be written
+	 * @throws IOException if file can't be written
+	 */
+	public static void write(File file, List<Body> bodies) throws IOException {
+		/* Count bodies and points to size buffers */
+		int bodiesCount = 0, pointsCount = 0;
+		for (int i = 0, n = bodies.size(); i < n; i++)
+			if (bodies.get(i) instanceof Polygon) {
+				bodiesCount++;
+				pointsCount += ((Polygon) bodies.get(i)).getContour().getPointsCount();
+			}
+		
+		final ByteBuffer table = ByteBuffer
+			.allocate(HEADER_SIZE + BODY_ENTRY_SIZE * bodiesCount)
+			.order(ByteOrder.LITTLE_ENDIAN);
+		final ByteBuffer contours = ByteBuffer
+			.allocate(4 * 2 * pointsCount)
+			.order(ByteOrder.LITTLE_ENDIAN);
+		final FloatBuffer contourFloats = contours.asFloatBuffer();
+		
+		table.putInt(MAGIC).putInt(VERSION).putInt(bodiesCount).putInt(pointsCount);
+		int firstPoint = 0;
+		for (int i = 0, n = bodies.size(); i < n; i++) {
+			if (!(bodies.get(i) instanceof Polygon))
+				continue;
+			final Polygon polygon = (Polygon) bodies.get(i);
+			final PhysicBody physics = polygon.getPhysics();
+			final PackedPolygon points = polygon.getContour();
+			final int count = points.getPointsCount();
+			
+			table.putInt(BODY_TYPE_POLYGON).putInt(count).putInt(firstPoint);
+			table.putFloat(physics.getPosition().i).putFloat(physics.getPosition().j);
+			table.putFloat(physics.getAngle());
+			table.putInt(physics.isFixed() ? FLAG_FIXED : 0);
+			
+			contourFloats.put(points.getPoints(), 0, 2 * count);
+			firstPoint += count;
+		}
+		table.position(0);
+		
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			final FileChannel channel = out.getChannel();
+			final ByteBuffer[] buffers = new ByteBuffer[] { table, contours };
+			/* Gathering write may be partial, finish it */
+			while (table.hasRemaining() || contours.hasRemaining())
+				channel.write(buffers);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Reads a binary scene file, mapping it into memory.
+	 * 
+	 * @param file	input file
+	 * @return bodies read
+	 * @throws IOException if file can't be read or is corrupted
+	 */
+	public static ArrayList<Body> read(File file) throws IOException {
+		final BodiesCollector collector = new BodiesCollector();
+		read(file, collector);
+		return collector.bodies;
+	}
+	
+	/**
+	 * Reads a binary scene file, mapping it into memory. 
+	 * Listener is called as soon as each body is read.
+	 * {@link CompressedSceneFile}s are also accepted.
+	 * 
+	 * @param file		input file
+	 * @param listener	listener for bodies read
+	 * @return false if reading was stopped by listener
+	 * @throws IOException if file can't be read or is corrupted
+	 */
+	public static boolean read(File file, OnBodyReadListener listener) throws IOException {
+		return read(file, new ShapesBuilder(listener));
+	}
+	
+	/**
+	 * Reads a binary scene file, mapping it into memory. 
+	 * Listener is called as soon as each body is read, 
+	 * before it's built.
+	 * {@link CompressedSceneFile}s are also accepted.
+	 * 
+	 * @param file		input file
+	 * @param listener	listener for bodies read
+	 * @return false if reading was stopped by listener
+	 * @throws IOException if file can't be read or is corrupted
+	 */
+	public static boolean read(File file, OnShapeReadListener listener) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			final long size = channel.size();
+			if (size < HEADER_SIZE)
+				throw new IOException("Not a flingbox scene file");
+			final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (map.order(ByteOrder.BIG_ENDIAN).getInt(0) == CompressedSceneFile.MAGIC)
+				return CompressedSceneFile.read(file, listener);
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			return read(map, listener);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Reads bodies from a buffer with a whole binary scene
+	 */
+	private static boolean read(ByteBuffer buffer, OnShapeReadListener listener) 
+			throws IOException {
+		if (buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a flingbox scene file");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("Unsupported scene file version: " + buffer.getInt(4));
+		final int bodiesCount = buffer.getInt(8);
+		final int pointsCount = buffer.getInt(12);
+		
+		final int contoursStart = HEADER_SIZE + BODY_ENTRY_SIZE * bodiesCount;
+		if (bodiesCount < 0 || pointsCount < 0 
+				|| buffer.capacity() < contoursStart + 4 * 2 * (long) pointsCount)
+			throw new IOException("Truncated scene file");
+		buffer.position(contoursStart);
+		final FloatBuffer contours = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		
+		for (int i = 0; i < bodiesCount; i++) {
+			final int entry = HEADER_SIZE + BODY_ENTRY_SIZE * i;
+			final int type = buffer.getInt(entry);
+			final int count = buffer.getInt(entry + 4);
+			final int first = buffer.getInt(entry + 8);
+			if (type != BODY_TYPE_POLYGON)
+				throw new IOException("Unknown body type: " + type);
+			if (count < 3 || first < 0 || first + count > pointsCount)
+				throw new IOException("Invalid contour for body " + i);
+			
+			/* Bulk read of contour, straight into polygon's points */
+			final PackedPolygon points = new PackedPolygon(count);
+			contours.position(2 * first);
+			contours.get(points.getPoints(), 0, 2 * count);
+			
+			final PolygonBuilder.Shape shape = new PolygonBuilder.Shape();
+			shape.contour = points;
+			shape.position.set(buffer.getFloat(entry + 12), buffer.getFloat(entry + 16));
+			shape.angle = buffer.getFloat(entry + 20);
+			shape.isFixed = (buffer.getInt(entry + 24) & FLAG_FIXED) != 0;
+			if (!listener.onShapeRead(shape, i, bodiesCount))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Converts a XML scene into a binary one
+	 * 
+	 * @param xml		XML scene
+	 * @param file		output binary file
+	 * @return true if success
+	 * @throws IOException if binary file can't be written
+	 * @throws InvalidXmlException if XML isn't a scene
+	 */
+	public static boolean fromXml(Reader xml, File file) throws IOException, InvalidXmlException {
+		final BodiesCollector collector = new BodiesCollector();
+		SceneXmlReader.readScene(xml, collector);
+		write(file, collector.bodies);
+		return true;
+	}
+	
+	/**
+	 * Collects bodies read into a list
+	 */
+	static class BodiesCollector implements OnBodyReadListener {
+		final ArrayList<Body> bodies = new ArrayList<Body>();
+		
+		public boolean onBodyRead(Body body, int index, int bodiesCount) {
+			bodies.add(body);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.io;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import edu.eside.flingbox.bodies.Body;
+import edu.eside.flingbox.bodies.PolygonBuilder;
+import edu.eside.flingbox.xml.SceneXmlReader;
+
+/**
+ * Loads a scene file in background. Bodies are delivered in 
+ * batches while file is still being read, so they can be shown 
+ * as soon as possible. Polygons of each batch are built in 
+ * parallel by a {@link PolygonBuilder}.
+ * 
+ * Listener is always called from the thread witch created 
+ * the loader, usually UI thread.
+ */
+public class SceneLoader implements Runnable, SceneFile.OnShapeReadListener {
+	/**
+	 * Callbacks of scene loading
+	 */
+	public interface OnLoadListener {
+		/**
+		 * Called with each batch of bodies read
+		 * 
+		 * @param bodies bodies read, can be kept
+		 */
+		public void onBodiesLoaded(ArrayList<Body> bodies);
+		
+		/**
+		 * Called after each batch
+		 * 
+		 * @param progress file read, [0, 1]
+		 */
+		public void onLoadProgress(float progress);
+		
+		/**
+		 * Called when loading ends, even if it fails. 
+		 * Not called if loading is canceled.
+		 * 
+		 * @param success true if whole file was loaded
+		 */
+		public void onLoadFinished(boolean success);
+	}
+	
+	/** Max bodies in a batch */
+	private final static int MAX_BATCH_SIZE = 64;
+	/** Max time a read body waits to be delivered */
+	private final static long MAX_BATCH_DELAY = 100;
+	
+	private final File mFile;
+	private final boolean mIsXml;
+	private final OnLoadListener mListener;
+	/** Handler of the thread witch receives callbacks */
+	private final Handler mHandler = new Handler();
+	
+	/** Builds polygons of read shapes, shared by loading thread's batches */
+	private final PolygonBuilder mBuilder = new PolygonBuilder();
+	
+	/** Thread reading file */
+	private Thread mLoadingThread;
+	private volatile boolean mCanceled = false;
+	
+	/** Shapes read but not built nor delivered yet */
+	private ArrayList<PolygonBuilder.Shape> mBatch = new ArrayList<PolygonBuilder.Shape>();
+	/** Time when first body of batch was read */
+	private long mBatchStartTime;
+	/** XML reader, to compute progress. Null for binary files */
+	private CountingReader mXmlReader;
+	
+	/**
+	 * Creates a loader for a file
+	 * 
+	 * @param file		scene file
+	 * @param isXml		true for XML scenes, false for {@link SceneFile} ones
+	 * @param listener	listener of loading
+	 */
+	public SceneLoader(File file, boolean isXml, OnLoadListener listener) {
+		mFile = file;
+		mIsXml = isXml;
+		mListener = listener;
+	}
+	
+	/**
+	 * Starts loading in background
+	 */
+	public void start() {
+		if (mLoadingThread != null)
+			return;
+		mLoadingThread = new Thread(this);
+		mLoadingThread.start();
+	}
+	
+	/**
+	 * Stops loading. No more callbacks will be called.
+	 */
+	public void cancel() {
+		mCanceled = true;
+		mBuilder.cancel();
+	}
+	
+	/**
+	 * Loading thread
+	 */
+	@Override
+	public void run() {
+		boolean success = false;
+		try {
+			if (mIsXml) {
+				mXmlReader = new CountingReader(new FileReader(mFile));
+				try {
+					success = SceneXmlReader.readScene(mXmlReader, this);
+				} finally {
+					mXmlReader.close();
+				}
+			} else
+				success = SceneFile.read(mFile, this);
+		} catch (Exception ex) {
+			Log.e("flingbox", "Error loading scene: " + ex);
+			success = false;
+		}
+		
+		deliverBatch(1f);
+		final boolean loadSuccess = success;
+		mHandler.post(new Runnable() {
+			public void run() {
+				if (!mCanceled)
+					mListener.onLoadFinished(loadSuccess);
+			}
+		});
+	}
+	
+	/**
+	 * Called by loading thread for each body read
+	 */
+	public boolean onShapeRead(PolygonBuilder.Shape shape, int index, int bodiesCount) {
+		if (mCanceled)
+			return false;
+		
+		final long now = SystemClock.uptimeMillis();
+		if (mBatch.isEmpty())
+			mBatchStartTime = now;
+		mBatch.add(shape);
+		
+		if (mBatch.size() >= MAX_BATCH_SIZE || now - mBatchStartTime >= MAX_BATCH_DELAY) {
+			final float progress;
+			if (bodiesCount > 0)
+				progress = (float) (index + 1) / bodiesCount;
+			else if (mXmlReader != null && mFile.length() > 0)
+				progress = Math.min(1f, (float) mXmlReader.charsRead / mFile.length());
+			else
+				progress = 0f;
+			deliverBatch(progress);
+		}
+		return true;
+	}
+	
+	/**
+	 * Builds current batch and posts it to listener's thread
+	 */
+	private void deliverBatch(final float progress) {
+		final ArrayList<Body> batch = mBuilder.buildShapes(mBatch);
+		mBatch.clear();
+		mHandler.post(new Runnable() {
+			public void run() {
+				if (mCanceled)
+					return;
+				if (!batch.isEmpty())
+					mListener.onBodiesLoaded(batch);
+				mListener.onLoadProgress(progress);
+			}
+		});
+	}
+	
+	/**
+	 * Reader witch counts read chars
+	 */
+	private static class CountingReader extends FilterReader {
+		volatile long charsRead = 0;
+		
+		CountingReader(Reader in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			final int c = super.read();
+			if (c >= 0)
+				charsRead++;
+			return c;
+		}
+		
+		@Override
+		public int read(char[] buffer, int offset, int count) throws IOException {
+			final int read = super.read(buffer, offset, count);
+			if (read > 0)
+				charsRead += read;
+			return read;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.math;
+
+/**
+ * Iterative Douglas-Peucker reducer over points stored as x, y pairs.
+ * Same result as {@link PolygonUtils#douglasPeuckerReducer(Vector2D[], float)}
+ * but segments to be split are kept in an explicit stack, so long
+ * strokes can't overflow call stack, kept points are marked in a
+ * bitset and distances are compared squared, without square roots.
+ *
+ * Stack and bitset are reused, so a reducer doesn't allocate once
+ * they are big enough. Not thread-safe.
+ */
+public class DouglasPeuckerReducer {
+	/** Segments to be split, as first and last indexes */
+	private int[] mStack = new int[2 * 32];
+	/** Kept points, a bit for each one */
+	private long[] mKept = new long[16];
+
+	/**
+	 * Reduces points of a curve.
+	 *
+	 * @param xy			Points, as x, y pairs
+	 * @param pointsCount	Points to be reduced
+	 * @param epsilon		Max distance to ignore a point
+	 * @param result		Array where kept points are stored, as x, y pairs.
+	 * 						Should have room for all points
+	 * @return				Points kept
+	 */
+	public int reduce(final float[] xy, final int pointsCount, final float epsilon,
+			final float[] result) {
+		final int lastPoint = pointsCount - 1;
+		if (lastPoint < 3 || epsilon <= 0.0f) { // No reduction possible
+			System.arraycopy(xy, 0, result, 0, 2 * pointsCount);
+			return pointsCount;
+		}
+		final float epsilonSquare = epsilon * epsilon;
+
+		final int words = (pointsCount + 63) >>> 6;
+		if (mKept.length < words)
+			mKept = new long[Math.max(words, 2 * mKept.length)];
+		final long[] kept = mKept;
+		for (int w = 0; w < words; w++)
+			kept[w] = 0L;
+		kept[0] = 1L; // First point is always kept
+
+		int[] stack = mStack;
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = lastPoint;
+		while (top > 0) {
+			final int last = stack[--top];
+			final int first = stack[--top];
+			final float ax = xy[2 * first], ay = xy[2 * first + 1];
+			final float dx = xy[2 * last] - ax, dy = xy[2 * last + 1] - ay;
+			final float lengthSquare = dx * dx + dy * dy;
+
+			/*
+			 * Distance to line is |cross| / length, for a fixed line
+			 * max distance is max cross^2. If ends are the same point
+			 * distance to it is used.
+			 */
+			float maxValue = 0f;
+			int maxIndex = 0;
+			for (int i = first + 1; i < last; i++) {
+				final float px = xy[2 * i] - ax, py = xy[2 * i + 1] - ay;
+				final float value;
+				if (lengthSquare > 0f) {
+					final float cross = dx * py - dy * px;
+					value = cross * cross;
+				} else
+					value = px * px + py * py;
+				if (value > maxValue) {
+					maxValue = value;
+					maxIndex = i;
+				}
+			}
+
+			if (maxValue > (lengthSquare > 0f ? epsilonSquare * lengthSquare : epsilonSquare)) {
+				kept[maxIndex >>> 6] |= 1L << maxIndex;
+				if (top + 4 > stack.length) {
+					final int[] grown = new int[2 * stack.length];
+					System.arraycopy(stack, 0, grown, 0, top);
+					mStack = stack = grown;
+				}
+				/* First half is popped first, as recursion does */
+				if (last - maxIndex > 1) {
+					stack[top++] = maxIndex;
+					stack[top++] = last;
+				}
+				if (maxIndex - first > 1) {
+					stack[top++] = first;
+					stack[top++] = maxIndex;
+				}
+			}
+		}
+
+		/* Last point only if it isn't over first one */
+		final float ex = xy[2 * lastPoint] - xy[0], ey = xy[2 * lastPoint + 1] - xy[1];
+		if (ex * ex + ey * ey > epsilonSquare)
+			kept[lastPoint >>> 6] |= 1L << lastPoint;
+
+		/* Copy kept points in order */
+		int keptCount = 0;
+		for (int w = 0; w < words; w++)
+			for (long bits = kept[w]; bits != 0L; bits &= bits - 1) {
+				final int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+				result[2 * keptCount] = xy[2 * i];
+				result[2 * keptCount + 1] = xy[2 * i + 1];
+				keptCount++;
+			}
+		return keptCount;
+	}
+}
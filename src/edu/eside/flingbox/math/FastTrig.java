@@ -0,0 +1,84 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.math;
+
+/**
+ * Table-driven sine and cosine, with linear interpolation 
+ * between entries. Error is below {@link #MAX_ERROR}, which 
+ * is enough to draw and collide bodies, but not for 
+ * deterministic simulations.
+ */
+public final class FastTrig {
+	/** Entries by turn, power of two */
+	private final static int TABLE_SIZE = 4096;
+	private final static int TABLE_MASK = TABLE_SIZE - 1;
+	private final static double INDEXES_BY_RADIAN = TABLE_SIZE / (2.0 * Math.PI);
+	/** Angles over this lose too much precision to be indexed */
+	private final static float MAX_TABLE_ANGLE = 1e5f;
+	
+	/** Sine of each entry, plus one to interpolate last one */
+	private final static float[] SIN_TABLE = new float[TABLE_SIZE + 1];
+	
+	/** 
+	 * Max absolute error. Interpolation error is 
+	 * (2 PI / TABLE_SIZE)^2 / 8, about 3e-7, plus rounding 
+	 */
+	public final static float MAX_ERROR = 5e-7f;
+	
+	static {
+		for (int i = 0; i <= TABLE_SIZE; i++)
+			SIN_TABLE[i] = (float) StrictMath.sin(2.0 * Math.PI * i / TABLE_SIZE);
+	}
+	
+	/** Only static methods */
+	private FastTrig() { }
+	
+	/**
+	 * @return approximate sine of angle
+	 */
+	public static float sin(float angle) {
+		return interpolate(angle, 0);
+	}
+	
+	/**
+	 * @return approximate cosine of angle
+	 */
+	public static float cos(float angle) {
+		/* cos(a) = sin(a + PI / 2), a quarter of table */
+		return interpolate(angle, TABLE_SIZE / 4);
+	}
+	
+	/**
+	 * Interpolates table at angle, shifted by some entries
+	 */
+	private static float interpolate(float angle, int shift) {
+		if (angle > MAX_TABLE_ANGLE || angle < -MAX_TABLE_ANGLE)
+			return (float) (shift == 0 ? StrictMath.sin(angle) : StrictMath.cos(angle));
+		/* In double, float would lose the fraction for big angles */
+		final double position = angle * INDEXES_BY_RADIAN;
+		int index = (int) position;
+		if (position < index) // Truncated to zero, we need floor
+			index--;
+		final float fraction = (float) (position - index);
+		index = (index + shift) & TABLE_MASK;
+		final float[] table = SIN_TABLE;
+		final float from = table[index];
+		return from + (table[index + 1] - from) * fraction;
+	}
+}
@@ -27,23 +27,28 @@ import java.util.ArrayList;
  */
 public class Intersect {
 	/** Just pointer to recognize polygon side */
-	public final Vector2D[] polygonA;
+	public final PackedPolygon polygonA;
 	/** Just pointer to recognize polygon side */
-	public final Vector2D[] polygonB;
+	public final PackedPolygon polygonB;
 	
-	/** Stores array with intersect contour of first polygon */
-	public final Vector2D[] contourA; 
-	/** Stores array with intersect contour of second polygon */
-	public final Vector2D[] contourB; 
+	/** First point of polygon A inside the intersection */
+	public final int contourAStart;
+	/** Points of polygon A inside the intersection, wrapping around */
+	public final int contourALength;
+	/** First point of polygon B inside the intersection */
+	public final int contourBStart;
+	/** Points of polygon B inside the intersection, wrapping around */
+	public final int contourBLength;
 	
-	/** Ingoing point, it's also in contour[0] */
+	/** Ingoing point */
 	public final Vector2D ingoingPoint;
-	/** Outgoing point, also in contour*/
+	/** Outgoing point */
 	public final Vector2D outgoingPoint;
 
 	
 	/**
-	 * Local constructor for an intersection. Computes intersectionContour
+	 * Local constructor for an intersection. Computes intersection's 
+	 * contours, as ranges of polygons' points.
 	 * 
 	 * @param polygonA first Polygon
 	 * @param polygonB second polygon
@@ -54,11 +59,11 @@ public class Intersect {
 	 * @param pAOut index of the point after outgoing point
 	 * @param pBOut index of the point after outgoing point
 	 */
-	private Intersect(Vector2D[] polygonA, Vector2D[] polygonB, 
+	private Intersect(PackedPolygon polygonA, PackedPolygon polygonB, 
 			Vector2D ingoing, Vector2D outgoing,
 			int pAIn, int pBIn, int pAOut, int pBOut) throws IllegalArgumentException {
-		final int pointsCountA = polygonA.length;
-		final int pointsCountB = polygonB.length;
+		final int pointsCountA = polygonA.getPointsCount();
+		final int pointsCountB = polygonB.getPointsCount();
 		
 		/* Calculate total points that will be stored */
 		final int intContourALen = ((pAOut - pAIn + pointsCountA) % pointsCountA);	// For polygon A intersect
@@ -66,22 +71,15 @@ public class Intersect {
 		if (intContourALen <= 0 && intContourBLen <= 0)
 			throw new IllegalArgumentException("Intersection is a line. No contour passed.");
 		
-		/* Copy intersecting contour from A */
-		Vector2D[] contourA = new Vector2D[intContourALen];
-		for (int i = 0; i < intContourALen; i++)
-			contourA[i] = polygonA[(pAIn + i) % pointsCountA];
-		
-		/* Copy intersecting contour from B, B order is reverse */
-		Vector2D[] contourB = new Vector2D[intContourBLen];
-		for (int i = 0; i < intContourBLen ; i++)
-			contourB[i] = polygonB[(pBOut + i) % pointsCountB];
-		
 		this.polygonA = polygonA;
 		this.polygonB = polygonB;
 		this.ingoingPoint = ingoing;
 		this.outgoingPoint = outgoing;
-		this.contourA = contourA;
-		this.contourB = contourB;
+		/* B order is reverse */
+		this.contourAStart = pAIn;
+		this.contourALength = intContourALen;
+		this.contourBStart = pBOut;
+		this.contourBLength = intContourBLen;
 	}
 	
 	/**
@@ -91,11 +89,13 @@ public class Intersect {
 	 * @param polygonB second polygon
 	 * @return an array with all intersect. if no intersects, an empty array returned
 	 */
-	public static Intersect[] intersectPolygons(Vector2D[] polygonA, Vector2D[] polygonB) {
+	public static Intersect[] intersectPolygons(PackedPolygon polygonA, PackedPolygon polygonB) {
 		final ArrayList<Intersect> intersections = new ArrayList<Intersect>();
 		
-		final int pointsCountA = polygonA.length;
-		final int pointsCountB = polygonB.length;
+		final float[] pointsA = polygonA.getPoints();
+		final float[] pointsB = polygonB.getPoints();
+		final int pointsCountA = polygonA.getPointsCount();
+		final int pointsCountB = polygonB.getPointsCount();
 		
 		/* We will need to storage line's intersections */
 		Vector2D lastIngoingIntersect = null, lastOutgoingIntersect = null;
@@ -103,31 +103,37 @@ public class Intersect {
 		int lastOutgoingPointA = 0, lastOutgoingPointB = 0;
 		
 		Vector2D intersect = new Vector2D();
-		for (int i = 0; i < pointsCountA; i++) 
+		for (int i = 0; i < pointsCountA; i++) {
+			final int nextA = (i + 1) % pointsCountA;
+			final float a0x = pointsA[2 * i], a0y = pointsA[2 * i + 1];
+			final float a1x = pointsA[2 * nextA], a1y = pointsA[2 * nextA + 1];
 			for (int j = 0; j < pointsCountB; j++) {
+				final int nextB = (j + 1) % pointsCountB;
 				/* Check each point */
-				int intersectType = computeIntersectionOfSegments(polygonA[i], polygonA[(i + 1) % pointsCountA], 
-						polygonB[j], polygonB[(j + 1) % pointsCountB], intersect);
+				int intersectType = computeIntersectionOfSegments(a0x, a0y, a1x, a1y, 
+						pointsB[2 * j], pointsB[2 * j + 1], pointsB[2 * nextB], pointsB[2 * nextB + 1], 
+						intersect);
 				if (intersectType == 0) // No intersect 
 					continue;
 				
 				if (intersectType > 0) { // Ingoing Intersect
 					lastIngoingIntersect = new Vector2D(intersect);
-					lastIngoingPointA = (i + 1) % pointsCountA;
-					lastIngoingPointB = (j + 1) % pointsCountB;
+					lastIngoingPointA = nextA;
+					lastIngoingPointB = nextB;
 				} else  // Outgoing Intersect
 					if (lastIngoingIntersect != null) { // We have a complete intersecion
 						intersections.add(
 								new Intersect(polygonA, polygonB, lastIngoingIntersect, new Vector2D(intersect), 
 										lastIngoingPointA, lastIngoingPointB, 
-										(i + 1) % pointsCountA, (j + 1) % pointsCountB));
+										nextA, nextB));
 						lastIngoingIntersect = null; // wait for another intersection
 					} else {
 						lastOutgoingIntersect = new Vector2D(intersect);
-						lastOutgoingPointA = (i + 1) % pointsCountA;
-						lastOutgoingPointB = (j + 1) % pointsCountB;
+						lastOutgoingPointA = nextA;
+						lastOutgoingPointB = nextB;
 					}
 			}
+		}
 		if (lastIngoingIntersect != null && lastOutgoingIntersect != null)
 			intersections.add(
 					new Intersect(polygonA, polygonB, 
@@ -142,20 +148,14 @@ public class Intersect {
 	/**
 	 * Computes intersect between two segments
 	 * 
-	 * @param segA0 first segment point
-	 * @param segA1 first segment point
-	 * @param segB0 second segment point
-	 * @param segB1 second segment point
+	 * @param a0x, a0y, a1x, a1y first segment's points
+	 * @param b0x, b0y, b1x, b1y second segment's points
 	 * @param intersectionPoint Vector to storage intersection point
 	 * @return [-1, 0, 1]; 0 no intersection; 1 ingoing intersection; -1 outgoing Intersection 
 	 */
-	private static int computeIntersectionOfSegments(final Vector2D segA0, final Vector2D segA1, 
-			final Vector2D segB0, final Vector2D segB1, 
-			Vector2D intersectionPoint) {
-		/* Get components to local variables. Just for performance */
-		final float a0x = segA0.i, a0y = segA0.j, a1x = segA1.i, a1y = segA1.j, 
-			b0x = segB0.i, b0y = segB0.j, b1x = segB1.i, b1y = segB1.j;
-		
+	private static int computeIntersectionOfSegments(final float a0x, final float a0y, 
+			final float a1x, final float a1y, final float b0x, final float b0y, 
+			final float b1x, final float b1y, Vector2D intersectionPoint) {
 		final float d = (b1y - b0y) * (a1x - a0x) - (b1x - b0x) * (a1y - a0y);
 		
 		if (d == 0.0f)
@@ -183,26 +183,38 @@ public class Intersect {
 	 * @return penetration distance
 	 */
 	public float getIntersectionDepth() {
-		final Vector2D ingoing = this.ingoingPoint;
-		final Vector2D outgoing = this.outgoingPoint;
-		final Vector2D[] contourA = this.contourA;
-		final Vector2D[] contourB = this.contourB;
-		
-		float penetrationByA = 0f;
-		for (Vector2D p : contourA) {
-			float pointsPenetration = PolygonUtils.distanceFromLineToPoint(ingoing, outgoing, p);
-			if (pointsPenetration > penetrationByA)
-				penetrationByA = pointsPenetration;
-		}
+		/* Distance is |cross| / base, and base is the same for all points */
+		final float p0x = ingoingPoint.i, p0y = ingoingPoint.j;
+		final float p1x = outgoingPoint.i, p1y = outgoingPoint.j;
+		final float base = (float) Math.sqrt((p1x - p0x) * (p1x - p0x) 
+				+ (p1y - p0y) * (p1y - p0y));
+		final float crossA = maxCrossToLine(polygonA, contourAStart, contourALength);
+		final float crossB = maxCrossToLine(polygonB, contourBStart, contourBLength);
+		/* Points on the line add no penetration, even if line is a point */
+		return (crossA > 0f ? crossA / base : 0f) + (crossB > 0f ? crossB / base : 0f);
+	}
+	
+	/**
+	 * @return max absolute cross product of ingoing to outgoing 
+	 * 		line with polygon's points in range
+	 */
+	private float maxCrossToLine(PackedPolygon polygon, int start, int length) {
+		final float[] points = polygon.getPoints();
+		final int pointsCount = polygon.getPointsCount();
+		final float p0x = ingoingPoint.i, p0y = ingoingPoint.j;
+		final float p1x = outgoingPoint.i, p1y = outgoingPoint.j;
 		
-		float penetrationByB = 0f;
-		for (Vector2D p : contourB) {
-			float pointsPenetration = PolygonUtils.distanceFromLineToPoint(ingoing, outgoing, p);
-			if (pointsPenetration > penetrationByB)
-				penetrationByB = pointsPenetration;
+		float maxCross = 0f;
+		for (int i = 0; i < length; i++) {
+			final int p = (start + i) % pointsCount;
+			final float px = points[2 * p], py = points[2 * p + 1];
+			/* Same terms as PolygonUtils.distanceFromLineToPoint, so same result */
+			final float cross = Math.abs(p0x * p1y + p1x * py + px * p0y 
+					- p1x * p0y - px * p1y - p0x * py);
+			if (cross > maxCross)
+				maxCross = cross;
 		}
-
-		return penetrationByA + penetrationByB;
+		return maxCross;
 	}
 	
 }
@@ -23,36 +23,86 @@ package edu.eside.flingbox.math;
  * This will be used to storage rotational matrix
  */
 public class Matrix22 {
-	/** Matrix values */
-	public float[] values;
+	/** Matrix values, by rows */
+	public float m00, m01, 
+				 m10, m11;
 	
 	/** 
 	 * Creates zero matrix 
 	 */
-	public Matrix22() {
-		this.values = new float[4]; 
-	}
+	public Matrix22() { }
 	
 	/**
 	 * Creates matrix with values
 	 * 
-	 * @param m	Values. should have 4 members
+	 * @param m	Values by rows. should have 4 members, they are copied
 	 */
 	public Matrix22(float[] m) {
-		this.values = m;
+		set(m[0], m[1], m[2], m[3]);
 	}
 	
 	/**
-	 * Constructor for a Rotation matrix
+	 * Creates matrix with values
+	 */
+	public Matrix22(float m00, float m01, float m10, float m11) {
+		set(m00, m01, m10, m11);
+	}
+	
+	/**
+	 * Constructor for a Rotation matrix. Uses {@link StrictMath}, 
+	 * so result is the same on every VM.
 	 * 
 	 * @param angle	Angle for rotation
 	 */
 	public Matrix22(float angle) {
-		final float cos = (float) Math.cos(angle);
-		final float sin = (float) Math.sin(angle);
-		
-		this.values = new float[] {cos, -sin, 
-									sin, cos};
+		setRotation(angle);
+	}
+	
+	/**
+	 * Sets matrix's values
+	 * 
+	 * @return	current matrix
+	 */
+	public Matrix22 set(float m00, float m01, float m10, float m11) {
+		this.m00 = m00;
+		this.m01 = m01;
+		this.m10 = m10;
+		this.m11 = m11;
+		return this;
+	}
+	
+	/**
+	 * Copies values from other matrix
+	 * 
+	 * @return	current matrix
+	 */
+	public Matrix22 set(Matrix22 m) {
+		return set(m.m00, m.m01, m.m10, m.m11);
+	}
+	
+	/**
+	 * Sets matrix as a rotation. Uses {@link StrictMath}, 
+	 * so result is the same on every VM.
+	 * 
+	 * @param angle	Angle for rotation
+	 * @return	current matrix
+	 */
+	public Matrix22 setRotation(float angle) {
+		final float cos = (float) StrictMath.cos(angle);
+		final float sin = (float) StrictMath.sin(angle);
+		return set(cos, -sin, 
+				   sin, cos);
+	}
+	
+	/**
+	 * Sets matrix as a rotation, without computing its sine 
+	 * and cosine again
+	 * 
+	 * @return	current matrix
+	 */
+	public Matrix22 setRotation(Rot2 rotation) {
+		return set(rotation.cos, -rotation.sin, 
+				   rotation.sin, rotation.cos);
 	}
 	
 	/**
@@ -61,9 +111,19 @@ public class Matrix22 {
 	 * @return	New resulting matrix
 	 */
 	public static Matrix22 transpose(Matrix22 m) {
-		return new Matrix22(new float[] {
-				m.values[0], m.values[2], 
-				m.values[1], m.values[3]});
+		return transpose(m, new Matrix22());
+	}
+	
+	/**
+	 * Transposes a matrix into another one
+	 * 
+	 * @param m		matrix to be transposed
+	 * @param out	matrix to store result, can be m
+	 * @return	out
+	 */
+	public static Matrix22 transpose(Matrix22 m, Matrix22 out) {
+		return out.set(m.m00, m.m10, 
+					   m.m01, m.m11);
 	}
 	
 	/**
@@ -72,10 +132,7 @@ public class Matrix22 {
 	 * @return	current matrix
 	 */
 	public Matrix22 transpose() {
-		float temp = this.values[1]; // Just swap 0,1 and 1,0
-		this.values[1] = this.values[2];
-		this.values[2] = temp;
-		return this;
+		return transpose(this, this);
 	}
 	
 	/**
@@ -84,13 +141,25 @@ public class Matrix22 {
 	 * @return	New matrix with inverted current matrix or null if determinant is Zero
 	 */
 	public static Matrix22 invert(Matrix22 m) {
+		if (m.determinant() == 0)
+			return null;
+		return invert(m, new Matrix22());
+	}
+	
+	/**
+	 * Inverts a matrix into another one
+	 * 
+	 * @param m		matrix to be inverted
+	 * @param out	matrix to store result, can be m
+	 * @return	out, or null if determinant is Zero. Then out isn't modified
+	 */
+	public static Matrix22 invert(Matrix22 m, Matrix22 out) {
 		final float det = m.determinant();
 		if (det == 0)
 			return null;
 		
-		return new Matrix22(new float[] {
-				m.values[3] / det, m.values[1] / det, 
-				m.values[2] / det, m.values[0] / det});
+		return out.set(m.m11 / det, -m.m01 / det, 
+					   -m.m10 / det, m.m00 / det);
 	}
 	
 	/**
@@ -99,14 +168,7 @@ public class Matrix22 {
 	 * @return	Current matrix with inverted current matrix or null if determinant is Zero
 	 */
 	public Matrix22 invert() {
-		final float det = determinant();
-		if (det == 0)
-			return null;
-		
-		this.values = new float[] {
-				values[3] / det, values[1] / det, 
-				values[2] / det, values[0] / det};
-		return this;
+		return invert(this, this);
 	}
 	
 	/**
@@ -115,13 +177,13 @@ public class Matrix22 {
 	 * @return	determinant
 	 */
 	public float determinant() {
-		return values[0] * values[3] - values[1]* values[2];
+		return m00 * m11 - m01 * m10;
 	}
 	
 	/**
 	 * Return a string representing the matrix
 	 */
 	public String toString() {
-		return "[Matrix22 (" + values[0] + ", " + values[1] + ", " + values[2] + ", " + values[3] + ")]";
+		return "[Matrix22 (" + m00 + ", " + m01 + ", " + m10 + ", " + m11 + ")]";
 	}
 }
@@ -0,0 +1,171 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.math;
+
+/**
+ * Polygon's contour packed into a single array of interleaved 
+ * x, y coordinates. Avoids an object by vertex, and can be put 
+ * straight into OpenGL's buffers.
+ */
+public final class PackedPolygon {
+	/** Points as x, y pairs */
+	private final float[] mPoints;
+	private final int mPointsCount;
+	
+	/**
+	 * Creates a contour with all points at 0, 0
+	 * 
+	 * @param pointsCount	contour's points
+	 */
+	public PackedPolygon(int pointsCount) {
+		mPoints = new float[2 * pointsCount];
+		mPointsCount = pointsCount;
+	}
+	
+	/**
+	 * Wraps an array of points, it's not copied.
+	 * 
+	 * @param points		points as x, y pairs
+	 * @param pointsCount	points used from array
+	 */
+	public PackedPolygon(float[] points, int pointsCount) {
+		if (points.length < 2 * pointsCount)
+			throw new IllegalArgumentException("Not enough coordinates for " + pointsCount + " points");
+		mPoints = points;
+		mPointsCount = pointsCount;
+	}
+	
+	/**
+	 * Creates a contour from an array of points
+	 */
+	public PackedPolygon(Vector2D[] points) {
+		this(points.length);
+		final float[] packed = mPoints;
+		for (int i = 0; i < points.length; i++) {
+			packed[2 * i] = points[i].i;
+			packed[2 * i + 1] = points[i].j;
+		}
+	}
+	
+	/**
+	 * Copy constructor
+	 */
+	public PackedPolygon(PackedPolygon polygon) {
+		this(polygon.mPointsCount);
+		System.arraycopy(polygon.mPoints, 0, mPoints, 0, 2 * mPointsCount);
+	}
+	
+	/**
+	 * @return points as x, y pairs. Array may be longer than 
+	 * 		needed, only first 2 * {@link #getPointsCount()} 
+	 * 		values are used.
+	 */
+	public float[] getPoints() {
+		return mPoints;
+	}
+	
+	public int getPointsCount() {
+		return mPointsCount;
+	}
+	
+	public float getX(int index) {
+		return mPoints[2 * index];
+	}
+	
+	public float getY(int index) {
+		return mPoints[2 * index + 1];
+	}
+	
+	public void set(int index, float x, float y) {
+		mPoints[2 * index] = x;
+		mPoints[2 * index + 1] = y;
+	}
+	
+	/**
+	 * @return new array of points, for code still using vectors
+	 */
+	public Vector2D[] toVectors() {
+		final Vector2D[] points = new Vector2D[mPointsCount];
+		for (int i = 0; i < mPointsCount; i++)
+			points[i] = new Vector2D(mPoints[2 * i], mPoints[2 * i + 1]);
+		return points;
+	}
+	
+	/**
+	 * Reverses points order, so it swaps clockwise and 
+	 * counter-clockwise.
+	 */
+	public void reverse() {
+		final float[] points = mPoints;
+		for (int i = 0, j = mPointsCount - 1; i < j; ++i, --j) {
+			float temp = points[2 * i];
+			points[2 * i] = points[2 * j];
+			points[2 * j] = temp;
+			temp = points[2 * i + 1];
+			points[2 * i + 1] = points[2 * j + 1];
+			points[2 * j + 1] = temp;
+		}
+	}
+	
+	/**
+	 * Moves every point
+	 */
+	public void translate(float dx, float dy) {
+		final float[] points = mPoints;
+		for (int i = 0; i < 2 * mPointsCount; i += 2) {
+			points[i] += dx;
+			points[i + 1] += dy;
+		}
+	}
+	
+	/**
+	 * Sets this contour as another one rotated and then moved. 
+	 * Both must have the same points.
+	 * 
+	 * @param source	contour to be transformed
+	 * @param cos		rotation's cosine
+	 * @param sin		rotation's sine
+	 * @param x			translation's x
+	 * @param y			translation's y
+	 * @return this contour
+	 */
+	public PackedPolygon setTransformed(PackedPolygon source, float cos, float sin, float x, float y) {
+		final float[] from = source.mPoints, to = mPoints;
+		for (int i = 0; i < 2 * mPointsCount; i += 2) {
+			final float px = from[i], py = from[i + 1];
+			to[i] = cos * px - sin * py + x;
+			to[i + 1] = sin * px + cos * py + y;
+		}
+		return this;
+	}
+	
+	/**
+	 * @return distance from 0, 0 to farthest point
+	 */
+	public float getBoundingRadius() {
+		final float[] points = mPoints;
+		float radiusSquare = 0f;
+		for (int i = 0; i < 2 * mPointsCount; i += 2) {
+			final float squared = points[i] * points[i] + points[i + 1] * points[i + 1];
+			if (squared > radiusSquare)
+				radiusSquare = squared;
+		}
+		return (float) Math.sqrt(radiusSquare);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.math;
+
+/**
+ * Answers if points are contained by a fixed contour faster than 
+ * testing all its edges. 
+ * 
+ * Convex contours are split into wedges from first point, so the 
+ * wedge containing a point is found by binary search, in O(log n). 
+ * Other contours are split into horizontal slabs, each one knowing 
+ * edges crossing it, so winding number only checks edges of the 
+ * point's slab. There are about sqrt(n) slabs, fewer if long edges 
+ * would be stored in too many of them, so memory is O(n).
+ */
+public class PolygonPointLocator {
+	/** Max edges stored by slabs, by contour's edge */
+	private final static int MAX_SLAB_ENTRIES_BY_EDGE = 4;
+	
+	private final float[] mXs, mYs;
+	private final int mPointsCount;
+	
+	/** Convex contours use wedges search */
+	private final boolean mIsConvex;
+	/** 1 if contour is counter-clockwise, -1 if clockwise */
+	private final float mOrientation;
+	
+	/** Slabs, only for non convex contours */
+	private final float mMinY, mMaxY;
+	private float mInverseSlabHeight;
+	private int mSlabsCount;
+	/** First edge of each slab, last one is edges count */
+	private int[] mSlabsStart;
+	/** Edges by slab, edge i goes from point i to i + 1 */
+	private int[] mSlabsEdges;
+	
+	/**
+	 * Builds locator for a contour. Contour isn't 
+	 * referenced, so it can be modified later.
+	 * 
+	 * @param contour polygon's contour
+	 */
+	public PolygonPointLocator(final Vector2D[] contour) {
+		this(new PackedPolygon(contour));
+	}
+	
+	/**
+	 * Builds locator for a packed contour. Contour isn't 
+	 * referenced, so it can be modified later.
+	 * 
+	 * @param contour polygon's contour
+	 */
+	public PolygonPointLocator(final PackedPolygon contour) {
+		final int pointsCount = contour.getPointsCount();
+		final float[] points = contour.getPoints();
+		final float[] xs = new float[pointsCount], ys = new float[pointsCount];
+		float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+		float area = 0f;
+		for (int i = 0, last = pointsCount - 1; i < pointsCount; last = i++) {
+			xs[i] = points[2 * i];
+			ys[i] = points[2 * i + 1];
+			area += points[2 * last] * ys[i] - xs[i] * points[2 * last + 1];
+			minY = Math.min(minY, ys[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		mXs = xs;
+		mYs = ys;
+		mPointsCount = pointsCount;
+		mOrientation = area >= 0f ? 1f : -1f;
+		mMinY = minY;
+		mMaxY = maxY;
+		mIsConvex = pointsCount >= 3 && checkConvex();
+		if (!mIsConvex && pointsCount >= 3)
+			buildSlabs();
+	}
+	
+	/**
+	 * @return true if contour is convex, so wedge search is used
+	 */
+	public boolean isConvex() {
+		return mIsConvex;
+	}
+	
+	private boolean checkConvex() {
+		final float[] xs = mXs, ys = mYs;
+		final int n = mPointsCount;
+		final float o = mOrientation;
+		for (int i = 0; i < n; i++) {
+			final int j = (i + 1) % n, k = (i + 2) % n;
+			/* Every turn in the same sense... */
+			if (o * cross(xs[i], ys[i], xs[j], ys[j], xs[k], ys[k]) <= 0f)
+				return false;
+		}
+		/* ...and points sorted by angle around first one, so it isn't a star */
+		for (int i = 1; i < n - 1; i++)
+			if (o * cross(xs[0], ys[0], xs[i], ys[i], xs[i + 1], ys[i + 1]) <= 0f)
+				return false;
+		return true;
+	}
+	
+	/**
+	 * @return 1 if contour is counter-clockwise, -1 if clockwise
+	 */
+	public float getOrientation() {
+		return mOrientation;
+	}
+	
+	/**
+	 * Checks if a point is contained by the contour
+	 * 
+	 * @param x point's x, in contour's space
+	 * @param y point's y, in contour's space
+	 * @return true if contained
+	 */
+	public boolean contains(float x, float y) {
+		if (mPointsCount < 3 || y < mMinY || y > mMaxY)
+			return false;
+		return mIsConvex ? wedgeContains(x, y) : slabContains(x, y);
+	}
+	
+	/**
+	 * Binary search of the wedge from first point containing the point
+	 */
+	private boolean wedgeContains(float x, float y) {
+		final float[] xs = mXs, ys = mYs;
+		final float o = mOrientation;
+		final float x0 = xs[0], y0 = ys[0];
+		int low = 1, high = mPointsCount - 1;
+		/* Out of the fan of wedges */
+		if (o * cross(x0, y0, xs[low], ys[low], x, y) < 0f 
+				|| o * cross(x0, y0, xs[high], ys[high], x, y) > 0f)
+			return false;
+		while (high - low > 1) {
+			final int middle = (low + high) >>> 1;
+			if (o * cross(x0, y0, xs[middle], ys[middle], x, y) >= 0f)
+				low = middle;
+			else
+				high = middle;
+		}
+		/* Inside wedge, check against its outer edge */
+		return o * cross(xs[low], ys[low], xs[high], ys[high], x, y) >= 0f;
+	}
+	
+	/**
+	 * Winding number over edges crossing point's slab
+	 */
+	private boolean slabContains(float x, float y) {
+		final int slab = Math.min((int) ((y - mMinY) * mInverseSlabHeight), mSlabsCount - 1);
+		final float[] xs = mXs, ys = mYs;
+		final int[] edges = mSlabsEdges;
+		final int n = mPointsCount;
+		int winding = 0;
+		for (int e = mSlabsStart[slab], last = mSlabsStart[slab + 1]; e < last; e++) {
+			final int i = edges[e], j = i + 1 < n ? i + 1 : 0;
+			final float side = cross(xs[i], ys[i], xs[j], ys[j], x, y);
+			if (ys[i] <= y) {
+				if (ys[j] > y && side > 0f) // Upward crossing, point at left
+					winding++;
+			} else if (ys[j] <= y && side < 0f) // Downward crossing, point at right
+				winding--;
+		}
+		return winding != 0;
+	}
+	
+	/**
+	 * Splits contour into slabs, with edges grouped by slab by 
+	 * counting sort. Slabs are halved until edges fit the budget.
+	 */
+	private void buildSlabs() {
+		final float[] ys = mYs;
+		final int n = mPointsCount;
+		final float height = mMaxY - mMinY;
+		int slabsCount = (int) Math.ceil(Math.sqrt(n));
+		for (;;) {
+			mSlabsCount = slabsCount;
+			mInverseSlabHeight = height > 0f ? slabsCount / height : 0f;
+			if (slabsCount == 1 || countSlabEntries() <= (long) MAX_SLAB_ENTRIES_BY_EDGE * n)
+				break;
+			slabsCount = slabsCount / 2;
+		}
+		
+		final int[] slabsStart = new int[slabsCount + 1];
+		for (int i = 0; i < n; i++) {
+			final int j = i + 1 < n ? i + 1 : 0;
+			for (int s = slab(Math.min(ys[i], ys[j])), last = slab(Math.max(ys[i], ys[j])); s <= last; s++)
+				slabsStart[s + 1]++;
+		}
+		for (int s = 0; s < slabsCount; s++)
+			slabsStart[s + 1] += slabsStart[s];
+		
+		final int[] cursor = new int[slabsCount];
+		System.arraycopy(slabsStart, 0, cursor, 0, slabsCount);
+		final int[] edges = new int[slabsStart[slabsCount]];
+		for (int i = 0; i < n; i++) {
+			final int j = i + 1 < n ? i + 1 : 0;
+			for (int s = slab(Math.min(ys[i], ys[j])), last = slab(Math.max(ys[i], ys[j])); s <= last; s++)
+				edges[cursor[s]++] = i;
+		}
+		mSlabsStart = slabsStart;
+		mSlabsEdges = edges;
+	}
+	
+	/**
+	 * @return edges stored by current slabs, an edge is 
+	 * 		stored in every slab it crosses
+	 */
+	private long countSlabEntries() {
+		final float[] ys = mYs;
+		final int n = mPointsCount;
+		long entries = 0;
+		for (int i = 0; i < n; i++) {
+			final int j = i + 1 < n ? i + 1 : 0;
+			entries += slab(Math.max(ys[i], ys[j])) - slab(Math.min(ys[i], ys[j])) + 1;
+		}
+		return entries;
+	}
+	
+	private int slab(float y) {
+		return Math.min((int) ((y - mMinY) * mInverseSlabHeight), mSlabsCount - 1);
+	}
+	
+	/**
+	 * @return cross product of (b - a) and (c - a), positive 
+	 * 		if c is at the left of a to b
+	 */
+	private static float cross(float ax, float ay, float bx, float by, float cx, float cy) {
+		return (bx - ax) * (cy - ay) - (cx - ax) * (by - ay);
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.math;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Triangulates simple polygons, convex or not, by ear clipping.
+ * 
+ * A vertex is an ear if it is convex and no other vertex is inside 
+ * the triangle it makes with its neighbours. Only reflex vertices 
+ * can be inside, so they are stored in a uniform grid, and only 
+ * those in cells overlapped by the triangle are tested. Clipping 
+ * never makes a convex vertex reflex, so reflex vertices which 
+ * become convex are just skipped.
+ * 
+ * Polygons which aren't simple still give n - 2 triangles, but 
+ * some of them may overlap.
+ * 
+ * Arrays are reused, so a triangulator doesn't allocate once they 
+ * are big enough. Not thread-safe.
+ */
+public class PolygonTriangulator {
+	/** Vertices in circular list */
+	private int[] mPrevious = new int[0], mNext = new int[0];
+	/** Reflex vertices, cleared when they become convex or are clipped */
+	private boolean[] mIsReflex = new boolean[0];
+	
+	/** Grid of reflex vertices, as linked lists */
+	private int[] mCellsHead = new int[0];
+	private int[] mNextInCell = new int[0];
+	private int mCellsX, mCellsY;
+	private float mMinX, mMinY, mInverseCellWidth, mInverseCellHeight;
+	
+	private float[] mXy;
+	/** 1 if polygon is counter-clockwise, -1 if clockwise */
+	private float mOrientation;
+	
+	/**
+	 * Triangulates a polygon. Indexes are put from buffer's 
+	 * current position.
+	 * 
+	 * @param xy			Polygon's points, as x, y pairs
+	 * @param pointsCount	Polygon's points
+	 * @param indexes		Buffer with room for 3 * (pointsCount - 2) indexes
+	 * @return				Triangles written, pointsCount - 2, or 0 if 
+	 * 						not enough points
+	 */
+	public int triangulate(final float[] xy, final int pointsCount, final ShortBuffer indexes) {
+		if (pointsCount < 3)
+			return 0;
+		prepare(xy, pointsCount);
+		
+		final int[] previous = mPrevious, next = mNext;
+		final boolean[] isReflex = mIsReflex;
+		int remaining = pointsCount;
+		int trianglesCount = 0;
+		int current = 0;
+		/* Vertices checked since last clip, to detect lack of ears */
+		int checked = 0;
+		while (remaining > 3) {
+			final int p = previous[current], n = next[current];
+			if (checked < remaining && !isEar(p, current, n)) {
+				current = n;
+				checked++;
+				continue;
+			}
+			/* Clip ear, or any vertex if polygon has no ears */
+			indexes.put((short) p).put((short) current).put((short) n);
+			trianglesCount++;
+			next[p] = n;
+			previous[n] = p;
+			isReflex[current] = false;
+			remaining--;
+			
+			/* Neighbours may have become convex */
+			if (isReflex[p] && !isReflexVertex(previous[p], p, n))
+				isReflex[p] = false;
+			if (isReflex[n] && !isReflexVertex(p, n, next[n]))
+				isReflex[n] = false;
+			current = n;
+			checked = 0;
+		}
+		indexes.put((short) previous[current]).put((short) current).put((short) next[current]);
+		mXy = null;
+		return trianglesCount + 1;
+	}
+	
+	/**
+	 * Builds circular list and grid of reflex vertices
+	 */
+	private void prepare(final float[] xy, final int pointsCount) {
+		mXy = xy;
+		if (mPrevious.length < pointsCount) {
+			mPrevious = new int[pointsCount];
+			mNext = new int[pointsCount];
+			mIsReflex = new boolean[pointsCount];
+			mNextInCell = new int[pointsCount];
+		}
+		final int[] previous = mPrevious, next = mNext;
+		float area = 0f;
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+		for (int i = 0, last = pointsCount - 1; i < pointsCount; last = i++) {
+			previous[i] = last;
+			next[last] = i;
+			final float x = xy[2 * i], y = xy[2 * i + 1];
+			area += xy[2 * last] * y - x * xy[2 * last + 1];
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		mOrientation = area >= 0f ? 1f : -1f;
+		
+		/* About one reflex vertex by cell */
+		final boolean[] isReflex = mIsReflex;
+		int reflexCount = 0;
+		for (int i = 0; i < pointsCount; i++) {
+			isReflex[i] = isReflexVertex(previous[i], i, next[i]);
+			if (isReflex[i])
+				reflexCount++;
+		}
+		final int cellsBySide = Math.max(1, (int) Math.sqrt(reflexCount));
+		mCellsX = mCellsY = cellsBySide;
+		mMinX = minX;
+		mMinY = minY;
+		mInverseCellWidth = maxX > minX ? cellsBySide / (maxX - minX) : 0f;
+		mInverseCellHeight = maxY > minY ? cellsBySide / (maxY - minY) : 0f;
+		
+		final int cellsCount = cellsBySide * cellsBySide;
+		if (mCellsHead.length < cellsCount)
+			mCellsHead = new int[cellsCount];
+		final int[] cellsHead = mCellsHead, nextInCell = mNextInCell;
+		for (int c = 0; c < cellsCount; c++)
+			cellsHead[c] = -1;
+		for (int i = 0; i < pointsCount; i++)
+			if (isReflex[i]) {
+				final int cell = cellY(xy[2 * i + 1]) * cellsBySide + cellX(xy[2 * i]);
+				nextInCell[i] = cellsHead[cell];
+				cellsHead[cell] = i;
+			}
+	}
+	
+	/**
+	 * @return true if b is convex and no reflex vertex is in triangle a, b, c
+	 */
+	private boolean isEar(final int a, final int b, final int c) {
+		if (isReflexVertex(a, b, c))
+			return false;
+		final float[] xy = mXy;
+		final float ax = xy[2 * a], ay = xy[2 * a + 1];
+		final float bx = xy[2 * b], by = xy[2 * b + 1];
+		final float cx = xy[2 * c], cy = xy[2 * c + 1];
+		final float o = mOrientation;
+		
+		final int cx0 = cellX(Math.min(ax, Math.min(bx, cx))), cx1 = cellX(Math.max(ax, Math.max(bx, cx)));
+		final int cy0 = cellY(Math.min(ay, Math.min(by, cy))), cy1 = cellY(Math.max(ay, Math.max(by, cy)));
+		final int[] cellsHead = mCellsHead, nextInCell = mNextInCell;
+		final boolean[] isReflex = mIsReflex;
+		for (int gy = cy0; gy <= cy1; gy++)
+			for (int gx = cx0; gx <= cx1; gx++)
+				for (int v = cellsHead[gy * mCellsX + gx]; v >= 0; v = nextInCell[v]) {
+					if (!isReflex[v] || v == a || v == c)
+						continue;
+					final float vx = xy[2 * v], vy = xy[2 * v + 1];
+					/* Points over triangle's edges count as inside */
+					if (o * cross(ax, ay, bx, by, vx, vy) >= 0f 
+							&& o * cross(bx, by, cx, cy, vx, vy) >= 0f 
+							&& o * cross(cx, cy, ax, ay, vx, vy) >= 0f)
+						return false;
+				}
+		return true;
+	}
+	
+	/**
+	 * @return true if b doesn't turn in polygon's sense. 
+	 * 		Collinear vertices are reflex, they can't be ears.
+	 */
+	private boolean isReflexVertex(final int a, final int b, final int c) {
+		final float[] xy = mXy;
+		return mOrientation * cross(xy[2 * a], xy[2 * a + 1], xy[2 * b], xy[2 * b + 1], 
+				xy[2 * c], xy[2 * c + 1]) <= 0f;
+	}
+	
+	private int cellX(final float x) {
+		return Math.min((int) ((x - mMinX) * mInverseCellWidth), mCellsX - 1);
+	}
+	
+	private int cellY(final float y) {
+		return Math.min((int) ((y - mMinY) * mInverseCellHeight), mCellsY - 1);
+	}
+	
+	/**
+	 * @return cross product of (b - a) and (c - a)
+	 */
+	private static float cross(float ax, float ay, float bx, float by, float cx, float cy) {
+		return (bx - ax) * (cy - ay) - (cx - ax) * (by - ay);
+	}
+}
@@ -18,6 +18,7 @@
 
 package edu.eside.flingbox.math;
 
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 
 /**
@@ -50,7 +51,7 @@ public final class PolygonUtils {
 		/* Call recursively to algorithm */
 		douglasPeucker(points, epsilon, 0, lastPoint, reducedPolygon);
 		
-		if (points[0].distanceToPoint(points[lastPoint]) > epsilon)
+		if (points[0].distanceToPointSquare(points[lastPoint]) > epsilon * epsilon)
 			reducedPolygon.add(points[lastPoint]); // Last point neither
 		
 		reducedPolygon.trimToSize();
@@ -64,14 +65,16 @@ public final class PolygonUtils {
 	private static void douglasPeucker(final Vector2D[] points, final float epsilon, 
 			final int first, final int last, final ArrayList<Vector2D> resultPoints) {
 		
-		float maxDistance = 0.0f;
+		float maxDistanceSquare = 0.0f;
 		int maxDistanceIndex = 0;
 		
-		/* Find maximum distance point.  */
+		/* Find maximum distance point, comparing squared distances  */
+		final Vector2D p0 = points[first], p1 = points[last];
 		for (int i = first + 1; i < last ; i++) {
-			float distance = distanceFromLineToPoint(points[first], points[last], points[i]);
-			if (distance > maxDistance) {	// Store point
-				maxDistance = distance;
+			float distanceSquare = squaredDistanceFromLineToPoint(p0.i, p0.j, p1.i, p1.j, 
+					points[i].i, points[i].j);
+			if (distanceSquare > maxDistanceSquare) {	// Store point
+				maxDistanceSquare = distanceSquare;
 				maxDistanceIndex = i;
 			}
 		}
@@ -79,7 +82,7 @@ public final class PolygonUtils {
 		/* If point distance is more than epsilon then split points array in 
 		 * two parts and iterate for each. 
 		 */
-		if (maxDistance > epsilon) {
+		if (maxDistanceSquare > epsilon * epsilon) {
 			/* Find in previous segment */
 			if ((maxDistanceIndex - first) > 1)
 				douglasPeucker(points, epsilon, first, maxDistanceIndex, resultPoints);
@@ -93,96 +96,79 @@ public final class PolygonUtils {
 	
 	/**
 	 * Computes the triangulation of a polygon(tesellation) with ear-clipping 
-	 * algorithm. 
+	 * algorithm. See {@link PolygonTriangulator}.
 	 * @param Vector2Ds	Array of polygon's points
 	 * @return			Will return n-2 group of 3 points, for n sides polygon
 	 * 					or null if not enough points
 	 */
 	public static short[] triangulatePolygon(final Vector2D[] Vector2Ds) {
-		final int Vector2DsCount = Vector2Ds.length;
-		if (Vector2DsCount < 3)
+		return triangulatePolygon(new PackedPolygon(Vector2Ds));
+	}
+	
+	/**
+	 * Computes the triangulation of a packed polygon.
+	 * 
+	 * @see #triangulatePolygon(Vector2D[])
+	 */
+	public static short[] triangulatePolygon(final PackedPolygon polygon) {
+		final int pointsCount = polygon.getPointsCount();
+		if (pointsCount < 3)
 			return null;
 		
-		// n-2 group of 3 Vector2Ds, for n sides polygon 
-		short[] triangles = new short[3 * (Vector2DsCount - 2)];
-		boolean[] included = new boolean[Vector2DsCount];
-
-		int topVector2DIndex;
-		float topVector2D;
-		for (int trianglesCount = 0; trianglesCount < (Vector2DsCount - 3); ++trianglesCount) {
-			topVector2DIndex = 0;
-			topVector2D = Float.NEGATIVE_INFINITY;
-			
-			// Find top Vector2D to find triangle
-			for (int i = 0; i < Vector2DsCount; i++) {
-				// Find top Vector2D
-				if (!included[i] && (Vector2Ds[i].i > topVector2D)) {
-					topVector2D = Vector2Ds[i].i;
-					topVector2DIndex = i;
-				}
-			}
-			
-			// Exclude Vector2D for next iteration
-			included[topVector2DIndex] = true;
-			
-			// Save triangle
-			int prevVector2D = topVector2DIndex; // Find previous Vector2D
-			do {
-				if (--prevVector2D < 0)
-					prevVector2D = Vector2DsCount - 1;
-			} while (included[prevVector2D]);
-			
-			int nextVector2D = topVector2DIndex; // Find next Vector2D
-			do {
-				if (++nextVector2D >= Vector2DsCount)
-					nextVector2D = 0;
-			} while (included[nextVector2D]);
-			
-			// Store triangle
-			triangles[trianglesCount * 3] = (short)prevVector2D;	// Store into array
-			triangles[trianglesCount * 3 + 1] = (short)topVector2DIndex;
-			triangles[trianglesCount * 3 + 2] = (short)nextVector2D;
-		}
-
+		// n-2 group of 3 points, for n sides polygon 
+		short[] triangles = new short[3 * (pointsCount - 2)];
+		new PolygonTriangulator().triangulate(polygon.getPoints(), pointsCount, 
+				ShortBuffer.wrap(triangles));
 		return triangles;
 	}
 	
 	/**
 	 * Checks if a Vector2D is contained by a polygon.
-	 * It's based on Winding number algorithm.
-	 * More info at {@link http://en.wikipedia.org/wiki/Winding_number}
 	 * 
+	 * @see #polygonContainsPoint(Vector2D[], float, float)
 	 * @param polygon polygon's Vector2Ds
 	 * @param Vector2D Vector2D to be checked
 	 */
 	public static boolean polygonConatinsPoint(Vector2D[] polygon, Vector2D Vector2D) {
-		final int Vector2DsCount = polygon.length;
-		final float px = Vector2D.i, py = Vector2D.j;
-		int c = 0;
-		for (int i = 0; i < Vector2DsCount; i++) {
-			Vector2D v1 = polygon[i];
-			Vector2D v2 = polygon[(i + 1) % Vector2DsCount] ;
-			if ((v1.j < py) && (v2.j > py)) {
-				if (v1.i > px || v2.i > px)
-					c++;
-				// Check if Vector2D is at the left or the right side of the object
-				//final float segmentAtX = ((v2.i - v1.i) / (v2.j - v1.j)) * (py - v1.j) + v1.i;
-				//if (segmentAtX > px) 
-				//	c++;
-				//else if (segmentAtX == px)
-				//	return true; // is over the bounder
-			} else if ((v1.j > py) && (v2.j < py)) {
-				if (v1.i > px || v2.i > px)
-					c--;
-				// Check if Vector2D is at the left or the right side of the object
-				//final float segmentAtX = ((v2.i - v1.i) / (v2.j - v1.j)) * (py - v1.j) + v1.i;
-				//if (segmentAtX > px) 
-				//	c--;
-				//else if (segmentAtX == px)
-				//	return true; // is over the bounder
-			}
+		return polygonContainsPoint(polygon, Vector2D.i, Vector2D.j);
+	}
+	
+	/**
+	 * Checks if a point is contained by a polygon.
+	 * It's based on Winding number algorithm.
+	 * More info at {@link http://en.wikipedia.org/wiki/Winding_number}
+	 * 
+	 * @param polygon polygon's points
+	 * @param px point's x, in polygon's space
+	 * @param py point's y, in polygon's space
+	 */
+	public static boolean polygonContainsPoint(Vector2D[] polygon, float px, float py) {
+		return polygonContainsPoint(new PackedPolygon(polygon), px, py);
+	}
+	
+	/**
+	 * Checks if a point is contained by a packed polygon.
+	 * 
+	 * @see #polygonContainsPoint(Vector2D[], float, float)
+	 */
+	public static boolean polygonContainsPoint(PackedPolygon polygon, float px, float py) {
+		final float[] points = polygon.getPoints();
+		final int pointsCount = polygon.getPointsCount();
+		int winding = 0;
+		float v1x = points[2 * pointsCount - 2], v1y = points[2 * pointsCount - 1];
+		for (int i = 0; i < 2 * pointsCount; i += 2) {
+			final float v2x = points[i], v2y = points[i + 1];
+			/* Side of the point relative to the edge */
+			final float side = (v2x - v1x) * (py - v1y) - (px - v1x) * (v2y - v1y);
+			if (v1y <= py) {
+				if (v2y > py && side > 0) // Upward crossing, point at left
+					winding++;
+			} else if (v2y <= py && side < 0) // Downward crossing, point at right
+				winding--;
+			v1x = v2x;
+			v1y = v2y;
 		}
-		return c != 0;
+		return winding != 0;
 	}
 	
 	/**
@@ -193,16 +179,24 @@ public final class PolygonUtils {
 	 * result will be positive, else it'll be negative
 	 */
 	public static float polygonArea(final Vector2D[] Vector2Ds) {
-		final int lastVector2D = Vector2Ds.length - 1;
-		
-		float area = Vector2Ds[lastVector2D].i * Vector2Ds[0].j 
-			- Vector2Ds[0].i * Vector2Ds[lastVector2D].j;
-		
-		Vector2D Vector2D, nextVector2D;
-		for (int i = 0; i < lastVector2D; i++) {
-			Vector2D = Vector2Ds[i];
-			nextVector2D = Vector2Ds[i + 1];
-			area += Vector2D.i * nextVector2D.j - nextVector2D.i * Vector2D.j;
+		return polygonArea(new PackedPolygon(Vector2Ds));
+	}
+	
+	/**
+	 * Computes area of a packed polygon.
+	 * 
+	 * @see #polygonArea(Vector2D[])
+	 */
+	public static float polygonArea(final PackedPolygon polygon) {
+		final float[] points = polygon.getPoints();
+		final int pointsCount = polygon.getPointsCount();
+		float area = 0f;
+		float x0 = points[2 * pointsCount - 2], y0 = points[2 * pointsCount - 1];
+		for (int i = 0; i < 2 * pointsCount; i += 2) {
+			final float x1 = points[i], y1 = points[i + 1];
+			area += x0 * y1 - x1 * y0;
+			x0 = x1;
+			y0 = y1;
 		}
 		return area / 2f;
 	}
@@ -214,17 +208,28 @@ public final class PolygonUtils {
 	 * @return centroid 
 	 */
 	public static Vector2D polygonCentroid(final Vector2D[] contour) {
-		final int pointsCount = contour.length;
+		return polygonCentroid(new PackedPolygon(contour));
+	}
+	
+	/**
+	 * Computes a packed polygon's centroid
+	 * 
+	 * @see #polygonCentroid(Vector2D[])
+	 */
+	public static Vector2D polygonCentroid(final PackedPolygon polygon) {
+		final float[] points = polygon.getPoints();
+		final int pointsCount = polygon.getPointsCount();
 		float cx = 0f, cy = 0f;
 		
-		for (int i = 0; i < pointsCount; i++) {
-			float p0x = contour[i].i, p1x = contour[(i + 1) % pointsCount].i;
-			float p0y = contour[i].j, p1y = contour[(i + 1) % pointsCount].j;
+		for (int i = 0; i < 2 * pointsCount; i += 2) {
+			final int next = i + 2 < 2 * pointsCount ? i + 2 : 0;
+			final float p0x = points[i], p0y = points[i + 1];
+			final float p1x = points[next], p1y = points[next + 1];
 			final float k = (p0x * p1y - p1x * p0y);
 			cx += (p0x + p1x) * k;
 			cy += (p0y + p1y) * k;
 		}
-		final float d = 6f * polygonArea(contour);
+		final float d = 6f * polygonArea(polygon);
 		cx /= d;
 		cy /= d;
 
@@ -254,11 +259,30 @@ public final class PolygonUtils {
 	 * Computes minimum distance from line to point
 	 */
 	public static float distanceFromLineToPoint(final Vector2D p0, final Vector2D p1, final Vector2D p) {
-		final float area = (p0.i * p1.j + p1.i * p.j + p.i * p0.j 
-					- p1.i * p0.j - p.i * p1.j - p0.i * p.j) / 2f;
-		final float base = (float) Math.sqrt((p1.i - p0.i) * (p1.i - p0.i) 
-					+ (p1.j - p0.j) * (p1.j - p0.j));
+		return distanceFromLineToPoint(p0.i, p0.j, p1.i, p1.j, p.i, p.j);
+	}
+	
+	/**
+	 * Computes minimum distance from line p0, p1 to point p
+	 */
+	public static float distanceFromLineToPoint(final float p0x, final float p0y, 
+			final float p1x, final float p1y, final float px, final float py) {
+		final float area = (p0x * p1y + p1x * py + px * p0y 
+					- p1x * p0y - px * p1y - p0x * py) / 2f;
+		final float base = (float) Math.sqrt((p1x - p0x) * (p1x - p0x) 
+					+ (p1y - p0y) * (p1y - p0y));
 		return (float) Math.abs(2f * area / base);
 	}
 	
+	/**
+	 * Computes squared distance from line p0, p1 to point p, 
+	 * without square root. Enough to compare distances.
+	 */
+	public static float squaredDistanceFromLineToPoint(final float p0x, final float p0y, 
+			final float p1x, final float p1y, final float px, final float py) {
+		final float cross = (p1x - p0x) * (py - p0y) - (px - p0x) * (p1y - p0y);
+		final float baseSquare = (p1x - p0x) * (p1x - p0x) + (p1y - p0y) * (p1y - p0y);
+		return cross * cross / baseSquare;
+	}
+	
 }
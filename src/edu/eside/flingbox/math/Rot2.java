@@ -0,0 +1,164 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.math;
+
+/**
+ * Rotation by an angle, keeping its cosine and sine. They are 
+ * only computed again when angle changes, so bodies which don't 
+ * rotate never compute them.
+ * 
+ * Approximate updates rotate cached cosine and sine by the small 
+ * change of angle, as bodies turn a little each step, and use 
+ * {@link FastTrig} for big changes and to stop error growing.
+ */
+public class Rot2 {
+	/** Changes bigger than this aren't done incrementally, in radians */
+	private final static float MAX_INCREMENT = 0.1f;
+	/** Incremental updates before setting values again from table */
+	private final static int MAX_INCREMENTS = 16;
+	
+	/** Cosine and sine of the angle. Read only */
+	public float cos = 1f, sin = 0f;
+	/** Angle of cached cosine and sine */
+	private float mAngle = 0f;
+	/** Incremental updates since values were set from an angle */
+	private int mIncrementsCount = 0;
+	/** Set if values were set approximately */
+	private boolean mIsApproximate = false;
+	
+	/**
+	 * Creates identity rotation
+	 */
+	public Rot2() { }
+	
+	/**
+	 * Creates a rotation
+	 * 
+	 * @param angle	Angle for rotation
+	 */
+	public Rot2(float angle) {
+		set(angle);
+	}
+	
+	/**
+	 * Sets rotation's angle. Uses {@link StrictMath}, 
+	 * so result is the same on every VM.
+	 * 
+	 * @param angle	Angle for rotation
+	 * @return	current rotation
+	 */
+	public Rot2 set(float angle) {
+		if (angle != mAngle || mIsApproximate) {
+			cos = (float) StrictMath.cos(angle);
+			sin = (float) StrictMath.sin(angle);
+			mAngle = angle;
+			mIncrementsCount = 0;
+			mIsApproximate = false;
+		}
+		return this;
+	}
+	
+	/**
+	 * Sets rotation's angle, approximately. Small changes rotate 
+	 * current values, else they are set by {@link FastTrig}. 
+	 * Error is a few times {@link FastTrig#MAX_ERROR}.
+	 * 
+	 * @param angle	Angle for rotation
+	 * @return	current rotation
+	 */
+	public Rot2 setApproximately(float angle) {
+		/* Exact for close angles, so no error is added here */
+		final float delta = angle - mAngle;
+		if (delta == 0f)
+			return this;
+		if (mIncrementsCount < MAX_INCREMENTS 
+				&& delta < MAX_INCREMENT && delta > -MAX_INCREMENT) {
+			/* Taylor series, error under 2e-9 for increments allowed */
+			final float deltaSquare = delta * delta;
+			final float deltaSin = delta * (1f - deltaSquare / 6f * (1f - deltaSquare / 20f));
+			final float deltaCos = 1f - deltaSquare / 2f * (1f - deltaSquare / 12f);
+			float newCos = cos * deltaCos - sin * deltaSin;
+			float newSin = sin * deltaCos + cos * deltaSin;
+			/* Keep unit length, one Newton step of 1 / sqrt(x) near 1 */
+			final float scale = 1.5f - 0.5f * (newCos * newCos + newSin * newSin);
+			cos = newCos * scale;
+			sin = newSin * scale;
+			mIncrementsCount++;
+		} else {
+			cos = FastTrig.cos(angle);
+			sin = FastTrig.sin(angle);
+			mIncrementsCount = 0;
+		}
+		mAngle = angle;
+		mIsApproximate = true;
+		return this;
+	}
+	
+	/**
+	 * Copies other rotation
+	 * 
+	 * @return	current rotation
+	 */
+	public Rot2 set(Rot2 rotation) {
+		cos = rotation.cos;
+		sin = rotation.sin;
+		mAngle = rotation.mAngle;
+		mIncrementsCount = rotation.mIncrementsCount;
+		mIsApproximate = rotation.mIsApproximate;
+		return this;
+	}
+	
+	/**
+	 * @return rotation's angle
+	 */
+	public float getAngle() {
+		return mAngle;
+	}
+	
+	/**
+	 * Rotates a vector
+	 * 
+	 * @param v		vector to be rotated
+	 * @param out	vector to store result, can be v
+	 * @return	out
+	 */
+	public Vector2D rotate(Vector2D v, Vector2D out) {
+		final float i = v.i, j = v.j;
+		return out.set(cos * i - sin * j, sin * i + cos * j);
+	}
+	
+	/**
+	 * Rotates a vector by inverse rotation
+	 * 
+	 * @param v		vector to be rotated
+	 * @param out	vector to store result, can be v
+	 * @return	out
+	 */
+	public Vector2D inverseRotate(Vector2D v, Vector2D out) {
+		final float i = v.i, j = v.j;
+		return out.set(cos * i + sin * j, cos * j - sin * i);
+	}
+	
+	/**
+	 * Return a string representing the rotation
+	 */
+	public String toString() {
+		return "[Rot2 (" + mAngle + ")]";
+	}
+}
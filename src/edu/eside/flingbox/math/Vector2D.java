@@ -85,6 +85,16 @@ public class Vector2D {
 		return (float) Math.sqrt((this.i * this.i) + (this.j * this.j));
 	}
 	
+	/**
+	 * Computes the squared length of the vector, 
+	 * enough to compare lengths
+	 * 
+	 * @return 	Squared length of vector
+	 */
+	public float lengthSquare() {
+		return (this.i * this.i) + (this.j * this.j);
+	}
+	
 	/**
 	 * Negates current vector
 	 */
@@ -98,7 +108,18 @@ public class Vector2D {
 	 * Negates current vector
 	 */
 	public static Vector2D negate(Vector2D v) {
-		return new Vector2D(-v.i, -v.j);
+		return negate(v, new Vector2D());
+	}
+	
+	/**
+	 * Negates a vector into another one
+	 * 
+	 * @param v		vector to be negated
+	 * @param out	vector to store result, can be v
+	 * @return	out
+	 */
+	public static Vector2D negate(Vector2D v, Vector2D out) {
+		return out.set(-v.i, -v.j);
 	}
 	
 	/**
@@ -113,6 +134,19 @@ public class Vector2D {
 		return this;
 	}
 	
+	/**
+	 * Adds a vector's components
+	 * 
+	 * @param i	X component
+	 * @param j	Y component
+	 * @return	result vector
+	 */
+	public Vector2D add(float i, float j) {
+		this.i += i;
+		this.j += j;
+		return this;
+	}
+	
 	/**
 	 * Subs a vector
 	 * 
@@ -125,6 +159,19 @@ public class Vector2D {
 		return this;
 	}
 	
+	/**
+	 * Subs a vector's components
+	 * 
+	 * @param i	X component
+	 * @param j	Y component
+	 * @return	result vector
+	 */
+	public Vector2D sub(float i, float j) {
+		this.i -= i;
+		this.j -= j;
+		return this;
+	}
+	
 	/**
 	 * Multiplies by a scalar
 	 * 
@@ -196,22 +243,41 @@ public class Vector2D {
 	 * @return	New vector with the result
 	 */
 	public static Vector2D mul(Vector2D v, Matrix22 m) {
-		return new Vector2D(
-				v.i * m.values[0] + v.j * m.values[1],
-				v.i * m.values[2] + v.j * m.values[3]);
+		return mul(v, m, new Vector2D());
+	}
+	
+	/**
+	 * Multiplies a vector by a matrix into another vector
+	 * 
+	 * @param v		Vector
+	 * @param m		Matrix
+	 * @param out	vector to store result, can be v
+	 * @return	out
+	 */
+	public static Vector2D mul(Vector2D v, Matrix22 m, Vector2D out) {
+		final float lastI = v.i, lastJ = v.j;
+		return out.set(lastI * m.m00 + lastJ * m.m01,
+				lastI * m.m10 + lastJ * m.m11);
 	}
 	
 	/**
 	 * Multiplies current vector by a matrix
 	 * 
 	 * @param m	Matrix
-	 * @return	New vector with the result
+	 * @return	current vector with the result
 	 */
 	public Vector2D mul(Matrix22 m) {
-		final float lastI = this.i, lastJ = this.j;
-		this.i = lastI * m.values[0] + lastJ * m.values[1];
-		this.j = lastI * m.values[2] + lastJ * m.values[3];
-		return this;
+		return mul(this, m, this);
+	}
+	
+	/**
+	 * Rotates current vector
+	 * 
+	 * @param rotation	rotation
+	 * @return	current vector with the result
+	 */
+	public Vector2D mul(Rot2 rotation) {
+		return rotation.rotate(this, this);
 	}
 	
 	/**
@@ -232,9 +298,7 @@ public class Vector2D {
 	 * @return Vector with the normal.
 	 */
 	public Vector2D normalVector() {
-		this.i = -this.j;
-		this.j = this.i;
-		return this;
+		return normalVector(this, this);
 	}
 	
 	/**
@@ -243,20 +307,42 @@ public class Vector2D {
 	 * @return New vector with the normal.
 	 */
 	public static Vector2D normalVector(Vector2D v) {
-		return new Vector2D(-v.j, v.i);
+		return normalVector(v, new Vector2D());
+	}
+	
+	/**
+	 * Computes a vector's normal into another vector
+	 * 
+	 * @param v		vector
+	 * @param out	vector to store the normal, can be v
+	 * @return	out
+	 */
+	public static Vector2D normalVector(Vector2D v, Vector2D out) {
+		final float lastI = v.i;
+		return out.set(-v.j, lastI);
 	}
 
 	/**
-	 * Calculates the distance to a given point
+	 * Calculates the distance from a given point to the 
+	 * line through origin along this vector
 	 * 
 	 * @param p point
 	 * @return distance
 	 */
 	public float distanceToPoint(Vector2D p) {
-		Vector2D dir = (new Vector2D(this)).normalize();
-		dir.mul(dir.dotProduct(p));
-		return (float) Math.abs(Math.sqrt(
-				(p.i - dir.i) * (p.i - dir.i) + (p.j - dir.j) * (p.j - dir.j)));
+		return Math.abs(crossProduct(p)) / length();
+	}
+	
+	/**
+	 * Calculates the squared distance from a given point to the 
+	 * line through origin along this vector, without square root
+	 * 
+	 * @param p point
+	 * @return squared distance
+	 */
+	public float distanceToPointSquare(Vector2D p) {
+		final float cross = crossProduct(p);
+		return cross * cross / lengthSquare();
 	}
 	
 	/**
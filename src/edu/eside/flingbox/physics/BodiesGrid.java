@@ -0,0 +1,341 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.physics;
+
+import java.util.List;
+
+import edu.eside.flingbox.math.Vector2D;
+
+/**
+ * Uniform grid over bodies' bounding circles, used to find bodies 
+ * at a point, in a region or along a ray without testing all of them. Cells are hashed into 
+ * a fixed table, so scene isn't bounded. Bodies which would cover 
+ * too many cells, like grounds, are kept apart and always tested.
+ * 
+ * Grid is rebuilt from scratch reusing its arrays, so it 
+ * doesn't allocate once it is big enough.
+ */
+class BodiesGrid {
+	/** Cells in hash table, must be power of two */
+	private final static int TABLE_SIZE = 1024;
+	/** Bodies covering more cells are kept apart */
+	private final static int MAX_CELLS_BY_BODY = 16;
+	
+	/** Cells' side, twice the mean bounding radius */
+	private float mCellSize = 1f;
+	
+	/** First entry of each cell, last one is entries count */
+	private final int[] mCellsStart = new int[TABLE_SIZE + 1];
+	/** Next entry to be filled in each cell while building */
+	private final int[] mCellsCursor = new int[TABLE_SIZE];
+	/** Bodies' indexes, grouped by cell, ascending on each cell */
+	private int[] mEntries = new int[64];
+	/** Indexes of bodies too big to be in cells, ascending */
+	private int[] mLargeBodies = new int[8];
+	private int mLargeBodiesCount = 0;
+	
+	/** Bodies and their bounding circles, as x, y and radius */
+	private PhysicBody[] mBodies = new PhysicBody[0];
+	private float[] mBounds = new float[0];
+	private int mBodiesCount = 0;
+	
+	/** Candidates of current query, as bodies' indexes */
+	private int[] mCandidates = new int[16];
+	/** Query which last reported each body, so they are reported once */
+	private int[] mMarks = new int[0];
+	private int mQueryStamp = 0;
+	/** Normal of current ray cast */
+	private final Vector2D mRayNormal = new Vector2D();
+	
+	/**
+	 * Rebuilds grid with current bodies' positions
+	 * 
+	 * @param bodies bodies on scene
+	 */
+	void rebuild(List<PhysicBody> bodies) {
+		final int bodiesCount = bodies.size();
+		if (mBodies.length < bodiesCount) {
+			final int capacity = Math.max(bodiesCount, 2 * mBodies.length);
+			mBodies = new PhysicBody[capacity];
+			mBounds = new float[3 * capacity];
+			mMarks = new int[capacity];
+		}
+		final PhysicBody[] gridBodies = mBodies;
+		final float[] bounds = mBounds;
+		float radiusSum = 0f;
+		for (int i = 0; i < bodiesCount; i++) {
+			final PhysicBody body = bodies.get(i);
+			final float radius = body.getCollider().getBoundingCircle();
+			gridBodies[i] = body;
+			bounds[3 * i] = body.mPosition.i;
+			bounds[3 * i + 1] = body.mPosition.j;
+			bounds[3 * i + 2] = radius;
+			radiusSum += radius;
+		}
+		/* Don't keep removed bodies alive */
+		for (int i = bodiesCount; i < mBodiesCount; i++)
+			gridBodies[i] = null;
+		mBodiesCount = bodiesCount;
+		if (bodiesCount > 0 && radiusSum > 0f)
+			mCellSize = 2f * radiusSum / bodiesCount;
+		final float inverseCellSize = 1f / mCellSize;
+		
+		/* Count entries of each cell */
+		final int[] cellsStart = mCellsStart;
+		for (int h = 0; h <= TABLE_SIZE; h++)
+			cellsStart[h] = 0;
+		int largeBodiesCount = 0;
+		for (int i = 0; i < bodiesCount; i++) {
+			final float x = bounds[3 * i], y = bounds[3 * i + 1], r = bounds[3 * i + 2];
+			final int cx0 = floor((x - r) * inverseCellSize), cx1 = floor((x + r) * inverseCellSize);
+			final int cy0 = floor((y - r) * inverseCellSize), cy1 = floor((y + r) * inverseCellSize);
+			if ((cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS_BY_BODY) {
+				largeBodiesCount++;
+				continue;
+			}
+			for (int cx = cx0; cx <= cx1; cx++)
+				for (int cy = cy0; cy <= cy1; cy++)
+					cellsStart[hash(cx, cy) + 1]++;
+		}
+		for (int h = 0; h < TABLE_SIZE; h++)
+			cellsStart[h + 1] += cellsStart[h];
+		
+		final int entriesCount = cellsStart[TABLE_SIZE];
+		if (mEntries.length < entriesCount)
+			mEntries = new int[Math.max(entriesCount, 2 * mEntries.length)];
+		if (mLargeBodies.length < largeBodiesCount)
+			mLargeBodies = new int[Math.max(largeBodiesCount, 2 * mLargeBodies.length)];
+		
+		/* Fill cells, in bodies' order */
+		final int[] cursor = mCellsCursor;
+		System.arraycopy(cellsStart, 0, cursor, 0, TABLE_SIZE);
+		final int[] entries = mEntries;
+		final int[] largeBodies = mLargeBodies;
+		largeBodiesCount = 0;
+		for (int i = 0; i < bodiesCount; i++) {
+			final float x = bounds[3 * i], y = bounds[3 * i + 1], r = bounds[3 * i + 2];
+			final int cx0 = floor((x - r) * inverseCellSize), cx1 = floor((x + r) * inverseCellSize);
+			final int cy0 = floor((y - r) * inverseCellSize), cy1 = floor((y + r) * inverseCellSize);
+			if ((cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS_BY_BODY) {
+				largeBodies[largeBodiesCount++] = i;
+				continue;
+			}
+			for (int cx = cx0; cx <= cx1; cx++)
+				for (int cy = cy0; cy <= cy1; cy++)
+					entries[cursor[hash(cx, cy)]++] = i;
+		}
+		mLargeBodiesCount = largeBodiesCount;
+	}
+	
+	/**
+	 * Finds topmost body containing a point, this is the last 
+	 * one in scene's order. Bounding circles are tested before 
+	 * bodies' exact shape.
+	 * 
+	 * @return body containing point, or null if none
+	 */
+	PhysicBody findBodyAt(float x, float y) {
+		final float inverseCellSize = 1f / mCellSize;
+		final int h = hash(floor(x * inverseCellSize), floor(y * inverseCellSize));
+		
+		/* Indexes are ascending, so first hit backwards is topmost */
+		int found = -1;
+		final int[] entries = mEntries;
+		for (int e = mCellsStart[h + 1] - 1, first = mCellsStart[h]; e >= first; e--)
+			if (contains(entries[e], x, y)) {
+				found = entries[e];
+				break;
+			}
+		final int[] largeBodies = mLargeBodies;
+		for (int e = mLargeBodiesCount - 1; e >= 0 && largeBodies[e] > found; e--)
+			if (contains(largeBodies[e], x, y)) {
+				found = largeBodies[e];
+				break;
+			}
+		return found >= 0 ? mBodies[found] : null;
+	}
+	
+	/**
+	 * Finds bodies overlapping a region
+	 * 
+	 * @param result list where found bodies are appended
+	 * @return bodies found
+	 */
+	int queryRegion(float left, float bottom, float right, float top, List<PhysicBody> result) {
+		final int candidatesCount = collectCandidates(left, bottom, right, top);
+		final int[] candidates = mCandidates;
+		int found = 0;
+		for (int c = 0; c < candidatesCount; c++) {
+			final PhysicBody body = mBodies[candidates[c]];
+			if (body.overlapsBox(left, bottom, right, top)) {
+				result.add(body);
+				found++;
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Finds bodies overlapping a circle
+	 * 
+	 * @param result list where found bodies are appended
+	 * @return bodies found
+	 */
+	int queryCircle(float x, float y, float radius, List<PhysicBody> result) {
+		final int candidatesCount = collectCandidates(x - radius, y - radius, x + radius, y + radius);
+		final int[] candidates = mCandidates;
+		final float[] bounds = mBounds;
+		int found = 0;
+		for (int c = 0; c < candidatesCount; c++) {
+			final int index = candidates[c];
+			final float dx = x - bounds[3 * index], dy = y - bounds[3 * index + 1];
+			final float r = radius + bounds[3 * index + 2];
+			if (dx * dx + dy * dy > r * r)
+				continue;
+			final PhysicBody body = mBodies[index];
+			if (body.overlapsCircle(x, y, radius)) {
+				result.add(body);
+				found++;
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Finds first body hit by a segment
+	 * 
+	 * @param hit where hit is stored
+	 * @return true if any body was hit
+	 */
+	boolean rayCast(float x0, float y0, float x1, float y1, RayCastHit hit) {
+		final int candidatesCount = collectCandidates(Math.min(x0, x1), Math.min(y0, y1), 
+				Math.max(x0, x1), Math.max(y0, y1));
+		final int[] candidates = mCandidates;
+		final float[] bounds = mBounds;
+		final float rx = x1 - x0, ry = y1 - y0;
+		final float rayLengthSquare = rx * rx + ry * ry;
+		final Vector2D normal = mRayNormal;
+		float bestFraction = Float.POSITIVE_INFINITY;
+		PhysicBody bestBody = null;
+		for (int c = 0; c < candidatesCount; c++) {
+			final int index = candidates[c];
+			/* Distance from segment to bounding circle's center */
+			final float dx = bounds[3 * index] - x0, dy = bounds[3 * index + 1] - y0;
+			float t = rayLengthSquare > 0f ? (dx * rx + dy * ry) / rayLengthSquare : 0f;
+			t = t < 0f ? 0f : (t > 1f ? 1f : t);
+			final float ex = dx - t * rx, ey = dy - t * ry;
+			final float r = bounds[3 * index + 2];
+			if (ex * ex + ey * ey > r * r)
+				continue;
+			
+			final PhysicBody body = mBodies[index];
+			final float fraction = body.rayCast(x0, y0, x1, y1, normal);
+			if (fraction >= 0f && fraction < bestFraction) {
+				bestFraction = fraction;
+				bestBody = body;
+				hit.normal.set(normal);
+			}
+		}
+		if (bestBody == null)
+			return false;
+		hit.body = bestBody;
+		hit.fraction = bestFraction;
+		hit.point.set(x0 + bestFraction * rx, y0 + bestFraction * ry);
+		return true;
+	}
+	
+	/**
+	 * Collects into mCandidates bodies whose bounding circle may 
+	 * overlap a region, each one once. If region covers more cells 
+	 * than bodies, every body is checked instead.
+	 * 
+	 * @return candidates count
+	 */
+	private int collectCandidates(float left, float bottom, float right, float top) {
+		final int bodiesCount = mBodiesCount;
+		if (mCandidates.length < bodiesCount)
+			mCandidates = new int[Math.max(bodiesCount, 2 * mCandidates.length)];
+		final int[] candidates = mCandidates;
+		final int[] marks = mMarks;
+		if (++mQueryStamp == 0) { // Stamps wrapped, forget old marks
+			for (int i = 0; i < marks.length; i++)
+				marks[i] = 0;
+			mQueryStamp = 1;
+		}
+		final int stamp = mQueryStamp;
+		int candidatesCount = 0;
+		
+		final float inverseCellSize = 1f / mCellSize;
+		final int cx0 = floor(left * inverseCellSize), cx1 = floor(right * inverseCellSize);
+		final int cy0 = floor(bottom * inverseCellSize), cy1 = floor(top * inverseCellSize);
+		final long cellsCount = (long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+		if (cellsCount > TABLE_SIZE || cellsCount > bodiesCount) {
+			for (int i = 0; i < bodiesCount; i++)
+				if (boundsOverlap(i, left, bottom, right, top))
+					candidates[candidatesCount++] = i;
+			return candidatesCount;
+		}
+		
+		final int[] cellsStart = mCellsStart;
+		final int[] entries = mEntries;
+		for (int cx = cx0; cx <= cx1; cx++)
+			for (int cy = cy0; cy <= cy1; cy++) {
+				final int h = hash(cx, cy);
+				for (int e = cellsStart[h], last = cellsStart[h + 1]; e < last; e++) {
+					final int index = entries[e];
+					if (marks[index] != stamp && boundsOverlap(index, left, bottom, right, top)) {
+						marks[index] = stamp;
+						candidates[candidatesCount++] = index;
+					}
+				}
+			}
+		final int[] largeBodies = mLargeBodies;
+		for (int e = 0; e < mLargeBodiesCount; e++)
+			if (boundsOverlap(largeBodies[e], left, bottom, right, top))
+				candidates[candidatesCount++] = largeBodies[e];
+		return candidatesCount;
+	}
+	
+	/**
+	 * @return true if body's bounding circle's box overlaps a region
+	 */
+	private boolean boundsOverlap(int index, float left, float bottom, float right, float top) {
+		final float[] bounds = mBounds;
+		final float x = bounds[3 * index], y = bounds[3 * index + 1], r = bounds[3 * index + 2];
+		return x + r >= left && x - r <= right && y + r >= bottom && y - r <= top;
+	}
+	
+	/**
+	 * Tests bounding circle and then exact shape
+	 */
+	private boolean contains(int index, float x, float y) {
+		final float[] bounds = mBounds;
+		final float dx = x - bounds[3 * index], dy = y - bounds[3 * index + 1];
+		final float r = bounds[3 * index + 2];
+		return dx * dx + dy * dy <= r * r && mBodies[index].contains(x, y);
+	}
+	
+	private static int floor(float value) {
+		return (int) Math.floor(value);
+	}
+	
+	private static int hash(int cx, int cy) {
+		return ((cx * 73856093) ^ (cy * 19349663)) & (TABLE_SIZE - 1);
+	}
+}
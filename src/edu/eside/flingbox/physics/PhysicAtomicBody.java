@@ -84,6 +84,16 @@ abstract class PhysicAtomicBody implements Positionable {
 		mAcomulatedImpulse.add(impulse);
 	}
 	
+	/**
+	 * Applies impulse's components to the object
+	 * 
+	 * @param impulseX impulse's x
+	 * @param impulseY impulse's y
+	 */
+	public void applyImpulse(float impulseX, float impulseY) {
+		mAcomulatedImpulse.add(impulseX, impulseY);
+	}
+	
 	/**
 	 * Check if point is contained by the polygon
 	 * 
@@ -91,9 +101,49 @@ abstract class PhysicAtomicBody implements Positionable {
 	 * @return true if is contained
 	 */
 	public boolean contains(Vector2D p) {
+		return contains(p.i, p.j);
+	}
+	
+	/**
+	 * Check if point is contained by the body
+	 * 
+	 * @param x point's x
+	 * @param y point's y
+	 * @return true if is contained
+	 */
+	public boolean contains(float x, float y) {
 		return false; // Atomic body cannot be contained
 	}
 	
+	/**
+	 * Checks if body overlaps an axis aligned box
+	 * 
+	 * @return true if overlaps
+	 */
+	public boolean overlapsBox(float left, float bottom, float right, float top) {
+		return false;
+	}
+	
+	/**
+	 * Checks if body overlaps a circle
+	 * 
+	 * @return true if overlaps
+	 */
+	public boolean overlapsCircle(float x, float y, float radius) {
+		return false;
+	}
+	
+	/**
+	 * Casts a ray from (x0, y0) to (x1, y1) against the body. 
+	 * Rays starting inside the body don't hit it.
+	 * 
+	 * @param normal where body's normal at hit point is stored
+	 * @return fraction of the ray where body is hit, or -1 if not hit
+	 */
+	public float rayCast(float x0, float y0, float x1, float y1, Vector2D normal) {
+		return -1f;
+	}
+	
 	public Vector2D getImpulse() {
 		return new Vector2D(mVelocity).mul(mMass).add(mAcomulatedImpulse);
 	}
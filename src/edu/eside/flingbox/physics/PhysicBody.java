@@ -64,6 +64,9 @@ public abstract class PhysicBody extends PhysicAtomicBody{
 	
 	/** OnMovement call-back listener */
 	protected OnMovementListener mListener;
+	
+	/** Identifier given by scene, in order of addition */
+	private int mId = -1;
 
 	
 	
@@ -109,9 +112,19 @@ public abstract class PhysicBody extends PhysicAtomicBody{
 	 * @param dt time period while force is applied
 	 */
 	public void applyImpulse(Vector2D impulse, Vector2D applicationPoint) {
-		mAcomulatedImpulse.add(impulse);
+		applyImpulse(impulse.i, impulse.j, applicationPoint.i, applicationPoint.j);
+	}
+	
+	/**
+	 * Applies impulse to the object, by components
+	 * 
+	 * @param impulseX, impulseY impulse
+	 * @param pointX, pointY relative point in wich impulse is applied
+	 */
+	public void applyImpulse(float impulseX, float impulseY, float pointX, float pointY) {
+		mAcomulatedImpulse.add(impulseX, impulseY);
 		
-		mAcomulatedRotationalImpulse  += impulse.crossProduct(applicationPoint);
+		mAcomulatedRotationalImpulse  += impulseX * pointY - impulseY * pointX;
 	}
 	
 	/** Fixs body, making impossible to move  */
@@ -200,6 +213,66 @@ public abstract class PhysicBody extends PhysicAtomicBody{
 	
 
 	
+	/** Values stored by {@link #saveState(float[], int)} */
+	final static int STATE_SIZE = 9;
+	/** Flags returned by {@link #saveState(float[], int)} */
+	private final static int STATE_ENABLED = 0x01;
+	private final static int STATE_MOVEABLE = 0x02;
+	private final static int STATE_ROTABLE = 0x04;
+	
+	/**
+	 * Stores dynamic state: position, velocity, angle, angular 
+	 * velocity and accumulated impulses.
+	 * 
+	 * @param values array where {@link #STATE_SIZE} values are stored
+	 * @param offset first position to be written
+	 * @return flags of the body
+	 */
+	int saveState(float[] values, int offset) {
+		values[offset] = mPosition.i;
+		values[offset + 1] = mPosition.j;
+		values[offset + 2] = mVelocity.i;
+		values[offset + 3] = mVelocity.j;
+		values[offset + 4] = mAngle;
+		values[offset + 5] = mAngularVelocity;
+		values[offset + 6] = mAcomulatedImpulse.i;
+		values[offset + 7] = mAcomulatedImpulse.j;
+		values[offset + 8] = mAcomulatedRotationalImpulse;
+		return (mIsEnabled ? STATE_ENABLED : 0) | (mIsMoveable ? STATE_MOVEABLE : 0) 
+			| (mIsRotable ? STATE_ROTABLE : 0);
+	}
+	
+	/**
+	 * Restores state stored by {@link #saveState(float[], int)}
+	 * and notifies movement.
+	 */
+	void restoreState(float[] values, int offset, int flags) {
+		mPosition.set(values[offset], values[offset + 1]);
+		mVelocity.set(values[offset + 2], values[offset + 3]);
+		mAngle = values[offset + 4];
+		mAngularVelocity = values[offset + 5];
+		mAcomulatedImpulse.set(values[offset + 6], values[offset + 7]);
+		mAcomulatedRotationalImpulse = values[offset + 8];
+		mIsEnabled = (flags & STATE_ENABLED) != 0;
+		mIsMoveable = (flags & STATE_MOVEABLE) != 0;
+		mIsRotable = (flags & STATE_ROTABLE) != 0;
+		
+		mCollider.onMovement(mPosition, mAngle);
+		mListener.onMovement(mPosition, mAngle);
+	}
+	
+	/**
+	 * @return identifier given when body was added to scene, 
+	 * 		bodies added later have greater ones
+	 */
+	public int getId() {
+		return mId;
+	}
+	
+	void setId(int id) {
+		mId = id;
+	}
+	
 	/**
 	 * @return the Collider
 	 */
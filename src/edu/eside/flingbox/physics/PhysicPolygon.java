@@ -18,7 +18,9 @@
 
 package edu.eside.flingbox.physics;
 
-import edu.eside.flingbox.math.PolygonUtils;
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.math.PolygonPointLocator;
+import edu.eside.flingbox.math.Rot2;
 import edu.eside.flingbox.math.Vector2D;
 import edu.eside.flingbox.physics.collisions.ColliderPolygon;
 
@@ -27,40 +29,32 @@ import edu.eside.flingbox.physics.collisions.ColliderPolygon;
  *
  */
 public class PhysicPolygon extends PhysicBody {
-	/** Polygon's Contour */
-	private final Vector2D[] mPolygonContour;
-
-	private final Vector2D[] mRotatedPolygonContour;
+	/** Polygon's Contour, shared with its render */
+	private final PackedPolygon mPolygonContour;
+	
+	/** Point queries' structure, built on first query */
+	private PolygonPointLocator mLocator;
+	/** Rotation for point queries, updated when angle changes */
+	private final Rot2 mLocatorRotation = new Rot2();
 	
 	/**
 	 * Constructor physics for default polygon.
 	 * 
-	 * @param points polygon's points
+	 * @param points polygon's points. They aren't copied, so 
+	 * 			they mustn't be modified later
 	 * @param bodyMass polygon's mass
 	 * @param position Polygon's start position
 	 * @param listener Lister to be called when movement occurs
 	 */
-	public PhysicPolygon(final Vector2D[] points, final float bodyMass, 
+	public PhysicPolygon(final PackedPolygon points, final float bodyMass, 
 			final Vector2D position, final OnMovementListener listener) {
 		super(bodyMass, position);
 		
-		final int pointsCount = points.length;
-		final Vector2D[] polygonVectors = new Vector2D[pointsCount];
-		final Vector2D[] rotatedPolygonContour = new Vector2D[pointsCount];
-		
-		
-		// Stroes points into Vector array.
-		for (int i = 0; i < pointsCount; i++) {
-			polygonVectors[i] = new Vector2D(points[i].i, points[i].j);
-			rotatedPolygonContour[i] = new Vector2D(polygonVectors[i]);
-		}
-			
 		// Sets polygon's properties
-		mPolygonContour = polygonVectors;
-		mRotatedPolygonContour = rotatedPolygonContour;
+		mPolygonContour = points;
 		
 		mListener = listener;
-		mCollider = new ColliderPolygon(mRotatedPolygonContour, this);
+		mCollider = new ColliderPolygon(points, this);
 		
 		mListener.onMovement(mPosition, 0f);
 		mCollider.onMovement(mPosition, 0f);
@@ -80,14 +74,193 @@ public class PhysicPolygon extends PhysicBody {
 		return mass * mCollider.getBoundingCircle() * mCollider.getBoundingCircle();
 	}
 	
+	/**
+	 * @return polygon's contour, relative to its position
+	 */
+	PackedPolygon getContour() {
+		return mPolygonContour;
+	}
+	
 	/**
 	 * Check if point is contained by the polygon
 	 * 
-	 * @param p point to check
+	 * @param x point's x
+	 * @param y point's y
 	 * @return true if is containded
 	 */
-	public boolean contains(Vector2D p) {
-		return PolygonUtils.polygonConatinsPoint(mPolygonContour, new Vector2D(p.i - mPosition.i, p.j - mPosition.j));
+	@Override
+	public boolean contains(float x, float y) {
+		final float dx = x - mPosition.i, dy = y - mPosition.j;
+		final float radius = mCollider.getBoundingCircle();
+		if (dx * dx + dy * dy > radius * radius)
+			return false;
+		
+		final PolygonPointLocator locator = updateLocator();
+		/* Rotate point back to polygon's space */
+		final float cos = mLocatorRotation.cos, sin = mLocatorRotation.sin;
+		return locator.contains(cos * dx + sin * dy, cos * dy - sin * dx);
+	}
+	
+	/**
+	 * Updates inverse rotation if angle changed, and 
+	 * builds locator if needed
+	 * 
+	 * @return point locator
+	 */
+	private PolygonPointLocator updateLocator() {
+		mLocatorRotation.set(mAngle);
+		if (mLocator == null)
+			mLocator = new PolygonPointLocator(mPolygonContour);
+		return mLocator;
+	}
+	
+	/**
+	 * Checks if polygon overlaps an axis aligned box. Polygon's 
+	 * points are located on the fly, without allocation.
+	 */
+	@Override
+	public boolean overlapsBox(float left, float bottom, float right, float top) {
+		updateLocator();
+		final float[] contour = mPolygonContour.getPoints();
+		final int coordsCount = 2 * mPolygonContour.getPointsCount();
+		final float cos = mLocatorRotation.cos, sin = mLocatorRotation.sin;
+		final float px = mPosition.i, py = mPosition.j;
+		final float lastX = contour[coordsCount - 2], lastY = contour[coordsCount - 1];
+		float x0 = cos * lastX - sin * lastY + px;
+		float y0 = sin * lastX + cos * lastY + py;
+		for (int i = 0; i < coordsCount; i += 2) {
+			final float x1 = cos * contour[i] - sin * contour[i + 1] + px;
+			final float y1 = sin * contour[i] + cos * contour[i + 1] + py;
+			if (segmentOverlapsBox(x0, y0, x1, y1, left, bottom, right, top))
+				return true;
+			x0 = x1;
+			y0 = y1;
+		}
+		/* No edge crosses box, so box is inside polygon or out of it */
+		return contains(0.5f * (left + right), 0.5f * (bottom + top));
+	}
+	
+	/**
+	 * Checks if polygon overlaps a circle
+	 */
+	@Override
+	public boolean overlapsCircle(float x, float y, float radius) {
+		final float dx = x - mPosition.i, dy = y - mPosition.j;
+		final float bound = mCollider.getBoundingCircle() + radius;
+		if (dx * dx + dy * dy > bound * bound)
+			return false;
+		
+		final PolygonPointLocator locator = updateLocator();
+		final float cos = mLocatorRotation.cos, sin = mLocatorRotation.sin;
+		final float lx = cos * dx + sin * dy, ly = cos * dy - sin * dx;
+		if (locator.contains(lx, ly))
+			return true;
+		
+		/* Else circle must reach some edge */
+		final float radiusSquare = radius * radius;
+		final float[] contour = mPolygonContour.getPoints();
+		final int coordsCount = 2 * mPolygonContour.getPointsCount();
+		float ax = contour[coordsCount - 2], ay = contour[coordsCount - 1];
+		for (int i = 0; i < coordsCount; i += 2) {
+			final float bx = contour[i], by = contour[i + 1];
+			final float ex = bx - ax, ey = by - ay;
+			final float edgeLengthSquare = ex * ex + ey * ey;
+			float t = edgeLengthSquare > 0f ? ((lx - ax) * ex + (ly - ay) * ey) / edgeLengthSquare : 0f;
+			t = t < 0f ? 0f : (t > 1f ? 1f : t);
+			final float cx = lx - ax - t * ex, cy = ly - ay - t * ey;
+			if (cx * cx + cy * cy <= radiusSquare)
+				return true;
+			ax = bx;
+			ay = by;
+		}
+		return false;
+	}
+	
+	/**
+	 * Casts a ray against polygon's edges, in polygon's space. 
+	 * Only edges crossed from outside count, so rays starting 
+	 * inside the polygon don't hit it.
+	 */
+	@Override
+	public float rayCast(float x0, float y0, float x1, float y1, Vector2D normal) {
+		final PolygonPointLocator locator = updateLocator();
+		final float cos = mLocatorRotation.cos, sin = mLocatorRotation.sin;
+		final float dx0 = x0 - mPosition.i, dy0 = y0 - mPosition.j;
+		final float dx1 = x1 - mPosition.i, dy1 = y1 - mPosition.j;
+		final float sx = cos * dx0 + sin * dy0, sy = cos * dy0 - sin * dx0;
+		final float rx = cos * dx1 + sin * dy1 - sx, ry = cos * dy1 - sin * dx1 - sy;
+		final float orientation = locator.getOrientation();
+		
+		final float[] contour = mPolygonContour.getPoints();
+		final int coordsCount = 2 * mPolygonContour.getPointsCount();
+		float bestFraction = -1f, bestNx = 0f, bestNy = 0f;
+		float pax = contour[coordsCount - 2], pay = contour[coordsCount - 1];
+		for (int i = 0; i < coordsCount; i += 2) {
+			final float pbx = contour[i], pby = contour[i + 1];
+			final float ex = pbx - pax, ey = pby - pay;
+			/* Outward normal, not normalized */
+			final float nx = orientation * ey, ny = -orientation * ex;
+			final float denominator = rx * ey - ry * ex;
+			if (denominator != 0f && rx * nx + ry * ny < 0f) { // Entering
+				final float ax = pax - sx, ay = pay - sy;
+				final float t = (ax * ey - ay * ex) / denominator;
+				final float u = (ax * ry - ay * rx) / denominator;
+				if (t >= 0f && t <= 1f && u >= 0f && u <= 1f 
+						&& (bestFraction < 0f || t < bestFraction)) {
+					bestFraction = t;
+					bestNx = nx;
+					bestNy = ny;
+				}
+			}
+			pax = pbx;
+			pay = pby;
+		}
+		if (bestFraction >= 0f) {
+			/* Rotate normal back to world's space */
+			final float length = (float) Math.sqrt(bestNx * bestNx + bestNy * bestNy);
+			normal.set((cos * bestNx - sin * bestNy) / length, 
+					(sin * bestNx + cos * bestNy) / length);
+		}
+		return bestFraction;
+	}
+	
+	/**
+	 * Clips segment against box, Liang-Barsky
+	 * 
+	 * @return true if any part of segment is inside box
+	 */
+	private static boolean segmentOverlapsBox(float x0, float y0, float x1, float y1, 
+			float left, float bottom, float right, float top) {
+		final float dx = x1 - x0, dy = y1 - y0;
+		float enter = 0f, exit = 1f;
+		/* Each pair of sides */
+		for (int side = 0; side < 4; side++) {
+			final float p, q;
+			switch (side) {
+			case 0: p = -dx; q = x0 - left; break;
+			case 1: p = dx; q = right - x0; break;
+			case 2: p = -dy; q = y0 - bottom; break;
+			default: p = dy; q = top - y0; break;
+			}
+			if (p == 0f) {
+				if (q < 0f)
+					return false; // Parallel and outside
+			} else {
+				final float t = q / p;
+				if (p < 0f) {
+					if (t > exit)
+						return false;
+					if (t > enter)
+						enter = t;
+				} else {
+					if (t < enter)
+						return false;
+					if (t < exit)
+						exit = t;
+				}
+			}
+		}
+		return true;
 	}
 	
 
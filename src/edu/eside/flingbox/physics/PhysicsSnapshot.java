@@ -0,0 +1,80 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.physics;
+
+/**
+ * Dynamic state of a {@link ScenePhysics} at a step boundary, 
+ * stored in primitive arrays. Taken and restored by 
+ * {@link ScenePhysics#takeSnapshot(PhysicsSnapshot)} and 
+ * {@link ScenePhysics#restoreSnapshot(PhysicsSnapshot)}.
+ * 
+ * A snapshot can be reused, arrays only grow when there 
+ * are more bodies than ever before, so taking one each 
+ * frame doesn't allocate.
+ */
+public class PhysicsSnapshot {
+	/** Bodies whose state is stored, in scene order */
+	PhysicBody[] bodies = new PhysicBody[0];
+	/** {@link PhysicBody#STATE_SIZE} values for each body */
+	float[] values = new float[0];
+	/** Flags of each body */
+	int[] flags = new int[0];
+	/** Bodies stored */
+	int bodiesCount = 0;
+	
+	/** Gravity vector */
+	float gravityX, gravityY;
+	
+	/**
+	 * @return bodies stored
+	 */
+	public int getBodiesCount() {
+		return bodiesCount;
+	}
+	
+	/**
+	 * Computes a checksum of bodies' state, gravity excluded. 
+	 * Equal states, bit by bit and in the same order, give 
+	 * equal checksums.
+	 * 
+	 * @return FNV-1a checksum of stored values
+	 */
+	public long getChecksum() {
+		long hash = 0xcbf29ce484222325L;
+		final float[] values = this.values;
+		final int[] flags = this.flags;
+		for (int i = 0, n = PhysicBody.STATE_SIZE * bodiesCount; i < n; i++)
+			hash = (hash ^ Float.floatToRawIntBits(values[i])) * 0x100000001b3L;
+		for (int i = 0; i < bodiesCount; i++)
+			hash = (hash ^ flags[i]) * 0x100000001b3L;
+		return hash;
+	}
+	
+	/**
+	 * Grows arrays to store, at least, given bodies
+	 */
+	void ensureCapacity(int capacity) {
+		if (bodies.length >= capacity)
+			return;
+		final int newCapacity = Math.max(capacity, 2 * bodies.length);
+		bodies = new PhysicBody[newCapacity];
+		values = new float[PhysicBody.STATE_SIZE * newCapacity];
+		flags = new int[newCapacity];
+	}
+}
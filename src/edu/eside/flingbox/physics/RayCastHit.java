@@ -0,0 +1,37 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.physics;
+
+import edu.eside.flingbox.math.Vector2D;
+
+/**
+ * First body hit by a ray, filled by 
+ * {@link ScenePhysics#rayCast(float, float, float, float, RayCastHit)}.
+ * Can be reused by many ray casts.
+ */
+public class RayCastHit {
+	/** Body hit */
+	public PhysicBody body;
+	/** Point where body was hit */
+	public final Vector2D point = new Vector2D();
+	/** Body's normal at hit point. This is a normalized vector */
+	public final Vector2D normal = new Vector2D();
+	/** Fraction of the ray, from 0 at start to 1 at end */
+	public float fraction;
+}
@@ -19,11 +19,16 @@
 package edu.eside.flingbox.physics;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 
 import edu.eside.flingbox.math.Vector2D;
 import edu.eside.flingbox.physics.collisions.Arbiter;
+import edu.eside.flingbox.physics.collisions.Collider;
 import edu.eside.flingbox.physics.gravity.GravitySource;
+import edu.eside.flingbox.utils.IndexedList;
+import edu.eside.flingbox.utils.PendingChangesQueue;
 import edu.eside.flingbox.utils.PositionComparator;
 
 /**
@@ -32,20 +37,171 @@ import edu.eside.flingbox.utils.PositionComparator;
  * ScenePhysics manage thread for update objects 
  */
 public class ScenePhysics implements Runnable {
+	/**
+	 * Listener called with everything that changes simulation's 
+	 * result, in the same order it is applied. Always called at 
+	 * step boundaries.
+	 */
+	public interface OnStepListener {
+		/** Called after body has been added */
+		public void onBodyAdded(PhysicBody body);
+		
+		/** Called after body has been removed */
+		public void onBodyRemoved(PhysicBody body);
+		
+		/**
+		 * Called after an input has been applied
+		 * 
+		 * @param input one of INPUT_IMPULSE, INPUT_VELOCITY or INPUT_POSITION
+		 * @param body body which received the input
+		 * @param x first component of input
+		 * @param y second component of input
+		 */
+		public void onInput(int input, PhysicBody body, float x, float y);
+		
+		/**
+		 * Called after a step has been simulated
+		 * 
+		 * @param time step's time in seconds
+		 * @param gravityX gravity used by the step
+		 * @param gravityY gravity used by the step
+		 */
+		public void onStep(float time, float gravityX, float gravityY);
+	}
+	
+	/**
+	 * Listener called once each time bodies may have moved, after 
+	 * a step or after inputs have been applied
+	 */
+	public interface OnBodiesMovedListener {
+		public void onBodiesMoved();
+	}
+	
+	/** Kinds of user input */
+	public final static int INPUT_IMPULSE = 1;
+	public final static int INPUT_VELOCITY = 2;
+	public final static int INPUT_POSITION = 3;
+	
+	/** Single queued input */
+	private static class Input {
+		final PhysicBody body;
+		final int type;
+		final float x, y;
+		
+		Input(PhysicBody body, int type, float x, float y) {
+			this.body = body;
+			this.type = type;
+			this.x = x;
+			this.y = y;
+		}
+	}
+	
+	/** Time of each step in deterministic mode, in seconds */
+	public final static float FIXED_STEP_TIME = 0.04f;
+	
 	private final GravitySource mGravity;
 	
+	/** 
+	 * In deterministic mode bodies keep order of addition 
+	 * and steps have fixed time. Bodies list and arbiter are 
+	 * replaced when mode changes, always with simulation's lock 
+	 */
+	private volatile boolean mIsDeterministic;
+	
 	/** List of physical bodys on scene */
-	private final ArrayList<PhysicBody> mOnSceneBodies = new ArrayList<PhysicBody>();
+	private IndexedList<PhysicBody> mOnSceneBodies;
 	/** Collision manager for current scene */
-	private final Arbiter mArbiter = new Arbiter();
+	private Arbiter mArbiter;
+	/** Id for next added body */
+	private int mNextBodyId = 0;
+	/** Requested rotations mode, applied to arbiter between steps */
+	private volatile boolean mApproximateRotations = false;
+	
+	/** Index for point queries, rebuilt after each step */
+	private final BodiesGrid mBodiesGrid = new BodiesGrid();
+	/** Set when bodies changed since grid was rebuilt */
+	private volatile boolean mIsGridOutdated = true;
 	
-	/** Semaphore for lock writing on mOnSceneBodys */
-	private Semaphore mLockOnSceneBodys = new Semaphore(1);
+	/** 
+	 * Bodies added or removed but not yet applied to mOnSceneBodies.
+	 * Changes are applied between simulation steps, so iteration needs no lock.
+	 */
+	private final PendingChangesQueue<PhysicBody> mPendingChanges = new PendingChangesQueue<PhysicBody>();
+	/** Keeps arbiter synchronized with mOnSceneBodies */
+	private final PendingChangesQueue.OnChangeListener<PhysicBody> mArbiterUpdater = 
+		new PendingChangesQueue.OnChangeListener<PhysicBody>() {
+			public void onAdded(PhysicBody body) {
+				body.setId(mNextBodyId++);
+				mArbiter.add(body.getCollider());
+				final OnStepListener listener = mStepListener;
+				if (listener != null)
+					listener.onBodyAdded(body);
+			}
+
+			public void onRemoved(PhysicBody body) {
+				mArbiter.remove(body.getCollider());
+				final OnStepListener listener = mStepListener;
+				if (listener != null)
+					listener.onBodyRemoved(body);
+			}
+
+			public void onAddedAll(List<PhysicBody> bodies) {
+				final ArrayList<Collider> colliders = collidersOf(bodies);
+				for (int i = 0, n = bodies.size(); i < n; i++)
+					bodies.get(i).setId(mNextBodyId++);
+				mArbiter.addAll(colliders);
+				colliders.clear();
+				notifyAdded(bodies);
+			}
+
+			public void onRemovedAll(List<PhysicBody> bodies) {
+				final ArrayList<Collider> colliders = collidersOf(bodies);
+				mArbiter.removeAll(colliders);
+				colliders.clear();
+				notifyRemoved(bodies);
+			}
+
+			public void onCleared(List<PhysicBody> bodies) {
+				mArbiter.clear();
+				notifyRemoved(bodies);
+			}
+			
+			/** @return reused list with bodies' colliders */
+			private ArrayList<Collider> collidersOf(List<PhysicBody> bodies) {
+				final ArrayList<Collider> colliders = mCollidersBatch;
+				for (int i = 0, n = bodies.size(); i < n; i++)
+					colliders.add(bodies.get(i).getCollider());
+				return colliders;
+			}
+			
+			private void notifyAdded(List<PhysicBody> bodies) {
+				final OnStepListener listener = mStepListener;
+				if (listener != null)
+					for (int i = 0, n = bodies.size(); i < n; i++)
+						listener.onBodyAdded(bodies.get(i));
+			}
+			
+			private void notifyRemoved(List<PhysicBody> bodies) {
+				final OnStepListener listener = mStepListener;
+				if (listener != null)
+					for (int i = 0, n = bodies.size(); i < n; i++)
+						listener.onBodyRemoved(bodies.get(i));
+			}
+		};
+	/** Colliders of bulk changes, reused by arbiter's updater */
+	private final ArrayList<Collider> mCollidersBatch = new ArrayList<Collider>();
+	
+	/** User inputs not yet applied, applied between steps as structural changes */
+	private final ConcurrentLinkedQueue<Input> mPendingInputs = new ConcurrentLinkedQueue<Input>();
+	/** Listener of applied changes, used to record simulations */
+	private volatile OnStepListener mStepListener;
+	/** Listener of moved bodies, usually to request a new frame */
+	private volatile OnBodiesMovedListener mMovedListener;
 
 	/** Thread for simulation */
 	private Thread mSimulationThread;
 	/** Flag for kill simulation */
-	private boolean mDoKill = false;
+	private volatile boolean mDoKill = false;
 	/** Flag indicating if thread is running */
 	private Semaphore mSimulationMutex = new Semaphore(1, true);
 	
@@ -53,35 +209,273 @@ public class ScenePhysics implements Runnable {
 	 * Initializes an empty scene
 	 */
 	public ScenePhysics(final GravitySource gravity) {
+		this(gravity, false);
+	}
+	
+	/**
+	 * Initializes an empty scene. In deterministic mode same 
+	 * bodies and inputs give bit-identical states: bodies and 
+	 * contacts are always processed in order of addition, which 
+	 * makes removal O(n), and steps have {@link #FIXED_STEP_TIME} 
+	 * instead of wall clock's time.
+	 * 
+	 * @param gravity gravity source
+	 * @param deterministic true for deterministic mode
+	 */
+	public ScenePhysics(final GravitySource gravity, final boolean deterministic) {
 		mGravity = gravity;
+		mIsDeterministic = deterministic;
+		mOnSceneBodies = new IndexedList<PhysicBody>(deterministic);
+		mArbiter = new Arbiter(deterministic);
 		PositionComparator.setGroundSense(gravity);
 	}
 	
 	/**
-	 * Adds physical object
-	 * @param object object to be added
+	 * @return true if in deterministic mode
 	 */
-	public void add(final PhysicBody body) {
+	public boolean isDeterministic() {
+		return mIsDeterministic;
+	}
+	
+	/**
+	 * Changes simulation's mode. Bodies on scene keep their 
+	 * current order, which is kept from now on in deterministic 
+	 * mode. If simulating, waits until current step ends.
+	 * 
+	 * @param deterministic true for deterministic mode
+	 * @see #ScenePhysics(GravitySource, boolean)
+	 */
+	public void setDeterministic(final boolean deterministic) {
 		try {
-			mLockOnSceneBodys.acquire();
+			mSimulationMutex.acquire();
 		} catch (InterruptedException e) {
 			e.printStackTrace();
+			return;
+		}
+		try {
+			synchronized (mPendingChanges) {
+				applyPendingChanges();
+				if (deterministic == mIsDeterministic)
+					return;
+				final IndexedList<PhysicBody> bodies = new IndexedList<PhysicBody>(deterministic);
+				bodies.addAll(mOnSceneBodies);
+				final ArrayList<Collider> colliders = new ArrayList<Collider>(bodies.size());
+				for (int i = 0, n = bodies.size(); i < n; i++)
+					colliders.add(bodies.get(i).getCollider());
+				final Arbiter arbiter = new Arbiter(deterministic);
+				arbiter.addAll(colliders);
+				
+				mOnSceneBodies = bodies;
+				mArbiter = arbiter;
+				mIsDeterministic = deterministic;
+				mIsGridOutdated = true;
+			}
+		} finally {
+			mSimulationMutex.release();
+		}
+	}
+	
+	/**
+	 * Sets if colliders may approximate their rotations' sine 
+	 * and cosine, see {@link edu.eside.flingbox.math.Rot2}. It's 
+	 * faster, but ignored in deterministic mode. Applied before 
+	 * next step.
+	 * 
+	 * @param approximate true to approximate rotations
+	 */
+	public void setApproximateRotations(boolean approximate) {
+		mApproximateRotations = approximate;
+	}
+	
+	/**
+	 * @return true if colliders approximate their rotations, 
+	 * 		never in deterministic mode
+	 */
+	public boolean isApproximatingRotations() {
+		return mApproximateRotations && !mIsDeterministic;
+	}
+	
+	/**
+	 * Adds physical object. Never blocks, if simulating
+	 * body will be added before next step.
+	 * 
+	 * @param object object to be added
+	 */
+	public void add(final PhysicBody body) {
+		mPendingChanges.add(body);
+		applyPendingChangesIfIdle();
+	}
+	
+	/**
+	 * Adds many physical objects at once. Never blocks, 
+	 * if not simulating they are applied together.
+	 * 
+	 * @param bodies objects to be added
+	 */
+	public void addAll(final List<? extends PhysicBody> bodies) {
+		mPendingChanges.addAll(bodies);
+		applyPendingChangesIfIdle();
+	}
+	
+	/**
+	 * Removes physical object. Never blocks, if simulating
+	 * body will be removed before next step.
+	 * 
+	 * @param body object to be removed
+	 */
+	public void remove(final PhysicBody body) {
+		mPendingChanges.remove(body);
+		applyPendingChangesIfIdle();
+	}
+	
+	/**
+	 * Removes many physical objects at once. Never blocks, 
+	 * if not simulating they are applied together.
+	 * 
+	 * @param bodies objects to be removed
+	 */
+	public void removeAll(final List<? extends PhysicBody> bodies) {
+		mPendingChanges.removeAll(bodies);
+		applyPendingChangesIfIdle();
+	}
+	
+	/**
+	 * Removes every physical object. Never blocks, if 
+	 * simulating bodies will be removed before next step.
+	 */
+	public void clear() {
+		mPendingChanges.clear();
+		applyPendingChangesIfIdle();
+	}
+	
+	/**
+	 * Applies an impulse to a body. Never blocks, if 
+	 * simulating it will be applied before next step.
+	 * 
+	 * @param body body on scene
+	 * @param impulse impulse to be applied
+	 */
+	public void applyImpulse(final PhysicBody body, final Vector2D impulse) {
+		queueInput(new Input(body, INPUT_IMPULSE, impulse.i, impulse.j));
+	}
+	
+	/**
+	 * Sets velocity of a body. Never blocks, if 
+	 * simulating it will be set before next step.
+	 * 
+	 * @param body body on scene
+	 * @param vx
+	 * @param vy
+	 */
+	public void setVelocity(final PhysicBody body, final float vx, final float vy) {
+		queueInput(new Input(body, INPUT_VELOCITY, vx, vy));
+	}
+	
+	/**
+	 * Moves a body. Never blocks, if simulating 
+	 * it will be moved before next step.
+	 * 
+	 * @param body body on scene
+	 * @param position new body's position
+	 */
+	public void setPosition(final PhysicBody body, final Vector2D position) {
+		queueInput(new Input(body, INPUT_POSITION, position.i, position.j));
+	}
+	
+	private void queueInput(final Input input) {
+		mPendingInputs.offer(input);
+		applyPendingChangesIfIdle();
+	}
+	
+	/**
+	 * Applies pending changes now if no step is running. Else they 
+	 * stay queued, and are applied before next step or query.
+	 */
+	private void applyPendingChangesIfIdle() {
+		if (mSimulationMutex.tryAcquire()) {
+			try {
+				applyPendingChanges();
+			} finally {
+				mSimulationMutex.release();
+			}
+		} else
+			mIsGridOutdated = true;
+	}
+	
+	/**
+	 * Applies queued additions, removals and inputs. Must be called 
+	 * only at step boundaries, when bodies aren't being iterated.
+	 */
+	private void applyPendingChanges() {
+		synchronized (mPendingChanges) {
+			final boolean approximateRotations = isApproximatingRotations();
+			if (approximateRotations != mArbiter.isApproximatingRotations())
+				mArbiter.setApproximateRotations(approximateRotations);
+			
+			if (mPendingChanges.applyTo(mOnSceneBodies, mArbiterUpdater))
+				mIsGridOutdated = true;
+			
+			final OnStepListener listener = mStepListener;
+			boolean moved = false;
+			for (Input input = mPendingInputs.poll(); input != null; input = mPendingInputs.poll()) {
+				final PhysicBody body = input.body;
+				switch (input.type) {
+				case INPUT_IMPULSE:
+					body.applyImpulse(input.x, input.y);
+					break;
+				case INPUT_VELOCITY:
+					body.setVelocity(input.x, input.y);
+					break;
+				case INPUT_POSITION:
+					body.setPosition(input.x, input.y);
+					break;
+				}
+				if (listener != null)
+					listener.onInput(input.type, body, input.x, input.y);
+				mIsGridOutdated = true;
+				moved = true;
+			}
+			
+			final OnBodiesMovedListener movedListener = mMovedListener;
+			if (moved && movedListener != null)
+				movedListener.onBodiesMoved();
 		}
-		mOnSceneBodies.add(body);
-		mArbiter.add(body.getCollider());
-		mLockOnSceneBodys.release();
 	}
 	
-	public boolean remove(final PhysicBody body) {
+	/**
+	 * Sets listener called once each time bodies may have moved
+	 * 
+	 * @param listener listener, or null to remove current one
+	 */
+	public void setOnBodiesMovedListener(OnBodiesMovedListener listener) {
+		mMovedListener = listener;
+	}
+	
+	/**
+	 * Sets listener of applied changes. Bodies already on scene 
+	 * are notified as added to the new listener. If simulating, 
+	 * waits until current step ends.
+	 * 
+	 * @param listener listener, or null to remove current one
+	 */
+	public void setOnStepListener(final OnStepListener listener) {
 		try {
-			mLockOnSceneBodys.acquire();
+			mSimulationMutex.acquire();
 		} catch (InterruptedException e) {
 			e.printStackTrace();
+			return;
+		}
+		try {
+			applyPendingChanges();
+			mStepListener = listener;
+			if (listener != null) {
+				final IndexedList<PhysicBody> bodies = mOnSceneBodies;
+				for (int i = 0, n = bodies.size(); i < n; i++)
+					listener.onBodyAdded(bodies.get(i));
+			}
+		} finally {
+			mSimulationMutex.release();
 		}
-		boolean removed = mOnSceneBodies.remove(body);
-		mLockOnSceneBodys.release();
-		removed &= mArbiter.remove(body.getCollider());
-		return removed;
 	}
 	
 	/**
@@ -107,10 +501,162 @@ public class ScenePhysics implements Runnable {
 			e.printStackTrace();
 		}
 		mSimulationThread = null;
+		applyPendingChanges(); // Last step changes
 		mSimulationMutex.release();
 		System.gc(); // Good moment to call to GC
 	}
 	
+	/**
+	 * Stores dynamic state of every body and gravity. If simulating, 
+	 * waits until current step ends.
+	 * 
+	 * @param snapshot snapshot to be reused, or null to create a new one
+	 * @return snapshot with current state
+	 */
+	public PhysicsSnapshot takeSnapshot(PhysicsSnapshot snapshot) {
+		if (snapshot == null)
+			snapshot = new PhysicsSnapshot();
+		try {
+			mSimulationMutex.acquire();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return snapshot;
+		}
+		try {
+			applyPendingChanges();
+			final IndexedList<PhysicBody> bodies = mOnSceneBodies;
+			final int bodiesCount = bodies.size();
+			final int lastBodiesCount = snapshot.bodiesCount;
+			snapshot.ensureCapacity(bodiesCount);
+			
+			final PhysicBody[] snapshotBodies = snapshot.bodies;
+			final float[] values = snapshot.values;
+			final int[] flags = snapshot.flags;
+			for (int i = 0; i < bodiesCount; i++) {
+				final PhysicBody body = bodies.get(i);
+				snapshotBodies[i] = body;
+				flags[i] = body.saveState(values, PhysicBody.STATE_SIZE * i);
+			}
+			/* Don't keep removed bodies alive */
+			for (int i = bodiesCount; i < lastBodiesCount && i < snapshotBodies.length; i++)
+				snapshotBodies[i] = null;
+			snapshot.bodiesCount = bodiesCount;
+			snapshot.gravityX = mGravity.i;
+			snapshot.gravityY = mGravity.j;
+		} finally {
+			mSimulationMutex.release();
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Restores dynamic state of bodies and gravity. Bodies added or 
+	 * removed after snapshot was taken aren't added nor removed, only 
+	 * bodies still on scene are restored. If simulating, waits until 
+	 * current step ends.
+	 * 
+	 * @param snapshot snapshot to be restored
+	 */
+	public void restoreSnapshot(PhysicsSnapshot snapshot) {
+		try {
+			mSimulationMutex.acquire();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return;
+		}
+		try {
+			applyPendingChanges();
+			final IndexedList<PhysicBody> bodies = mOnSceneBodies;
+			final PhysicBody[] snapshotBodies = snapshot.bodies;
+			final float[] values = snapshot.values;
+			final int[] flags = snapshot.flags;
+			for (int i = 0, n = snapshot.bodiesCount; i < n; i++)
+				if (bodies.contains(snapshotBodies[i]))
+					snapshotBodies[i].restoreState(values, PhysicBody.STATE_SIZE * i, flags[i]);
+			mGravity.set(snapshot.gravityX, snapshot.gravityY);
+			mIsGridOutdated = true;
+		} finally {
+			mSimulationMutex.release();
+		}
+	}
+	
+	/**
+	 * Finds topmost body containing a point, this is the last one 
+	 * in scene's order. Only bodies near the point are tested, 
+	 * first their bounding circles and then their shapes. Never 
+	 * waits for a whole step.
+	 * 
+	 * @param x point's x
+	 * @param y point's y
+	 * @return body containing point, or null if none
+	 */
+	public PhysicBody findBodyAt(float x, float y) {
+		synchronized (mBodiesGrid) {
+			updateBodiesGrid();
+			return mBodiesGrid.findBodyAt(x, y);
+		}
+	}
+	
+	/**
+	 * Finds bodies overlapping an axis aligned region. Only bodies 
+	 * in region's cells are tested, first their bounding circles 
+	 * and then their shapes.
+	 * 
+	 * @param result list where found bodies are appended
+	 * @return bodies found
+	 */
+	public int queryRegion(float left, float bottom, float right, float top, 
+			List<PhysicBody> result) {
+		synchronized (mBodiesGrid) {
+			updateBodiesGrid();
+			return mBodiesGrid.queryRegion(left, bottom, right, top, result);
+		}
+	}
+	
+	/**
+	 * Finds bodies overlapping a circle
+	 * 
+	 * @param result list where found bodies are appended
+	 * @return bodies found
+	 */
+	public int queryCircle(float x, float y, float radius, List<PhysicBody> result) {
+		synchronized (mBodiesGrid) {
+			updateBodiesGrid();
+			return mBodiesGrid.queryCircle(x, y, radius, result);
+		}
+	}
+	
+	/**
+	 * Finds first body hit by a ray going from (x0, y0) to (x1, y1). 
+	 * Bodies containing ray's start aren't hit.
+	 * 
+	 * @param hit where body, point, normal and fraction are stored
+	 * @return true if any body was hit
+	 */
+	public boolean rayCast(float x0, float y0, float x1, float y1, RayCastHit hit) {
+		synchronized (mBodiesGrid) {
+			updateBodiesGrid();
+			return mBodiesGrid.rayCast(x0, y0, x1, y1, hit);
+		}
+	}
+	
+	/**
+	 * Rebuilds bodies' grid if outdated and not in the middle 
+	 * of a step. Must be called with grid's lock. While 
+	 * simulating, grid is rebuilt by next step.
+	 */
+	private void updateBodiesGrid() {
+		if (mIsGridOutdated && mSimulationMutex.tryAcquire()) {
+			try {
+				applyPendingChanges();
+				mBodiesGrid.rebuild(mOnSceneBodies);
+				mIsGridOutdated = false;
+			} finally {
+				mSimulationMutex.release();
+			}
+		}
+	}
+	
 	/**
 	 * @return true if simulating
 	 */
@@ -118,15 +664,78 @@ public class ScenePhysics implements Runnable {
 		return mSimulationThread != null ? mSimulationThread.isAlive() : false;
 	}
 	
+	/**
+	 * Simulates a single step with given time and gravity, 
+	 * instead of wall clock and gravity source. Used to replay 
+	 * and benchmark simulations. Shouldn't be called while 
+	 * simulating. Gravity source is overwritten with given 
+	 * gravity, as contacts are solved along it.
+	 * 
+	 * @param time step's time in seconds
+	 * @param gravityX gravity to be applied
+	 * @param gravityY gravity to be applied
+	 */
+	public void step(float time, float gravityX, float gravityY) {
+		try {
+			mSimulationMutex.acquire();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return;
+		}
+		try {
+			applyPendingChanges();
+			mGravity.set(gravityX, gravityY);
+			doStep(time, gravityX, gravityY);
+		} finally {
+			mSimulationMutex.release();
+		}
+	}
+	
+	/** Impulse of gravity, reused each step */
+	private final Vector2D mGravityImpulse = new Vector2D();
+	
+	/**
+	 * Simulates a step. Pending changes must be already applied.
+	 */
+	private void doStep(float time, float gravityX, float gravityY) {
+		final IndexedList<PhysicBody> bodies = mOnSceneBodies;
+		final Vector2D force = mGravityImpulse;
+		
+		/* Apply gravity impulse */
+		for (int i = 0, n = bodies.size(); i < n; i++) {
+			final PhysicBody body = bodies.get(i);
+			force.set(gravityX, gravityY);
+			body.applyImpulse(force.mul(body.getBodyMass() * time));
+		}
+		
+		/* Then apply collisions forces */
+		mArbiter.checkCollisions();
+		
+		/* Last update body */
+		for (int i = 0, n = bodies.size(); i < n; i++)
+			bodies.get(i).onUpdateBody(time);
+		
+		synchronized (mBodiesGrid) {
+			mBodiesGrid.rebuild(bodies);
+			mIsGridOutdated = false;
+		}
+		
+		final OnStepListener listener = mStepListener;
+		if (listener != null)
+			listener.onStep(time, gravityX, gravityY);
+		
+		final OnBodiesMovedListener movedListener = mMovedListener;
+		if (movedListener != null)
+			movedListener.onBodiesMoved();
+	}
+	
 	/**
 	 * Thread for simulation
 	 */
 	@Override
 	public void run() {
-		final ArrayList<PhysicBody> bodies = mOnSceneBodies;
 		long lastTime = System.currentTimeMillis();
 		long time;
-		final Vector2D force = new Vector2D();
 		
 		for (; !mDoKill; ) {
 			try {
@@ -134,37 +743,21 @@ public class ScenePhysics implements Runnable {
 			} catch (InterruptedException e2) {
 				e2.printStackTrace();
 			}
+			if (mDoKill) { // Killed while waiting
+				mSimulationMutex.release();
+				break;
+			}
 			
 			/* Compute time */
 			time = System.currentTimeMillis() - lastTime;
 			lastTime = System.currentTimeMillis();
 
-			/* We need a semaphore here */
-			try {
-				mLockOnSceneBodys.acquire();
-			} catch (InterruptedException e1) {
-				e1.printStackTrace();
-			}
-			/* Apply gravity impulse */
-			for (PhysicBody body : bodies) {
-				force.set(mGravity);
-				body.applyImpulse(force.mul(body.getBodyMass() * (float) time / 1000f));
-			}
-			mLockOnSceneBodys.release();
-			
-			/* Then apply collisions forces */
-			mArbiter.checkCollisions();
-			
-			try {
-				mLockOnSceneBodys.acquire();
-			} catch (InterruptedException e1) {
-				e1.printStackTrace();
-			}
-			/* Last update body */
-			for (PhysicBody body : bodies)
-				body.onUpdateBody((float) time / 1000f);
+			/* Step boundary, bodies can be added or removed */
+			applyPendingChanges();
 			
-			mLockOnSceneBodys.release();
+			/* Gravity is read once, it may be changed by sensors */
+			doStep(mIsDeterministic ? FIXED_STEP_TIME : (float) time / 1000f, 
+					mGravity.i, mGravity.j);
 			
 			mSimulationMutex.release();
 			/* Keep max frame-rate */
@@ -0,0 +1,227 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.physics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+
+import edu.eside.flingbox.math.PackedPolygon;
+
+/**
+ * Records everything that changes a {@link ScenePhysics} simulation 
+ * into a compact binary log: bodies added and removed, user inputs, 
+ * and time and gravity of each step. {@link SimulationReplayer} 
+ * feeds the log back, so simulation can be reproduced without 
+ * wall clock nor sensors.
+ * 
+ * Log starts with magic, version and flags, followed by records. Each 
+ * record is a byte with its type and its values, big-endian:
+ * <ul>
+ * <li>Add: id, type, contour points, volume, density, restitution, 
+ * static and dynamic friction, state and flags.</li>
+ * <li>Remove: id.</li>
+ * <li>Input: input type, id, x and y.</li>
+ * <li>Step: time, gravity x and y.</li>
+ * <li>End: steps count and checksum of final state.</li>
+ * </ul>
+ * Bodies are identified by their order of addition. Simulation 
+ * is switched to deterministic mode while recording, otherwise 
+ * it couldn't be reproduced.
+ * Changes done to bodies out of {@link ScenePhysics} methods, such 
+ * as density or friction set by settings dialog, aren't recorded.
+ */
+public class SimulationRecorder implements ScenePhysics.OnStepListener {
+	/** "FBR1" */
+	final static int MAGIC = 0x46425231;
+	/** 2 since bodies' states have 9 values */
+	final static int VERSION = 2;
+	/** Header flags */
+	final static int FLAG_DETERMINISTIC = 0x01;
+	final static int FLAG_APPROXIMATE_ROTATIONS = 0x02;
+	
+	/** Types of record */
+	final static int RECORD_ADD = 1;
+	final static int RECORD_REMOVE = 2;
+	final static int RECORD_INPUT = 3;
+	final static int RECORD_STEP = 4;
+	final static int RECORD_END = 5;
+	
+	final static int BODY_TYPE_POLYGON = 1;
+	
+	private final DataOutputStream mOut;
+	/** Ids of recorded bodies */
+	private final IdentityHashMap<PhysicBody, Integer> mIds = new IdentityHashMap<PhysicBody, Integer>();
+	private int mNextId = 0;
+	private int mStepsCount = 0;
+	
+	/** Recorded simulation */
+	private ScenePhysics mPhysics;
+	/** Simulation's mode before recording, restored when stopped */
+	private boolean mWasDeterministic;
+	/** Listener can't throw, first error is kept until stopped */
+	private IOException mError;
+	/** Body state, reused for each added body */
+	private final float[] mState = new float[PhysicBody.STATE_SIZE];
+	
+	/**
+	 * Creates a recorder
+	 * 
+	 * @param out stream where log is written, closed when stopped
+	 */
+	public SimulationRecorder(OutputStream out) {
+		mOut = new DataOutputStream(new BufferedOutputStream(out));
+	}
+	
+	/**
+	 * Writes log's header and starts recording. Bodies already 
+	 * on scene are recorded as added, with their current state. 
+	 * Simulation is switched to deterministic mode until recording 
+	 * is stopped.
+	 * 
+	 * @param physics simulation to be recorded
+	 * @throws IOException if header can't be written
+	 */
+	public void start(ScenePhysics physics) throws IOException {
+		mWasDeterministic = physics.isDeterministic();
+		physics.setDeterministic(true);
+		try {
+			mOut.writeInt(MAGIC);
+			mOut.writeInt(VERSION);
+			mOut.writeInt(FLAG_DETERMINISTIC 
+					| (physics.isApproximatingRotations() ? FLAG_APPROXIMATE_ROTATIONS : 0));
+		} catch (IOException ex) {
+			physics.setDeterministic(mWasDeterministic);
+			throw ex;
+		}
+		mPhysics = physics;
+		physics.setOnStepListener(this);
+	}
+	
+	/**
+	 * Stops recording, writes final state's checksum and 
+	 * closes log.
+	 * 
+	 * @throws IOException if log couldn't be written
+	 */
+	public void stop() throws IOException {
+		final ScenePhysics physics = mPhysics;
+		if (physics != null) {
+			physics.setOnStepListener(null);
+			final long checksum = physics.takeSnapshot(null).getChecksum();
+			physics.setDeterministic(mWasDeterministic);
+			mPhysics = null;
+			synchronized (this) {
+				if (mError == null)
+					try {
+						mOut.writeByte(RECORD_END);
+						mOut.writeInt(mStepsCount);
+						mOut.writeLong(checksum);
+					} catch (IOException ex) {
+						mError = ex;
+					}
+			}
+		}
+		mOut.close();
+		if (mError != null)
+			throw mError;
+	}
+	
+	/**
+	 * @return steps recorded
+	 */
+	public int getStepsCount() {
+		return mStepsCount;
+	}
+	
+	public synchronized void onBodyAdded(PhysicBody body) {
+		if (mError != null || !(body instanceof PhysicPolygon))
+			return;
+		final int id = mNextId++;
+		mIds.put(body, Integer.valueOf(id));
+		
+		final DataOutputStream out = mOut;
+		final float[] state = mState;
+		final int flags = body.saveState(state, 0);
+		final PackedPolygon contour = ((PhysicPolygon) body).getContour();
+		try {
+			out.writeByte(RECORD_ADD);
+			out.writeInt(id);
+			out.writeByte(BODY_TYPE_POLYGON);
+			out.writeInt(contour.getPointsCount());
+			for (int i = 0; i < contour.getPointsCount(); i++) {
+				out.writeFloat(contour.getX(i));
+				out.writeFloat(contour.getY(i));
+			}
+			out.writeFloat(body.mVolume);
+			out.writeFloat(body.getDensity());
+			out.writeFloat(body.getRestitutionCoeficient());
+			out.writeFloat(body.getStaticFrictionCoeficient());
+			out.writeFloat(body.getDynamicFrictionCoeficient());
+			for (int i = 0; i < PhysicBody.STATE_SIZE; i++)
+				out.writeFloat(state[i]);
+			out.writeInt(flags);
+		} catch (IOException ex) {
+			mError = ex;
+		}
+	}
+	
+	public synchronized void onBodyRemoved(PhysicBody body) {
+		final Integer id = mIds.remove(body);
+		if (mError != null || id == null)
+			return;
+		try {
+			mOut.writeByte(RECORD_REMOVE);
+			mOut.writeInt(id.intValue());
+		} catch (IOException ex) {
+			mError = ex;
+		}
+	}
+	
+	public synchronized void onInput(int input, PhysicBody body, float x, float y) {
+		final Integer id = mIds.get(body);
+		if (mError != null || id == null)
+			return;
+		try {
+			mOut.writeByte(RECORD_INPUT);
+			mOut.writeByte(input);
+			mOut.writeInt(id.intValue());
+			mOut.writeFloat(x);
+			mOut.writeFloat(y);
+		} catch (IOException ex) {
+			mError = ex;
+		}
+	}
+	
+	public synchronized void onStep(float time, float gravityX, float gravityY) {
+		if (mError != null)
+			return;
+		try {
+			mOut.writeByte(RECORD_STEP);
+			mOut.writeFloat(time);
+			mOut.writeFloat(gravityX);
+			mOut.writeFloat(gravityY);
+			mStepsCount++;
+		} catch (IOException ex) {
+			mError = ex;
+		}
+	}
+}
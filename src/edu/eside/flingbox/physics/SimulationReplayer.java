@@ -0,0 +1,254 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.physics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.math.Vector2D;
+import edu.eside.flingbox.physics.gravity.GravitySource;
+
+/**
+ * Feeds a log written by {@link SimulationRecorder} back into a 
+ * {@link ScenePhysics}. Steps are simulated with recorded time and 
+ * gravity, so no wall clock nor sensors are involved. Recreated 
+ * bodies have no render, so replay can run headless, as a 
+ * regression test or as a benchmark workload.
+ */
+public class SimulationReplayer {
+	/** Replayed bodies don't need to notify movements */
+	private final static PhysicBody.OnMovementListener NO_LISTENER = 
+		new PhysicBody.OnMovementListener() {
+			public void onMovement(Vector2D position, float angle) {
+			}
+		};
+	
+	private final DataInputStream mIn;
+	private final ScenePhysics mPhysics;
+	
+	/** Replayed bodies by id, null once removed */
+	private final ArrayList<PhysicBody> mBodies = new ArrayList<PhysicBody>();
+	private final float[] mState = new float[PhysicBody.STATE_SIZE];
+	private final Vector2D mImpulse = new Vector2D();
+	
+	private int mStepsCount = 0;
+	private boolean mIsFinished = false;
+	/** Recorded values at end of log */
+	private boolean mHasEnd = false;
+	private int mRecordedStepsCount;
+	private long mRecordedChecksum;
+	
+	/**
+	 * Creates a replayer and reads log's header
+	 * 
+	 * @param in log, closed when replay finishes
+	 * @param physics simulation where log is replayed, it shouldn't 
+	 * 		be simulating by itself. If null, an empty one in the 
+	 * 		recorded mode is created. Approximation of rotations is 
+	 * 		set as recorded.
+	 * @throws IOException if log can't be read, or if physics' mode 
+	 * 		isn't the recorded one
+	 */
+	public SimulationReplayer(InputStream in, ScenePhysics physics) throws IOException {
+		mIn = new DataInputStream(new BufferedInputStream(in));
+		if (mIn.readInt() != SimulationRecorder.MAGIC)
+			throw new IOException("Not a flingbox simulation log");
+		final int version = mIn.readInt();
+		if (version != SimulationRecorder.VERSION)
+			throw new IOException("Unsupported simulation log version: " + version);
+		final int flags = mIn.readInt();
+		final boolean deterministic = (flags & SimulationRecorder.FLAG_DETERMINISTIC) != 0;
+		
+		/* Gravity is always given by log */
+		if (physics == null)
+			physics = new ScenePhysics(GravitySource.getStaticGravity(0f, 0f), deterministic);
+		else if (physics.isDeterministic() != deterministic)
+			throw new IOException("Simulation mode doesn't match recorded one");
+		physics.setApproximateRotations(
+				(flags & SimulationRecorder.FLAG_APPROXIMATE_ROTATIONS) != 0);
+		mPhysics = physics;
+	}
+	
+	/**
+	 * @return simulation where log is replayed
+	 */
+	public ScenePhysics getScenePhysics() {
+		return mPhysics;
+	}
+	
+	/**
+	 * Replays records until next step is simulated
+	 * 
+	 * @return false if log has finished
+	 * @throws IOException if log can't be read or is corrupted
+	 */
+	public boolean replayStep() throws IOException {
+		if (mIsFinished)
+			return false;
+		final DataInputStream in = mIn;
+		for (;;) {
+			final int record = in.read();
+			switch (record) {
+			case SimulationRecorder.RECORD_ADD:
+				readBody();
+				break;
+				
+			case SimulationRecorder.RECORD_REMOVE: {
+				final int id = in.readInt();
+				mPhysics.remove(getBody(id));
+				mBodies.set(id, null);
+				break;
+			}
+				
+			case SimulationRecorder.RECORD_INPUT: {
+				final int input = in.readByte();
+				final PhysicBody body = getBody(in.readInt());
+				final float x = in.readFloat();
+				final float y = in.readFloat();
+				switch (input) {
+				case ScenePhysics.INPUT_IMPULSE:
+					mPhysics.applyImpulse(body, mImpulse.set(x, y));
+					break;
+				case ScenePhysics.INPUT_VELOCITY:
+					mPhysics.setVelocity(body, x, y);
+					break;
+				case ScenePhysics.INPUT_POSITION:
+					mPhysics.setPosition(body, mImpulse.set(x, y));
+					break;
+				default:
+					throw new IOException("Unknown input type: " + input);
+				}
+				break;
+			}
+				
+			case SimulationRecorder.RECORD_STEP: {
+				final float time = in.readFloat();
+				final float gravityX = in.readFloat();
+				final float gravityY = in.readFloat();
+				mPhysics.step(time, gravityX, gravityY);
+				mStepsCount++;
+				return true;
+			}
+				
+			case SimulationRecorder.RECORD_END:
+				mRecordedStepsCount = in.readInt();
+				mRecordedChecksum = in.readLong();
+				mHasEnd = true;
+				finish();
+				return false;
+				
+			case -1: // Recording wasn't stopped
+				finish();
+				return false;
+				
+			default:
+				throw new IOException("Unknown record type: " + record);
+			}
+		}
+	}
+	
+	/**
+	 * Replays whole log
+	 * 
+	 * @return steps simulated
+	 * @throws IOException if log can't be read or is corrupted
+	 */
+	public int replayAll() throws IOException {
+		while (replayStep())
+			;
+		return mStepsCount;
+	}
+	
+	/**
+	 * @return steps simulated
+	 */
+	public int getStepsCount() {
+		return mStepsCount;
+	}
+	
+	/**
+	 * Checks if replayed simulation ended in the same state, bit 
+	 * by bit, as the recorded one. Only valid once log has finished.
+	 * 
+	 * @return true if states match, false if they don't or if 
+	 * 		log has no final state
+	 */
+	public boolean isStateMatching() {
+		return mIsFinished && mHasEnd && mRecordedStepsCount == mStepsCount
+			&& mRecordedChecksum == mPhysics.takeSnapshot(null).getChecksum();
+	}
+	
+	private void finish() throws IOException {
+		mIsFinished = true;
+		mIn.close();
+	}
+	
+	/**
+	 * @return body on scene with given id
+	 */
+	private PhysicBody getBody(int id) throws IOException {
+		final PhysicBody body = id >= 0 && id < mBodies.size() ? mBodies.get(id) : null;
+		if (body == null)
+			throw new IOException("Unknown body: " + id);
+		return body;
+	}
+	
+	/**
+	 * Reads an added body and adds it to simulation
+	 */
+	private void readBody() throws IOException {
+		final DataInputStream in = mIn;
+		final int id = in.readInt();
+		if (id != mBodies.size())
+			throw new IOException("Unexpected body: " + id);
+		final int type = in.readByte();
+		if (type != SimulationRecorder.BODY_TYPE_POLYGON)
+			throw new IOException("Unknown body type: " + type);
+		
+		final int pointsCount = in.readInt();
+		if (pointsCount < 3)
+			throw new IOException("Invalid contour for body " + id);
+		final PackedPolygon contour = new PackedPolygon(pointsCount);
+		for (int i = 0; i < pointsCount; i++)
+			contour.set(i, in.readFloat(), in.readFloat());
+		final float volume = in.readFloat();
+		final float density = in.readFloat();
+		final float restitution = in.readFloat();
+		final float staticFriction = in.readFloat();
+		final float dynamicFriction = in.readFloat();
+		final float[] state = mState;
+		for (int i = 0; i < PhysicBody.STATE_SIZE; i++)
+			state[i] = in.readFloat();
+		final int flags = in.readInt();
+		
+		final PhysicBody body = new PhysicPolygon(contour, volume, 
+				new Vector2D(state[0], state[1]), NO_LISTENER);
+		body.setDensity(density);
+		body.setRestitutionCoeficient(restitution);
+		body.setStaticFrictionCoeficient(staticFriction);
+		body.setDynamicFrictionCoeficient(dynamicFriction);
+		body.restoreState(state, 0, flags);
+		mBodies.add(body);
+		mPhysics.add(body);
+	}
+}
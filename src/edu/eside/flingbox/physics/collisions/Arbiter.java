@@ -20,11 +20,14 @@ package edu.eside.flingbox.physics.collisions;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
+import java.util.List;
 
 import android.util.Log;
 
 import edu.eside.flingbox.physics.PhysicBody;
+import edu.eside.flingbox.utils.IndexedList;
 import edu.eside.flingbox.utils.PositionComparator;
 
 /**
@@ -32,27 +35,109 @@ import edu.eside.flingbox.utils.PositionComparator;
  */
 public class Arbiter {
 
+    /**
+     * Sorts contacts from the top of the scene to the bottom. Contacts 
+     * at the same height are sorted by their bodies' ids, so order 
+     * never depends on contacts' previous order.
+     */
+    private final static Comparator<Contact> CONTACTS_COMPARATOR = new Comparator<Contact>() {
+        private final Comparator<PositionComparator.Positionable> mByPosition = 
+            PositionComparator.UPPER_COMPARATOR;
+
+        public int compare(Contact c0, Contact c1) {
+            final int byPosition = mByPosition.compare(c0, c1);
+            if (byPosition != 0)
+                return byPosition;
+            final int byColliding = c0.collidingBody.getId() - c1.collidingBody.getId();
+            if (byColliding != 0)
+                return byColliding;
+            return c0.collidedBody.getId() - c1.collidedBody.getId();
+        }
+    };
+
     /** List with all colliders on the scene */
-    private final ArrayList<Collider> mCollisionableBodies = new ArrayList<Collider>();
+    private final IndexedList<Collider> mCollisionableBodies;
+
+    /** If true colliders' rotations are approximated */
+    private boolean mApproximateRotations = false;
+
+    /** Lists used by each check, kept to avoid allocation */
+    private final ArrayList<Contact> mContactsToSolve = new ArrayList<Contact>();
+    private final ArrayList<Contact> mIsolatedContactTree = new ArrayList<Contact>();
+
+    /**
+     * Creates an arbiter with O(1) removal of colliders
+     */
+    public Arbiter() {
+        this(false);
+    }
+
+    /**
+     * @param keepsOrder if true colliders are always checked in 
+     *        order of addition, but removal is O(n)
+     */
+    public Arbiter(boolean keepsOrder) {
+        mCollisionableBodies = new IndexedList<Collider>(keepsOrder);
+    }
 
     /** Adds new collider to the arbiter */
     public void add(final Collider collider) {
+        collider.setApproximateRotation(mApproximateRotations);
         mCollisionableBodies.add(collider);
     }
 
-    /** Removes a collider from the arbiter */
+    /** Adds many colliders to the arbiter */
+    public void addAll(final List<? extends Collider> colliders) {
+        for (int i = 0, n = colliders.size(); i < n; i++)
+            colliders.get(i).setApproximateRotation(mApproximateRotations);
+        mCollisionableBodies.addAll(colliders);
+    }
+
+    /**
+     * Sets if colliders' rotations are approximated, for current
+     * colliders and those added later
+     */
+    public void setApproximateRotations(boolean approximate) {
+        mApproximateRotations = approximate;
+        final IndexedList<Collider> colliders = mCollisionableBodies;
+        for (int i = 0, n = colliders.size(); i < n; i++)
+            colliders.get(i).setApproximateRotation(approximate);
+    }
+
+    /**
+     * @return true if colliders' rotations are approximated
+     */
+    public boolean isApproximatingRotations() {
+        return mApproximateRotations;
+    }
+
+    /** Removes a collider from the arbiter, in O(1) */
     public boolean remove(final Collider collider) {
         return mCollisionableBodies.remove(collider);
     }
 
+    /**
+     * Removes many colliders from the arbiter, in a single pass
+     * if it keeps order
+     */
+    public void removeAll(final List<? extends Collider> colliders) {
+        mCollisionableBodies.removeAll(colliders);
+    }
+
+    /** Removes every collider from the arbiter */
+    public void clear() {
+        mCollisionableBodies.clear();
+    }
+
     /**
      * Checks collision between bodies that are managed by the arbiter.
      * 
      * @return number of collisions
      */
     public void checkCollisions() {
-        final ArrayList<Collider> bodies = mCollisionableBodies;
-        final ArrayList<Contact> contactsToSolve = new ArrayList<Contact>();
+        final IndexedList<Collider> bodies = mCollisionableBodies;
+        final ArrayList<Contact> contactsToSolve = mContactsToSolve;
+        contactsToSolve.clear();
         final int bodiesCount = bodies.size();
 
         /* Start checking movable objects */
@@ -63,9 +148,9 @@ public class Arbiter {
                     contactsToSolve.add(contact);
             }
         /* Sort contacts to solve those */
-        Collections.sort(contactsToSolve, PositionComparator.UPPER_COMPARATOR);
+        Collections.sort(contactsToSolve, CONTACTS_COMPARATOR);
 
-        final ArrayList<Contact> isolatedContactTree = new ArrayList<Contact>();
+        final ArrayList<Contact> isolatedContactTree = mIsolatedContactTree;
 
         while (!contactsToSolve.isEmpty()) {
             isolatedContactTree.clear();
@@ -80,6 +165,8 @@ public class Arbiter {
 
             solveIsolatedContactTree(isolatedContactTree);
         }
+        /* Don't keep contacts alive until next check */
+        isolatedContactTree.clear();
 
     }
 
@@ -27,6 +27,8 @@ import edu.eside.flingbox.utils.PositionComparator.Positionable;
  * Abstract collision manager for any object.
  */
 public abstract class Collider implements OnMovementListener, Positionable {
+    /** Returned when there are no contacts, it's empty so it can be shared */
+    protected final static Contact[] NO_CONTACTS = new Contact[0];
 
     /** bounding circle radius, needed to discartd quickly collisions */
     protected float mRadius;
@@ -34,6 +36,8 @@ public abstract class Collider implements OnMovementListener, Positionable {
     /** Objects position. needs to be updated */
     protected final Vector2D mPosition;
     protected float mAngle = 0f;
+    /** If true rotation may be approximated, see {@link edu.eside.flingbox.math.Rot2} */
+    protected boolean mApproximateRotation = false;
 
     protected final PhysicBody mPhysicBody;
 
@@ -86,6 +90,14 @@ public abstract class Collider implements OnMovementListener, Positionable {
         return mPosition;
     }
 
+    /**
+     * Sets if collider's rotation can be approximated, faster but
+     * not deterministic
+     */
+    public void setApproximateRotation(boolean approximate) {
+        mApproximateRotation = approximate;
+    }
+
     /**
      * @return Bounding circle's radius
      */
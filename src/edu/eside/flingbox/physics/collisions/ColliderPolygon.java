@@ -19,7 +19,8 @@
 package edu.eside.flingbox.physics.collisions;
 
 import edu.eside.flingbox.math.Intersect;
-import edu.eside.flingbox.math.Matrix22;
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.math.Rot2;
 import edu.eside.flingbox.math.Vector2D;
 import edu.eside.flingbox.physics.PhysicBody;
 import edu.eside.flingbox.physics.PhysicBody.OnMovementListener;
@@ -35,9 +36,11 @@ import edu.eside.flingbox.physics.PhysicBody.OnMovementListener;
  */
 public class ColliderPolygon extends Collider implements OnMovementListener {
     /** Handled in Physics, only pointer */
-    private final Vector2D[] mPolygonContour;
+    private final PackedPolygon mPolygonContour;
     /** Located and rotated contour */
-    private final Vector2D[] mLocatedContour;
+    private final PackedPolygon mLocatedContour;
+    /** Rotation of located contour */
+    private final Rot2 mRotation = new Rot2();
 
     /**
      * Default constructor for a polygon collider.
@@ -49,16 +52,11 @@ public class ColliderPolygon extends Collider implements OnMovementListener {
      * 
      * @return
      */
-    public ColliderPolygon(final Vector2D[] contour, PhysicBody thisPhysic) {
+    public ColliderPolygon(final PackedPolygon contour, PhysicBody thisPhysic) {
         super(thisPhysic);
-        final int pointsCount = contour.length;
         mPolygonContour = contour;
-        mRadius = computeBoundingCircleRadius(contour);
-        mLocatedContour = new Vector2D[pointsCount];
-
-        for (int i = 0; i < pointsCount; i++)
-            mLocatedContour[i] = new Vector2D();
-
+        mRadius = contour.getBoundingRadius();
+        mLocatedContour = new PackedPolygon(contour);
     }
 
     /**
@@ -66,10 +64,10 @@ public class ColliderPolygon extends Collider implements OnMovementListener {
 	 */
     public Contact[] checkContacts(final Collider collider) {
         if (!super.canContact(collider))
-            return new Contact[0];
+            return NO_CONTACTS;
 
-        final Vector2D[] polygon = updateLocatedPolygon();
-        final Vector2D[] otherPolygon = ((ColliderPolygon) collider)
+        final PackedPolygon polygon = updateLocatedPolygon();
+        final PackedPolygon otherPolygon = ((ColliderPolygon) collider)
                 .updateLocatedPolygon();
 
         /* Find intersections */
@@ -93,43 +91,16 @@ public class ColliderPolygon extends Collider implements OnMovementListener {
         return contacts;
     }
 
-    /**
-     * Computes bounding circle with center in point (0, 0)
-     * 
-     * @param contour
-     *            Polygon's contour
-     * @return Circles radius
-     */
-    private static float computeBoundingCircleRadius(final Vector2D[] contour) {
-        float radiusSquare = 0.0f;
-        for (int i = contour.length - 1; i >= 0; i--) { // Do not use fast
-                                                        // enumeration since
-                                                        // performance issues
-            final Vector2D v = contour[i];
-            float vRadSquare = (v.i * v.i) + (v.j * v.j);
-            if (vRadSquare > radiusSquare)
-                radiusSquare = vRadSquare;
-        }
-        return (float) Math.sqrt(radiusSquare);
-    }
-
     /**
      * Moves polygon to determinate point and rotates it
      * 
      * @return New translated polygon
      */
-    private Vector2D[] updateLocatedPolygon() {
-        final Vector2D[] polygon = mPolygonContour;
-        final Vector2D[] locatedPolygon = mLocatedContour;
-        final Vector2D position = mPosition;
-        final float angle = mAngle;
-        final int pointsCount = polygon.length;
-        final Matrix22 rotationMatrix = new Matrix22(angle);
-
-        for (int i = 0; i < pointsCount; i++)
-            locatedPolygon[i].set(polygon[i]).mul(rotationMatrix).add(position);
-
-        return locatedPolygon;
+    private PackedPolygon updateLocatedPolygon() {
+        final Rot2 rotation = mApproximateRotation ? mRotation
+                .setApproximately(mAngle) : mRotation.set(mAngle);
+        return mLocatedContour.setTransformed(mPolygonContour, rotation.cos,
+                rotation.sin, mPosition.i, mPosition.j);
     }
 
 }
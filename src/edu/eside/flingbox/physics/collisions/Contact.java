@@ -114,27 +114,23 @@ public class Contact implements PositionComparator.Positionable {
     private void processRelativeVelocity() {
         final PhysicBody bodyA = this.collidingBody;
         final PhysicBody bodyB = this.collidedBody;
-        final Vector2D contactPointA = new Vector2D(this.position).sub(bodyA
-                .getPosition());
-        final Vector2D contactPointB = new Vector2D(this.position).sub(bodyB
-                .getPosition());
-
-        final Vector2D relativeVel = new Vector2D();
-        relativeVel.add(bodyB.getVelocity());
-        relativeVel.sub(bodyA.getVelocity());
-
-        final Vector2D relativePosition = new Vector2D();
-        relativePosition.add(contactPointB);
-        relativePosition.sub(contactPointA);
-
-        mIsCollision = relativeVel.isAtSameSide(relativePosition);
-
-        relativeVel.add(Vector2D.normalVector(contactPointB).mul(
-                bodyB.getAngularVelocity()));
-        relativeVel.sub(Vector2D.normalVector(contactPointA).mul(
-                bodyA.getAngularVelocity()));
-
-        mRelativeVelocity.set(relativeVel);
+        final Vector2D positionA = bodyA.getPosition(), positionB = bodyB.getPosition();
+        final Vector2D velocityA = bodyA.getVelocity(), velocityB = bodyB.getVelocity();
+        /* Contact points relative to each body */
+        final float pointAx = this.position.i - positionA.i;
+        final float pointAy = this.position.j - positionA.j;
+        final float pointBx = this.position.i - positionB.i;
+        final float pointBy = this.position.j - positionB.j;
+
+        final Vector2D relativeVel = mRelativeVelocity.set(velocityB).sub(velocityA);
+        mIsCollision = relativeVel.i * (pointBx - pointAx) 
+                + relativeVel.j * (pointBy - pointAy) > 0f;
+
+        /* Add velocity by rotation, angular velocity times contact point's normal */
+        final float angularVelA = bodyA.getAngularVelocity();
+        final float angularVelB = bodyB.getAngularVelocity();
+        relativeVel.add(-pointBy * angularVelB, pointBx * angularVelB);
+        relativeVel.sub(-pointAy * angularVelA, pointAx * angularVelA);
     }
 
 }
\ No newline at end of file
@@ -57,15 +57,14 @@ public class ContactSolver {
 
         /* Get velocity and mass of colliding body */
         final Vector2D relativeVel = contact.getRelativeVelocity();
-        final Vector2D relativeAgainstVel = new Vector2D(contact.normal)
-                .mul(relativeVel.projectOver(contact.normal));
+        final Vector2D normal = contact.normal;
+        final float againstVel = relativeVel.projectOver(normal);
 
         /* Compute final velocity */
-        final Vector2D impulseToApply = new Vector2D();
+        final float impulseFactor;
         if (collidedBody.isFixed()) // Other body is fixed
             /* Same as down but collidedMass is infinite, so: */
-            impulseToApply.set(relativeAgainstVel).mul(
-                    (1 + restit) * collidingBody.getBodyMass());
+            impulseFactor = (1 + restit) * collidingBody.getBodyMass();
         else { // If collided body can be moved is a little bit more complicated
             /*
              * We will work with relative velocity see
@@ -73,27 +72,32 @@ public class ContactSolver {
              */
             final float collidingMass = collidingBody.getBodyMass();
             final float collidedMass = collidedBody.getBodyMass();
-            impulseToApply.set(relativeAgainstVel).mul(
-                    collidingMass * collidedMass * (1 + restit)
-                            / (collidingMass + collidedMass));
+            impulseFactor = collidingMass * collidedMass * (1 + restit)
+                    / (collidingMass + collidedMass);
         }
+        float impulseX = normal.i * againstVel * impulseFactor;
+        float impulseY = normal.j * againstVel * impulseFactor;
 
         /* Get resultant impulse as addition of normal and friction */
-        final Vector2D frictionImpulse = computeFrictionImpulse(collidingBody,
-                impulseToApply.length(),
-                relativeVel.projectOver(contact.sense), contact.sense);
-        final Vector2D collisionImpuse = impulseToApply.add(frictionImpulse);
+        final Vector2D sense = contact.sense;
+        final float friction = computeFrictionImpulse(collidingBody,
+                (float) Math.sqrt(impulseX * impulseX + impulseY * impulseY),
+                relativeVel.projectOver(sense));
+        impulseX += sense.i * friction;
+        impulseY += sense.j * friction;
 
         /* Where impulse is applied */
-        Vector2D contactRelativePoint = new Vector2D(collidingBody
-                .getPosition()).sub(contact.position);
-        collidingBody.applyImpulse(collisionImpuse, contactRelativePoint);
+        final Vector2D contactPosition = contact.position;
+        final Vector2D collidingPosition = collidingBody.getPosition();
+        collidingBody.applyImpulse(impulseX, impulseY, 
+                collidingPosition.i - contactPosition.i, 
+                collidingPosition.j - contactPosition.j);
 
         if (!collidedBody.isFixed()) { // Other body also has an impulse
-            contactRelativePoint.set(collidedBody.getPosition()).sub(
-                    contact.position);
-            collidedBody.applyImpulse(collisionImpuse.negate(),
-                    contactRelativePoint);
+            final Vector2D collidedPosition = collidedBody.getPosition();
+            collidedBody.applyImpulse(-impulseX, -impulseY, 
+                    collidedPosition.i - contactPosition.i, 
+                    collidedPosition.j - contactPosition.j);
         }
     }
 
@@ -111,13 +115,16 @@ public class ContactSolver {
         final PhysicBody colliding = contact.collidingBody;
         final PhysicBody collided = contact.collidedBody;
         float penetration = contact.getIntersect().getIntersectionDepth();
-        final Vector2D penetrationFix = new Vector2D(contact.normal)
-                .mul(penetration);
-        final Vector2D relativePosition = new Vector2D(colliding.getPosition())
-                .sub(collided.getPosition());
-        if (!penetrationFix.isAtSameSide(relativePosition))
-            penetrationFix.negate();
-        colliding.setPosition(colliding.getPosition().add(penetrationFix));
+        float fixX = contact.normal.i * penetration;
+        float fixY = contact.normal.j * penetration;
+        final Vector2D collidingPosition = colliding.getPosition();
+        final Vector2D collidedPosition = collided.getPosition();
+        if (!(fixX * (collidingPosition.i - collidedPosition.i) 
+                + fixY * (collidingPosition.j - collidedPosition.j) > 0f)) {
+            fixX = -fixX;
+            fixY = -fixY;
+        }
+        colliding.setPosition(collidingPosition.add(fixX, fixY));
     }
 
     /**
@@ -132,12 +139,11 @@ public class ContactSolver {
      * @param bodyVelocity
      *            velocity along contact. Velocity should be decompose before
      *            pass it as a parameter.
-     * @param frictionDirection
-     *            normalized vector with direction.
-     * @return Friction force vector. it has to be applied along to bodyVelocity
+     * @return Friction impulse's module along friction's direction.
+     *         it has to be applied along to bodyVelocity
      */
-    private static Vector2D computeFrictionImpulse(final PhysicBody body,
-            float normal, float bodyVelocity, final Vector2D frictionDirection) {
+    private static float computeFrictionImpulse(final PhysicBody body,
+            float normal, float bodyVelocity) {
         float staticFrictionForce = body.getStaticFrictionCoeficient() * normal;
 
         final float currentVel = Math.abs(bodyVelocity);
@@ -153,7 +159,7 @@ public class ContactSolver {
             module = -Math.signum(bodyVelocity)
                     * body.getDynamicFrictionCoeficient() * Math.abs(normal);
 
-        return new Vector2D(frictionDirection).mul(-module);
+        return -module;
     }
 
 }
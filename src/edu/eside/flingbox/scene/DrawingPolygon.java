@@ -21,25 +21,68 @@ package edu.eside.flingbox.scene;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
-import java.util.ArrayList;
 
 import javax.microedition.khronos.opengles.GL10;
 
 import android.opengl.GLException;
 
 import edu.eside.flingbox.graphics.RenderBody;
-import edu.eside.flingbox.math.PolygonUtils;
+import edu.eside.flingbox.graphics.RenderCamera;
+import edu.eside.flingbox.graphics.ShaderProgram;
+import edu.eside.flingbox.math.DouglasPeuckerReducer;
+import edu.eside.flingbox.math.PackedPolygon;
 import edu.eside.flingbox.math.Vector2D;
 import edu.eside.flingbox.bodies.Body;
 import edu.eside.flingbox.bodies.Polygon;
 
 /**
  * Implements drawing methods to {@link StaticScene}
+ *
+ * Pattern is simplified while it is drawn, with an opening window:
+ * raw points are kept only while they are all near the line from last
+ * kept point to the newest one. When one isn't, previous point is
+ * kept and window starts again from it. Finalizing only refines the
+ * few kept points with Douglas-Peucker.
  */
 class DrawingPolygon implements DrawingBody {
 
-    private final ArrayList<Vector2D> mDrawingPattern = new ArrayList<Vector2D>();
+    /** Color of the pattern */
+    private final static float[] WHITE = new float[] { 1f, 1f, 1f, 1f };
+
+    /** Max tolerated distance, as a fraction of camera's width */
+    private final static float EPSILON_BY_APERTURE = 1f / 100f;
+    /** Max raw points in window, bounds cost of each new point */
+    private final static int MAX_WINDOW_POINTS = 64;
+
+    /** Camera, its zoom sets simplification's tolerance */
+    private final RenderCamera mCamera;
+    /** Squared tolerance of current pattern, set by its first point */
+    private float mEpsilon, mEpsilonSquare;
+
+    /** Kept points, as x, y pairs */
+    private float[] mKeptPoints = new float[2 * 32];
+    private int mKeptPointsCount = 0;
+    /** Refines kept points when pattern is finalized */
+    private final DouglasPeuckerReducer mReducer = new DouglasPeuckerReducer();
+    /** Refined points, as x, y pairs */
+    private float[] mReducedPoints = new float[2 * 32];
+
+    /** Raw points after last kept one, as x, y pairs */
+    private final float[] mWindow = new float[2 * MAX_WINDOW_POINTS];
+    private int mWindowPointsCount = 0;
+
+    /** Initial capacity of preview's buffer, in points */
+    private final static int INITIAL_PREVIEW_CAPACITY = 256;
+
+    /**
+     * Pattern points, as x, y pairs, for preview. Only appended by
+     * drawing thread; grown by copying into a bigger buffer, so
+     * OpenGL's thread always sees a valid one. Never uses relative
+     * puts, so position stays at 0.
+     */
+    private volatile FloatBuffer mPreviewBuffer = allocatePreviewBuffer(INITIAL_PREVIEW_CAPACITY);
+    /** Points in preview's buffer. Set after points are written */
+    private volatile int mPreviewPointsCount = 0;
 
     /**
      * {@link Renderizable} Object witch handles drawing pattern and show it to
@@ -47,55 +90,39 @@ class DrawingPolygon implements DrawingBody {
      */
     private final RenderBody mDrawingRender = new RenderBody() {
 
-        /** Flag to lock drawing */
-        private boolean mDoRender = true;
-
         /**
          * Renderizes pattern to {@link GL10}.
          */
         public boolean onRender(GL10 gl) {
+            // Read count before buffer, points are written before count
+            final int pointsCount = mPreviewPointsCount;
             // We need two or more points to render
-            final int pointsCount = mDrawingPattern.size();
-            if (pointsCount < 2 || !mDoRender)
+            if (pointsCount < 2)
                 return false;
 
+            // Draw it to OpenGL's space
             try {
-                // Fit points to OpenGL
-                FloatBuffer vertexBuffer = ByteBuffer.allocateDirect(
-                        4 * 3 * pointsCount).order(ByteOrder.nativeOrder())
-                        .asFloatBuffer();
-
-                ShortBuffer indexBuffer = ByteBuffer.allocateDirect(
-                        2 * 2 * (pointsCount - 1)).order(
-                        ByteOrder.nativeOrder()).asShortBuffer();
-
-                // Fit 2D points into 3D space
-                final ArrayList<Vector2D> pattern = mDrawingPattern;
-                for (short i = 0; i < (pointsCount - 1);) {
-                    vertexBuffer.put(pattern.get(i).i);
-                    vertexBuffer.put(pattern.get(i).j);
-                    vertexBuffer.put(0.0f);
-
-                    indexBuffer.put(i++); // Set indexes
-                    indexBuffer.put(i);
-                }
-                vertexBuffer.put(pattern.get(pointsCount - 1).i); // Put also
-                vertexBuffer.put(pattern.get(pointsCount - 1).j); // last point.
-                vertexBuffer.put(0.0f);
-
-                vertexBuffer.position(0);
-                indexBuffer.position(0);
-
-                // Draw it to OpenGL's space
-                try {
-                    gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
-                    gl.glVertexPointer(3, GL10.GL_FLOAT, 0, vertexBuffer);
-                    gl.glDrawElements(GL10.GL_LINES, 2 * (pointsCount - 1),
-                            GL10.GL_UNSIGNED_SHORT, indexBuffer);
-                } catch (GLException ex) {
-                    // Do nothing
-                    return false;
-                }
+                gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
+                gl.glVertexPointer(2, GL10.GL_FLOAT, 0, mPreviewBuffer);
+                gl.glDrawArrays(GL10.GL_LINE_STRIP, 0, pointsCount);
+            } catch (GLException ex) {
+                // Do nothing. Just skip drawing this frame
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Renderizes pattern with OpenGL ES 2.0
+         */
+        public boolean onRender(ShaderProgram program) {
+            final int pointsCount = mPreviewPointsCount;
+            if (pointsCount < 2)
+                return false;
+
+            try {
+                program.draw(GL10.GL_LINE_STRIP, mPreviewBuffer, null,
+                        pointsCount, 0f, 0f, 1f, 0f, WHITE);
             } catch (Exception ex) {
                 // Do nothing. Just skip drawing this frame
                 return false;
@@ -104,39 +131,144 @@ class DrawingPolygon implements DrawingBody {
         }
     };
 
+    /**
+     * @param camera camera used to draw, simplification's
+     *            tolerance scales with its zoom
+     */
+    DrawingPolygon(RenderCamera camera) {
+        mCamera = camera;
+    }
+
     public RenderBody getDrawingRender() {
         return mDrawingRender;
     }
 
     public void newDrawingPoint(final Vector2D point) {
-        mDrawingPattern.add(point);
+        simplify(point.i, point.j);
+
+        /* Append only new point to preview */
+        final int pointsCount = mPreviewPointsCount;
+        FloatBuffer buffer = mPreviewBuffer;
+        if (2 * (pointsCount + 1) > buffer.capacity()) {
+            final FloatBuffer grown = allocatePreviewBuffer(2 * buffer.capacity());
+            final FloatBuffer points = buffer.duplicate();
+            points.position(0).limit(2 * pointsCount);
+            grown.put(points).position(0);
+            mPreviewBuffer = buffer = grown;
+        }
+        buffer.put(2 * pointsCount, point.i);
+        buffer.put(2 * pointsCount + 1, point.j);
+        mPreviewPointsCount = pointsCount + 1;
+    }
+
+    /**
+     * @return new direct buffer for given points
+     */
+    private static FloatBuffer allocatePreviewBuffer(int pointsCapacity) {
+        return ByteBuffer.allocateDirect(4 * 2 * pointsCapacity)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Adds a raw point to the opening window, keeping last
+     * window's point if new one makes window too far from line.
+     */
+    private void simplify(final float x, final float y) {
+        if (mKeptPointsCount == 0) {
+            /* First point of pattern, tolerance depends on current zoom */
+            mEpsilon = mCamera.getAperture().i * EPSILON_BY_APERTURE;
+            mEpsilonSquare = mEpsilon * mEpsilon;
+            keepPoint(x, y);
+            return;
+        }
+
+        final float[] window = mWindow;
+        final int windowPointsCount = mWindowPointsCount;
+        if (windowPointsCount == MAX_WINDOW_POINTS || !isWindowNearLine(x, y)) {
+            /* Last window's point is needed, window restarts from it */
+            keepPoint(window[2 * windowPointsCount - 2], window[2 * windowPointsCount - 1]);
+            mWindowPointsCount = 0;
+        }
+        window[2 * mWindowPointsCount] = x;
+        window[2 * mWindowPointsCount + 1] = y;
+        mWindowPointsCount++;
+    }
+
+    /**
+     * @return true if every window's point is near the line from
+     *         last kept point to given one
+     */
+    private boolean isWindowNearLine(final float x, final float y) {
+        final float ax = mKeptPoints[2 * mKeptPointsCount - 2];
+        final float ay = mKeptPoints[2 * mKeptPointsCount - 1];
+        final float dx = x - ax, dy = y - ay;
+        final float lengthSquare = dx * dx + dy * dy;
+        final float[] window = mWindow;
+        for (int i = 0; i < 2 * mWindowPointsCount; i += 2) {
+            final float px = window[i] - ax, py = window[i + 1] - ay;
+            if (lengthSquare == 0f) {
+                if (px * px + py * py > mEpsilonSquare)
+                    return false;
+            } else {
+                /* Squared distance to line is cross^2 / length^2 */
+                final float cross = dx * py - dy * px;
+                if (cross * cross > mEpsilonSquare * lengthSquare)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private void keepPoint(final float x, final float y) {
+        if (2 * mKeptPointsCount + 2 > mKeptPoints.length) {
+            final float[] grown = new float[2 * mKeptPoints.length];
+            System.arraycopy(mKeptPoints, 0, grown, 0, 2 * mKeptPointsCount);
+            mKeptPoints = grown;
+        }
+        mKeptPoints[2 * mKeptPointsCount] = x;
+        mKeptPoints[2 * mKeptPointsCount + 1] = y;
+        mKeptPointsCount++;
     }
 
     public Body finalizeDrawing() {
-        final int pointsCount = mDrawingPattern.size();
+        /* Kept points and the last drawn one */
+        final int windowPointsCount = mWindowPointsCount;
+        final int pointsCount = mKeptPointsCount + (windowPointsCount > 0 ? 1 : 0);
 
         Polygon drawedPolygon = null;
 
         if (pointsCount >= 3) { // if we had points enough
-            mDrawingPattern.trimToSize();
-            /* Optimize points by Douglas-Peucker algorithm */
-            Vector2D[] optimizedPoints = PolygonUtils.douglasPeuckerReducer(
-                    mDrawingPattern.toArray(new Vector2D[0]), 5f);// TODO:
-                                                                  // mCamera.getAperture().i
-                                                                  // / 100f);
-
-            if (optimizedPoints.length >= 3) { // We have points enough
-                drawedPolygon = new Polygon(optimizedPoints);
+            if (windowPointsCount > 0)
+                keepPoint(mWindow[2 * windowPointsCount - 2], mWindow[2 * windowPointsCount - 1]);
+            if (mReducedPoints.length < mKeptPoints.length)
+                mReducedPoints = new float[mKeptPoints.length];
+
+            /* Refine kept points by Douglas-Peucker algorithm, they are few */
+            final float[] reducedPoints = mReducedPoints;
+            final int reducedCount = mReducer.reduce(mKeptPoints, pointsCount, mEpsilon,
+                    reducedPoints);
+
+            if (reducedCount >= 3) { // We have points enough
+                /* Polygon keeps its points, so they can't be in a reused array */
+                final float[] optimizedPoints = new float[2 * reducedCount];
+                System.arraycopy(reducedPoints, 0, optimizedPoints, 0, 2 * reducedCount);
+                drawedPolygon = new Polygon(new PackedPolygon(optimizedPoints, reducedCount));
                 drawedPolygon.setRandomColor();
 
             }
         }
-        mDrawingPattern.clear();
+        resetPattern();
         return drawedPolygon;
     }
 
     public void cancelDrawing() {
-        mDrawingPattern.clear();
+        resetPattern();
+    }
+
+    private void resetPattern() {
+        mKeptPointsCount = 0;
+        mWindowPointsCount = 0;
+        mPreviewPointsCount = 0;
     }
 
 }
@@ -20,6 +20,9 @@ package edu.eside.flingbox.scene;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -28,23 +31,26 @@ import org.xmlpull.v1.XmlSerializer;
 import android.app.Activity;
 import android.content.Context;
 import android.hardware.SensorManager;
-import android.opengl.GLSurfaceView.Renderer;
 import android.os.Vibrator;
 import android.util.DisplayMetrics;
 import android.view.MotionEvent;
 
 import edu.eside.flingbox.BodySettingsDialog;
 import edu.eside.flingbox.Preferences;
+import edu.eside.flingbox.graphics.RenderBody;
 import edu.eside.flingbox.graphics.SceneRenderer;
 import edu.eside.flingbox.graphics.RenderCamera;
 import edu.eside.flingbox.input.SceneGestureDetector;
 import edu.eside.flingbox.input.SceneGestureDetector.OnInputListener;
 import edu.eside.flingbox.bodies.Body;
 import edu.eside.flingbox.bodies.Polygon;
+import edu.eside.flingbox.bodies.PolygonBuilder;
+import edu.eside.flingbox.math.PackedPolygon;
 import edu.eside.flingbox.math.Vector2D;
 import edu.eside.flingbox.physics.PhysicBody;
 import edu.eside.flingbox.physics.ScenePhysics;
 import edu.eside.flingbox.physics.gravity.GravitySource;
+import edu.eside.flingbox.utils.IndexedList;
 import edu.eside.flingbox.xml.InvalidXmlException;
 import edu.eside.flingbox.xml.XmlExporter.XmlSerializable;
 import edu.eside.flingbox.xml.XmlImporter.XmlParseable;
@@ -63,7 +69,9 @@ public class Scene {
     private final ScenePhysics mScenePhysics;
     private final SceneGestureDetector mGestureDetector;
 
-    private final ArrayList<Body> mOnSceneBodies = new ArrayList<Body>();
+    private final IndexedList<Body> mOnSceneBodies = new IndexedList<Body>();
+    /** Bodies on scene by their physics, to find touched ones */
+    private final IdentityHashMap<PhysicBody, Body> mBodiesByPhysics = new IdentityHashMap<PhysicBody, Body>();
 
     private final Context mContext;
 
@@ -96,8 +104,16 @@ public class Scene {
             gravity = GravitySource.getStaticGravity(0f,
                     -SensorManager.GRAVITY_EARTH);
 
-        mSceneRenderer = new SceneRenderer();
-        mScenePhysics = new ScenePhysics(gravity);
+        mSceneRenderer = SceneRenderer.newInstance(c);
+        mScenePhysics = new ScenePhysics(gravity,
+                Preferences.deterministicSimulation);
+        mScenePhysics.setApproximateRotations(Preferences.approximateRotations);
+        /* A single new frame for all bodies moved by each step */
+        mScenePhysics.setOnBodiesMovedListener(new ScenePhysics.OnBodiesMovedListener() {
+            public void onBodiesMoved() {
+                mSceneRenderer.requestRender();
+            }
+        });
 
         mGestureDetector = new SceneGestureDetector(c, mInputListener);
 
@@ -128,7 +144,7 @@ public class Scene {
             break;
             
         case SCENE_MODE_DRAWING_POLYGON:
-            mDrawingBody = new DrawingPolygon();
+            mDrawingBody = new DrawingPolygon(mCamera);
             
             break;
         }
@@ -150,31 +166,105 @@ public class Scene {
 
     public void add(Body body) {
         mOnSceneBodies.add(body);
+        mBodiesByPhysics.put(body.getPhysics(), body);
         mSceneRenderer.add(body.getRender());
         mScenePhysics.add(body.getPhysics());
     }
 
+    /**
+     * Adds many bodies at once. Renderer and physics
+     * receive them as a single batch.
+     * 
+     * @param bodies bodies to be added
+     */
+    public void addAll(List<Body> bodies) {
+        final int bodiesCount = bodies.size();
+        final ArrayList<RenderBody> renders = new ArrayList<RenderBody>(bodiesCount);
+        final ArrayList<PhysicBody> physics = new ArrayList<PhysicBody>(bodiesCount);
+        for (int i = 0; i < bodiesCount; i++) {
+            renders.add(bodies.get(i).getRender());
+            physics.add(bodies.get(i).getPhysics());
+            mBodiesByPhysics.put(bodies.get(i).getPhysics(), bodies.get(i));
+        }
+        mOnSceneBodies.addAll(bodies);
+        mSceneRenderer.addAll(renders);
+        mScenePhysics.addAll(physics);
+    }
+
+    /**
+     * Builds polygons in parallel, out of UI thread, and adds them 
+     * as a single batch when all are built. Must be called from 
+     * UI thread.
+     * 
+     * @param contours contours of polygons, they are stored and modified
+     * @param simplification max distance of points removed from 
+     *        contours, 0 to keep every point
+     * @return builder, it can be canceled
+     */
+    public PolygonBuilder addPolygons(List<PackedPolygon> contours, float simplification) {
+        final PolygonBuilder builder = new PolygonBuilder();
+        builder.setSimplification(simplification);
+        builder.buildInBackground(contours, new PolygonBuilder.OnBuildListener() {
+            public void onPolygonsBuilt(ArrayList<Body> polygons) {
+                addAll(polygons);
+            }
+        });
+        return builder;
+    }
+
     public boolean remove(Body body) {
-        boolean removed = mOnSceneBodies.remove(body);
-        removed &= mSceneRenderer.remove(body.getRender());
-        removed &= mScenePhysics.remove(body.getPhysics());
-        return removed;
+        if (!mOnSceneBodies.remove(body))
+            return false;
+        mBodiesByPhysics.remove(body.getPhysics());
+        mSceneRenderer.remove(body.getRender());
+        mScenePhysics.remove(body.getPhysics());
+        return true;
+    }
+
+    /**
+     * Removes many bodies at once. Renderer and physics
+     * receive them as a single batch.
+     * 
+     * @param bodies bodies to be removed
+     */
+    public void removeAll(List<Body> bodies) {
+        final int bodiesCount = bodies.size();
+        final ArrayList<RenderBody> renders = new ArrayList<RenderBody>(bodiesCount);
+        final ArrayList<PhysicBody> physics = new ArrayList<PhysicBody>(bodiesCount);
+        for (int i = 0; i < bodiesCount; i++) {
+            final Body body = bodies.get(i);
+            if (!mOnSceneBodies.remove(body))
+                continue;
+            mBodiesByPhysics.remove(body.getPhysics());
+            renders.add(body.getRender());
+            physics.add(body.getPhysics());
+        }
+        mSceneRenderer.removeAll(renders);
+        mScenePhysics.removeAll(physics);
+    }
+
+    /**
+     * @return bodies on scene, shouldn't be modified
+     */
+    public List<Body> getBodies() {
+        return Collections.unmodifiableList(mOnSceneBodies);
     }
 
     /**
      * Clear all bodys on scene
      */
     public void clearScene() {
-        final ArrayList<Body> bodies = mOnSceneBodies;
         mScenePhysics.stopSimulation();
-        while (!bodies.isEmpty())
-            remove(bodies.get(0));
+        mOnSceneBodies.clear();
+        mBodiesByPhysics.clear();
+        mSceneRenderer.clear();
+        mScenePhysics.clear();
     }
 
     /**
      * @return Renderer for the scene
      */
-    public Renderer getSceneRenderer() {
+    public SceneRenderer getSceneRenderer() {
         return mSceneRenderer;
     }
     
@@ -220,12 +310,13 @@ public class Scene {
                     .project(new Vector2D(e.getX(), e.getY()));
 
             // Check if user is dragging body
-            for (Body object : mOnSceneBodies)
-                if (object.getPhysics().contains(p)) {
-                    mSelectedBody = object;
-                    mIsDraggingBody = true;
-                    return true;
-                }
+            final PhysicBody touched = mScenePhysics.findBodyAt(p.i, p.j);
+            final Body touchedBody = touched != null ? mBodiesByPhysics.get(touched) : null;
+            if (touchedBody != null) {
+                mSelectedBody = touchedBody;
+                mIsDraggingBody = true;
+                return true;
+            }
 
             switch (mMode) {
             case SCENE_MODE_PREVIEW:
@@ -234,6 +325,7 @@ public class Scene {
             case SCENE_MODE_DRAWING:
                 mSceneRenderer.add(mDrawingBody.getDrawingRender());
                 mDrawingBody.newDrawingPoint(p);
+                mSceneRenderer.requestRender();
                 break;
 
             }
@@ -256,10 +348,10 @@ public class Scene {
                     Vector2D movementImpulse = touchPosition.sub(downPosition)
                             .mul(selectedPhysics.getBodyMass());
 
-                    selectedPhysics.applyImpulse(movementImpulse);
+                    mScenePhysics.applyImpulse(selectedPhysics, movementImpulse);
                 } else
                     /* Just move the body */
-                    selectedPhysics.setPosition(touchPosition);
+                    mScenePhysics.setPosition(selectedPhysics, touchPosition);
             }
 
             switch (mMode) {
@@ -273,6 +365,7 @@ public class Scene {
                 final Vector2D p = mCamera.project(new Vector2D(e.getX(), e
                         .getY()));
                 mDrawingBody.newDrawingPoint(p);
+                mSceneRenderer.requestRender();
                 break;
             }
 
@@ -320,7 +413,7 @@ public class Scene {
                 final float vx = (velocityX * cameraScale);
                 final float vy = (velocityY * cameraScale);
 
-                mSelectedBody.getPhysics().setVelocity(vx, vy);
+                mScenePhysics.setVelocity(mSelectedBody.getPhysics(), vx, vy);
                 handled = true;
             }
 
@@ -0,0 +1,191 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.utils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List of distinct items witch knows the index of each one, 
+ * so contains() and remove() are O(1). Removal moves last item 
+ * to the removed one's place, so order isn't kept after removals, 
+ * unless list is created to keep order, then removal is O(n).
+ * Items are compared by identity.
+ */
+public class IndexedList<T> extends AbstractList<T> implements RandomAccess {
+	/** Items, in list order */
+	private final ArrayList<T> mItems = new ArrayList<T>();
+	/** Index of each item in mItems */
+	private final IdentityHashMap<T, Integer> mIndexes = new IdentityHashMap<T, Integer>();
+	/** If set, removal shifts following items instead of moving last one */
+	private final boolean mKeepsOrder;
+	
+	/**
+	 * Creates a list with O(1) removal
+	 */
+	public IndexedList() {
+		this(false);
+	}
+	
+	/**
+	 * @param keepsOrder if true items are always in order 
+	 * 		of addition, but removal is O(n)
+	 */
+	public IndexedList(boolean keepsOrder) {
+		mKeepsOrder = keepsOrder;
+	}
+
+	@Override
+	public T get(int index) {
+		return mItems.get(index);
+	}
+
+	@Override
+	public int size() {
+		return mItems.size();
+	}
+
+	/**
+	 * Appends an item, if it isn't already in list
+	 *
+	 * @return true if item was added
+	 */
+	@Override
+	public boolean add(T item) {
+		if (mIndexes.containsKey(item))
+			return false;
+		mIndexes.put(item, mItems.size());
+		mItems.add(item);
+		return true;
+	}
+
+	/**
+	 * Appends many items, skipping those already in list
+	 *
+	 * @return true if any item was added
+	 */
+	public boolean addAll(List<? extends T> items) {
+		mItems.ensureCapacity(mItems.size() + items.size());
+		boolean modified = false;
+		for (int i = 0, n = items.size(); i < n; i++)
+			modified |= add(items.get(i));
+		return modified;
+	}
+
+	@Override
+	public boolean contains(Object item) {
+		return mIndexes.containsKey(item);
+	}
+
+	@Override
+	public int indexOf(Object item) {
+		final Integer index = mIndexes.get(item);
+		return index != null ? index : -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object item) {
+		return indexOf(item);
+	}
+
+	/**
+	 * Removes an item in O(1). Last item takes its place, 
+	 * unless list keeps order.
+	 *
+	 * @return true if item was in list
+	 */
+	@Override
+	public boolean remove(Object item) {
+		final Integer index = mIndexes.remove(item);
+		if (index == null)
+			return false;
+		if (mKeepsOrder) {
+			final ArrayList<T> items = mItems;
+			items.remove(index.intValue());
+			for (int i = index, n = items.size(); i < n; i++)
+				mIndexes.put(items.get(i), i);
+			return true;
+		}
+		final int lastIndex = mItems.size() - 1;
+		final T last = mItems.remove(lastIndex);
+		if (index != lastIndex) {
+			mItems.set(index, last);
+			mIndexes.put(last, index);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes item at index in O(1). Last item takes its place, 
+	 * unless list keeps order.
+	 */
+	@Override
+	public T remove(int index) {
+		final T item = mItems.get(index);
+		remove(item);
+		return item;
+	}
+
+	/**
+	 * Removes many items. If list keeps order it's done in a 
+	 * single pass, else each one is removed in O(1).
+	 *
+	 * @return true if any item was removed
+	 */
+	@Override
+	public boolean removeAll(Collection<?> items) {
+		if (!mKeepsOrder) {
+			boolean modified = false;
+			for (Object item : items)
+				modified |= remove(item);
+			return modified;
+		}
+		
+		boolean modified = false;
+		for (Object item : items)
+			modified |= mIndexes.remove(item) != null;
+		if (!modified)
+			return false;
+		/* Compact remaining items, those still indexed */
+		final ArrayList<T> itemsList = mItems;
+		final int size = itemsList.size();
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			final T item = itemsList.get(i);
+			if (mIndexes.containsKey(item)) {
+				itemsList.set(kept, item);
+				mIndexes.put(item, kept);
+				kept++;
+			}
+		}
+		for (int i = size - 1; i >= kept; i--)
+			itemsList.remove(i);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		mItems.clear();
+		mIndexes.clear();
+	}
+}
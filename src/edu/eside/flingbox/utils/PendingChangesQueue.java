@@ -0,0 +1,215 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Lock-free queue of structural changes (additions and removals) over a
+ * list that is iterated by another thread.
+ * Any thread can queue changes, but only the thread witch owns the list
+ * should apply them, at a moment when it is not iterating it.
+ */
+public class PendingChangesQueue<T> {
+	/**
+	 * Listener called for each change applied to the list. Changes 
+	 * queued together are notified together.
+	 */
+	public interface OnChangeListener<T> {
+		/** Called after item has been added to the list */
+		public void onAdded(T item);
+
+		/** Called after item has been removed from the list */
+		public void onRemoved(T item);
+
+		/**
+		 * Called after many items have been added to the list
+		 *
+		 * @param items added items, only valid during the call
+		 */
+		public void onAddedAll(List<T> items);
+
+		/**
+		 * Called after many items have been removed from the list
+		 *
+		 * @param items removed items, only valid during the call
+		 */
+		public void onRemovedAll(List<T> items);
+
+		/**
+		 * Called before every item is removed from the list
+		 *
+		 * @param items list, still with every item
+		 */
+		public void onCleared(List<T> items);
+	}
+
+	/** Kinds of change */
+	private final static int CHANGE_ADD = 0;
+	private final static int CHANGE_REMOVE = 1;
+	private final static int CHANGE_CLEAR = 2;
+	private final static int CHANGE_ADD_ALL = 3;
+	private final static int CHANGE_REMOVE_ALL = 4;
+
+	/** Single queued change */
+	private static class Change<T> {
+		final T item;
+		/** Items of bulk changes */
+		final List<T> items;
+		final int type;
+
+		Change(T item, int type) {
+			this.item = item;
+			this.items = null;
+			this.type = type;
+		}
+
+		Change(List<T> items, int type) {
+			this.item = null;
+			this.items = items;
+			this.type = type;
+		}
+	}
+
+	/** Items changed by a bulk change. Only used by applying thread */
+	private final ArrayList<T> mChangedItems = new ArrayList<T>();
+
+	/** Changes not applied yet. Lock-free, so producers never wait */
+	private final ConcurrentLinkedQueue<Change<T>> mChanges = new ConcurrentLinkedQueue<Change<T>>();
+
+	/**
+	 * Queues addition of an item
+	 *
+	 * @param item item to be added
+	 */
+	public void add(T item) {
+		mChanges.offer(new Change<T>(item, CHANGE_ADD));
+	}
+
+	/**
+	 * Queues addition of many items, in list order. They 
+	 * are applied together.
+	 *
+	 * @param items items to be added, they are copied
+	 */
+	public void addAll(List<? extends T> items) {
+		mChanges.offer(new Change<T>(new ArrayList<T>(items), CHANGE_ADD_ALL));
+	}
+
+	/**
+	 * Queues removal of an item
+	 *
+	 * @param item item to be removed
+	 */
+	public void remove(T item) {
+		mChanges.offer(new Change<T>(item, CHANGE_REMOVE));
+	}
+
+	/**
+	 * Queues removal of many items. They are applied together.
+	 *
+	 * @param items distinct items to be removed, they are copied
+	 */
+	public void removeAll(List<? extends T> items) {
+		mChanges.offer(new Change<T>(new ArrayList<T>(items), CHANGE_REMOVE_ALL));
+	}
+
+	/**
+	 * Queues removal of every item in list, including
+	 * those added by changes queued before.
+	 */
+	public void clear() {
+		mChanges.offer(new Change<T>((List<T>) null, CHANGE_CLEAR));
+	}
+
+	/**
+	 * @return true if there are no changes pending
+	 */
+	public boolean isEmpty() {
+		return mChanges.isEmpty();
+	}
+
+	/**
+	 * Applies all queued changes, in the same order they were queued.
+	 * Removals are O(1) if list is an {@link IndexedList}, bulk 
+	 * removals are a single pass if it keeps order.
+	 * Should only be called by the thread witch iterates the list.
+	 *
+	 * @param list list to be modified
+	 * @param listener listener to be notified, can be null
+	 * @return true if list has been modified
+	 */
+	public boolean applyTo(List<T> list, OnChangeListener<T> listener) {
+		boolean modified = false;
+		for (Change<T> change = mChanges.poll(); change != null; change = mChanges.poll()) {
+			switch (change.type) {
+			case CHANGE_ADD:
+				if (list.add(change.item)) {
+					if (listener != null)
+						listener.onAdded(change.item);
+					modified = true;
+				}
+				break;
+			case CHANGE_REMOVE:
+				if (list.remove(change.item)) {
+					if (listener != null)
+						listener.onRemoved(change.item);
+					modified = true;
+				}
+				break;
+			case CHANGE_ADD_ALL: {
+				final ArrayList<T> added = mChangedItems;
+				for (int i = 0, n = change.items.size(); i < n; i++)
+					if (list.add(change.items.get(i)))
+						added.add(change.items.get(i));
+				if (!added.isEmpty()) {
+					if (listener != null)
+						listener.onAddedAll(added);
+					modified = true;
+				}
+				added.clear();
+				break;
+			}
+			case CHANGE_REMOVE_ALL: {
+				final ArrayList<T> removed = mChangedItems;
+				for (int i = 0, n = change.items.size(); i < n; i++)
+					if (list.contains(change.items.get(i)))
+						removed.add(change.items.get(i));
+				if (!removed.isEmpty()) {
+					list.removeAll(removed);
+					if (listener != null)
+						listener.onRemovedAll(removed);
+					modified = true;
+				}
+				removed.clear();
+				break;
+			}
+			case CHANGE_CLEAR:
+				if (listener != null && !list.isEmpty())
+					listener.onCleared(list);
+				modified |= !list.isEmpty();
+				list.clear();
+				break;
+			}
+		}
+		return modified;
+	}
+}
@@ -39,20 +39,24 @@ public class PositionComparator  {
 	 */
 	protected static class ByPositionComparator  implements Comparator<Positionable> {
 		public final static int UPPER_SENSE = 1;
-		public final static int LOWER_SENSE = 1;
+		public final static int LOWER_SENSE = -1;
 		private final int mSense;
 		
 		ByPositionComparator(int sense) {
 			mSense = sense;
 		}
 		
+		/**
+		 * Equal positions are equal, so order is total and 
+		 * stable sorts keep previous order of them.
+		 */
 		@Override
 		public int compare(Positionable pos0, Positionable pos1) {
 			if (pos0 == pos1)
 				return 0;
 			float verticalPos1 = pos0.getPosition().projectOver(mGroundSense);
 			float verticalPos2 = pos1.getPosition().projectOver(mGroundSense);
-			return verticalPos1 > verticalPos2 ? mSense : -mSense;
+			return mSense * Float.compare(verticalPos1, verticalPos2);
 		}
 		
 	}
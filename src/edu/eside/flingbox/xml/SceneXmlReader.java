@@ -0,0 +1,525 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.xml;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import edu.eside.flingbox.bodies.Polygon;
+import edu.eside.flingbox.bodies.PolygonBuilder;
+import edu.eside.flingbox.io.SceneFile;
+import edu.eside.flingbox.io.SceneFile.OnBodyReadListener;
+import edu.eside.flingbox.io.SceneFile.OnShapeReadListener;
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.math.Vector2D;
+
+/**
+ * Streaming reader specialized in flingbox scenes, as written 
+ * by {@link Polygon#writeXml(org.xmlpull.v1.XmlSerializer)}.
+ * Works over a char buffer, numbers are parsed directly 
+ * from it without creating strings.
+ * 
+ * Only flingbox, polygon, contour, point, position, angle and 
+ * fixed elements are accepted. Prolog, comments and whitespace 
+ * are skipped.
+ */
+public class SceneXmlReader {
+	private final static String TAG_FLINGBOX = "flingbox";
+	private final static String TAG_POLYGON = "polygon";
+	private final static String TAG_CONTOUR = "contour";
+	private final static String TAG_POSITION = "position";
+	private final static String TAG_ANGLE = "angle";
+	private final static String TAG_POINT = "point";
+	private final static String TAG_FIXED = "fixed";
+	private final static String ATTRIBUTE_POINTS_COUNT = "pointsCount";
+	private final static String ATTRIBUTE_X = "x";
+	private final static String ATTRIBUTE_Y = "y";
+	private final static String ATTRIBUTE_VALUE = "value";
+	
+	private final static int BUFFER_SIZE = 8192;
+	/** Max length of tag and attribute names */
+	private final static int MAX_NAME_LENGTH = 32;
+	/** Max significant digits kept by a long */
+	private final static int MAX_DIGITS = 18;
+	/** Exact powers of ten as doubles */
+	private final static double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1d;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10d;
+	}
+	
+	private final Reader mReader;
+	private final char[] mBuffer = new char[BUFFER_SIZE];
+	private int mPosition = 0, mLimit = 0;
+	
+	/** Last name read */
+	private final char[] mName = new char[MAX_NAME_LENGTH];
+	private int mNameLength;
+	/** True if last start tag read was closed by "/>" */
+	private boolean mIsEmptyElement;
+	
+	/**
+	 * Creates a reader, caller should close it
+	 */
+	public SceneXmlReader(Reader reader) {
+		mReader = reader;
+	}
+	
+	/**
+	 * Reads a whole scene. Listener is called as soon 
+	 * as each body is read.
+	 * 
+	 * @param reader	scene XML
+	 * @param listener	listener for bodies read
+	 * @return false if reading was stopped by listener
+	 * @throws IOException if reader fails
+	 * @throws InvalidXmlException if XML isn't a valid scene
+	 */
+	public static boolean readScene(Reader reader, OnBodyReadListener listener) 
+			throws IOException, InvalidXmlException {
+		return new SceneXmlReader(reader).readScene(new SceneFile.ShapesBuilder(listener));
+	}
+	
+	/**
+	 * Reads a whole scene. Listener is called as soon as 
+	 * each body is read, before it's built.
+	 * 
+	 * @see #readScene(Reader, OnBodyReadListener)
+	 */
+	public static boolean readScene(Reader reader, OnShapeReadListener listener) 
+			throws IOException, InvalidXmlException {
+		return new SceneXmlReader(reader).readScene(listener);
+	}
+	
+	/**
+	 * Reads a whole scene
+	 * 
+	 * @see #readScene(Reader, OnShapeReadListener)
+	 */
+	public boolean readScene(OnShapeReadListener listener) 
+			throws IOException, InvalidXmlException {
+		if (readTag() || !nameEquals(TAG_FLINGBOX))
+			throw new InvalidXmlException("Scene start tag expected but " 
+					+ new String(mName, 0, mNameLength) + " found.");
+		finishStartTag();
+		if (mIsEmptyElement)
+			return true;
+		
+		for (int index = 0; ; index++) {
+			if (readTag()) {
+				expectName(TAG_FLINGBOX);
+				return true;
+			}
+			expectName(TAG_POLYGON);
+			finishStartTag();
+			if (!listener.onShapeRead(readPolygon(), index, -1))
+				return false;
+		}
+	}
+	
+	/**
+	 * Reads polygon's content and end tag
+	 */
+	private PolygonBuilder.Shape readPolygon() throws IOException, InvalidXmlException {
+		Vector2D[] points = null;
+		final Vector2D centroid = new Vector2D();
+		boolean isFixed = false;
+		float angle = 0f;
+		
+		if (mIsEmptyElement)
+			throw new InvalidXmlException("polygon without contour");
+		for (;;) {
+			if (readTag()) {
+				expectName(TAG_POLYGON);
+				break;
+			}
+			if (nameEquals(TAG_CONTOUR)) {
+				if (!readAttributeName(ATTRIBUTE_POINTS_COUNT))
+					throw new InvalidXmlException("pointsCount expected in contour");
+				final int pointsCount = readIntValue();
+				if (pointsCount < 0)
+					throw new InvalidXmlException("Invalid pointsCount: " + pointsCount);
+				finishStartTag();
+				final boolean isEmptyContour = mIsEmptyElement;
+				points = new Vector2D[pointsCount];
+				for (int i = 0; i < pointsCount; i++) {
+					if (readTag() || !nameEquals(TAG_POINT))
+						throw new InvalidXmlException("point start tag expected");
+					points[i] = new Vector2D();
+					readPoint(points[i]);
+					finishElement(TAG_POINT);
+				}
+				mIsEmptyElement = isEmptyContour;
+				finishElement(TAG_CONTOUR);
+			} else if (nameEquals(TAG_POSITION)) {
+				readPoint(centroid);
+				finishElement(TAG_POSITION);
+			} else if (nameEquals(TAG_ANGLE)) {
+				if (!readAttributeName(ATTRIBUTE_VALUE))
+					throw new InvalidXmlException("value expected in angle");
+				angle = readFloatValue();
+				finishStartTag();
+				finishElement(TAG_ANGLE);
+			} else if (nameEquals(TAG_FIXED)) {
+				if (!readAttributeName(ATTRIBUTE_VALUE))
+					throw new InvalidXmlException("value expected in fixed");
+				isFixed = readIntValue() != 0;
+				finishStartTag();
+				finishElement(TAG_FIXED);
+			} else
+				throw new InvalidXmlException("unknown tag found: " 
+						+ new String(mName, 0, mNameLength));
+		}
+		if (points == null || points.length < 3)
+			throw new InvalidXmlException("polygon without enough points");
+		
+		/* Polygon is built later, maybe in parallel */
+		final PolygonBuilder.Shape shape = new PolygonBuilder.Shape();
+		shape.contour = new PackedPolygon(points);
+		shape.position.set(centroid);
+		shape.angle = angle;
+		shape.isFixed = isFixed;
+		return shape;
+	}
+	
+	/**
+	 * Reads x and y attributes, in any order, and closes start tag
+	 */
+	private void readPoint(Vector2D point) throws IOException, InvalidXmlException {
+		while (readAttributeName(null)) {
+			if (nameEquals(ATTRIBUTE_X))
+				point.i = readFloatValue();
+			else if (nameEquals(ATTRIBUTE_Y))
+				point.j = readFloatValue();
+			else
+				skipValue();
+		}
+	}
+	
+	/**
+	 * Reads an end tag if last element wasn't empty
+	 * 
+	 * @param name expected name
+	 */
+	private void finishElement(String name) throws IOException, InvalidXmlException {
+		if (mIsEmptyElement)
+			return;
+		if (!readTag())
+			throw new InvalidXmlException(name + " end tag expected");
+		expectName(name);
+	}
+	
+	/**
+	 * Skips remaining attributes of current start tag
+	 */
+	private void finishStartTag() throws IOException, InvalidXmlException {
+		while (readAttributeName(null))
+			skipValue();
+	}
+	
+	/**
+	 * Reads next tag name, skipping whitespace, prolog and comments.
+	 * Start tag attributes are left to be read.
+	 * 
+	 * @return true if it is an end tag
+	 */
+	private boolean readTag() throws IOException, InvalidXmlException {
+		for (;;) {
+			skipWhitespace();
+			if (read() != '<')
+				throw new InvalidXmlException("Tag expected");
+			final int c = peek();
+			if (c == '?') {
+				skipPast('?', '>');
+			} else if (c == '!') {
+				read();
+				if (peek() == '-')
+					skipPast('-', '>'); // Comment
+				else
+					for (int d = read(); d != '>'; d = read()) // Declaration
+						if (d == -1)
+							throw new InvalidXmlException("Unexpected end of file");
+			} else if (c == '/') {
+				read();
+				readName();
+				skipWhitespace();
+				if (read() != '>')
+					throw new InvalidXmlException("Malformed end tag");
+				mIsEmptyElement = false;
+				return true;
+			} else {
+				readName();
+				mIsEmptyElement = false;
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Reads next attribute name of current start tag. When tag 
+	 * ends, sets {@link #mIsEmptyElement} and returns false.
+	 * 
+	 * @param expected expected name, null if any
+	 * @return false if there are no more attributes
+	 */
+	private boolean readAttributeName(String expected) throws IOException, InvalidXmlException {
+		skipWhitespace();
+		final int c = peek();
+		if (c == '/') {
+			read();
+			if (read() != '>')
+				throw new InvalidXmlException("Malformed empty tag");
+			mIsEmptyElement = true;
+			return false;
+		} else if (c == '>') {
+			read();
+			mIsEmptyElement = false;
+			return false;
+		}
+		readName();
+		skipWhitespace();
+		if (read() != '=')
+			throw new InvalidXmlException("= expected after attribute name");
+		skipWhitespace();
+		if (expected != null && !nameEquals(expected))
+			throw new InvalidXmlException(expected + " attribute expected");
+		return true;
+	}
+	
+	/**
+	 * Reads a name into {@link #mName}
+	 */
+	private void readName() throws IOException, InvalidXmlException {
+		int length = 0;
+		for (int c = peek(); c != -1; c = peek()) {
+			if (c == '>' || c == '/' || c == '=' || c <= ' ')
+				break;
+			if (length == MAX_NAME_LENGTH)
+				throw new InvalidXmlException("Name too long");
+			mName[length++] = (char) read();
+		}
+		if (length == 0)
+			throw new InvalidXmlException("Name expected");
+		mNameLength = length;
+	}
+	
+	/**
+	 * @return true if last name read equals given one
+	 */
+	private boolean nameEquals(String name) {
+		final int length = mNameLength;
+		if (name.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (mName[i] != name.charAt(i))
+				return false;
+		return true;
+	}
+	
+	private void expectName(String name) throws InvalidXmlException {
+		if (!nameEquals(name))
+			throw new InvalidXmlException(name + " tag expected but " 
+					+ new String(mName, 0, mNameLength) + " found.");
+	}
+	
+	/**
+	 * Skips a quoted attribute value
+	 */
+	private void skipValue() throws IOException, InvalidXmlException {
+		final int quote = read();
+		if (quote != '"' && quote != '\'')
+			throw new InvalidXmlException("Quoted value expected");
+		for (int c = read(); c != quote; c = read())
+			if (c == -1)
+				throw new InvalidXmlException("Unexpected end of file");
+	}
+	
+	/**
+	 * Parses a quoted integer value
+	 */
+	private int readIntValue() throws IOException, InvalidXmlException {
+		final int quote = read();
+		if (quote != '"' && quote != '\'')
+			throw new InvalidXmlException("Quoted value expected");
+		skipWhitespace();
+		boolean negative = false;
+		if (peek() == '-' || peek() == '+')
+			negative = read() == '-';
+		long value = 0;
+		int digits = 0;
+		for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+			value = 10 * value + (read() - '0');
+			if (value > Integer.MAX_VALUE)
+				throw new InvalidXmlException("Integer too big");
+			digits++;
+		}
+		skipWhitespace();
+		if (digits == 0 || read() != quote)
+			throw new InvalidXmlException("Invalid integer value");
+		return (int) (negative ? -value : value);
+	}
+	
+	/**
+	 * Parses a quoted float value, in any format 
+	 * accepted by {@link Float#parseFloat(String)}
+	 */
+	private float readFloatValue() throws IOException, InvalidXmlException {
+		final int quote = read();
+		if (quote != '"' && quote != '\'')
+			throw new InvalidXmlException("Quoted value expected");
+		skipWhitespace();
+		boolean negative = false;
+		if (peek() == '-' || peek() == '+')
+			negative = read() == '-';
+		
+		float value;
+		if (peek() == 'N') {
+			expectWord("NaN");
+			value = Float.NaN;
+		} else if (peek() == 'I') {
+			expectWord("Infinity");
+			value = Float.POSITIVE_INFINITY;
+		} else {
+			long mantissa = 0;
+			int digits = 0, exponent = 0;
+			boolean anyDigit = false;
+			/* Integer part */
+			for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+				read();
+				anyDigit = true;
+				if (digits < MAX_DIGITS) {
+					mantissa = 10 * mantissa + (c - '0');
+					if (mantissa != 0)
+						digits++;
+				} else
+					exponent++; // Digit lost
+			}
+			/* Fraction */
+			if (peek() == '.') {
+				read();
+				for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+					read();
+					anyDigit = true;
+					if (digits < MAX_DIGITS) {
+						mantissa = 10 * mantissa + (c - '0');
+						if (mantissa != 0)
+							digits++;
+						exponent--;
+					}
+				}
+			}
+			if (!anyDigit)
+				throw new InvalidXmlException("Invalid float value");
+			/* Exponent */
+			if (peek() == 'e' || peek() == 'E') {
+				read();
+				boolean negativeExponent = false;
+				if (peek() == '-' || peek() == '+')
+					negativeExponent = read() == '-';
+				int e = 0;
+				boolean anyExponentDigit = false;
+				for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+					read();
+					anyExponentDigit = true;
+					if (e < 10000)
+						e = 10 * e + (c - '0');
+				}
+				if (!anyExponentDigit)
+					throw new InvalidXmlException("Invalid float exponent");
+				exponent += negativeExponent ? -e : e;
+			}
+			/* Optional type suffix, also accepted by Float.parseFloat */
+			if (peek() == 'f' || peek() == 'F' || peek() == 'd' || peek() == 'D')
+				read();
+			
+			double v = mantissa;
+			if (mantissa != 0) {
+				if (exponent < 0)
+					v = (-exponent < POWERS_OF_TEN.length) ? v / POWERS_OF_TEN[-exponent] 
+							: v / Math.pow(10d, -exponent);
+				else if (exponent > 0)
+					v = (exponent < POWERS_OF_TEN.length) ? v * POWERS_OF_TEN[exponent] 
+							: v * Math.pow(10d, exponent);
+			}
+			value = (float) v;
+		}
+		skipWhitespace();
+		if (read() != quote)
+			throw new InvalidXmlException("Invalid float value");
+		return negative ? -value : value;
+	}
+	
+	private void expectWord(String word) throws IOException, InvalidXmlException {
+		for (int i = 0; i < word.length(); i++)
+			if (read() != word.charAt(i))
+				throw new InvalidXmlException("Invalid float value");
+	}
+	
+	/**
+	 * Skips chars until first and last are found together
+	 */
+	private void skipPast(int first, int last) throws IOException, InvalidXmlException {
+		int previous = -1;
+		for (int c = read(); ; c = read()) {
+			if (c == -1)
+				throw new InvalidXmlException("Unexpected end of file");
+			if (c == last && previous == first)
+				return;
+			previous = c;
+		}
+	}
+	
+	private void skipWhitespace() throws IOException {
+		for (int c = peek(); c != -1 && c <= ' '; c = peek())
+			mPosition++;
+	}
+	
+	/**
+	 * @return next char, without consuming it. -1 at end of file
+	 */
+	private int peek() throws IOException {
+		if (mPosition == mLimit && !fill())
+			return -1;
+		return mBuffer[mPosition];
+	}
+	
+	/**
+	 * @return next char. -1 at end of file
+	 */
+	private int read() throws IOException {
+		if (mPosition == mLimit && !fill())
+			return -1;
+		return mBuffer[mPosition++];
+	}
+	
+	/**
+	 * Refills buffer
+	 * 
+	 * @return false at end of file
+	 */
+	private boolean fill() throws IOException {
+		final int read = mReader.read(mBuffer, 0, BUFFER_SIZE);
+		if (read <= 0)
+			return false;
+		mPosition = 0;
+		mLimit = read;
+		return true;
+	}
+}
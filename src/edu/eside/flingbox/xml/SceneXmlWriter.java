@@ -0,0 +1,265 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.xml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import edu.eside.flingbox.bodies.Body;
+import edu.eside.flingbox.bodies.Polygon;
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.physics.PhysicBody;
+
+/**
+ * Streaming writer specialized in flingbox scenes. Output is 
+ * the same XML written by {@link Polygon#writeXml(org.xmlpull.v1.XmlSerializer)}, 
+ * but it's written into a char buffer and floats are formatted 
+ * directly into it, without creating strings.
+ */
+public class SceneXmlWriter {
+	private final static String PROLOG = "<?xml version='1.0' encoding='UTF-8' standalone='yes' ?>";
+	
+	private final static int BUFFER_SIZE = 8192;
+	/** Significant digits written. 9 are always enough to read back same float */
+	private final static int MIN_SIGNIFICANT_DIGITS = 6;
+	private final static int MAX_SIGNIFICANT_DIGITS = 9;
+	private final static long[] POWERS_OF_TEN = new long[MAX_SIGNIFICANT_DIGITS + 1];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+	
+	private final Writer mWriter;
+	private final char[] mBuffer = new char[BUFFER_SIZE];
+	private int mPosition = 0;
+	/** Digits of number being written */
+	private final char[] mDigits = new char[20];
+	
+	/**
+	 * Creates a writer. Caller should close writer.
+	 */
+	public SceneXmlWriter(Writer writer) {
+		mWriter = writer;
+	}
+	
+	/**
+	 * Writes a whole scene. Only polygons are written.
+	 * 
+	 * @param writer	output
+	 * @param bodies	bodies on scene
+	 * @throws IOException if writer fails
+	 */
+	public static void writeScene(Writer writer, List<Body> bodies) throws IOException {
+		new SceneXmlWriter(writer).writeScene(bodies);
+	}
+	
+	/**
+	 * Writes a whole scene and flushes it
+	 * 
+	 * @see #writeScene(Writer, List)
+	 */
+	public void writeScene(List<Body> bodies) throws IOException {
+		append(PROLOG);
+		append("<flingbox>");
+		for (int i = 0, n = bodies.size(); i < n; i++)
+			if (bodies.get(i) instanceof Polygon)
+				writePolygon((Polygon) bodies.get(i));
+		append("</flingbox>");
+		flush();
+	}
+	
+	/**
+	 * Writes a polygon element
+	 */
+	private void writePolygon(Polygon polygon) throws IOException {
+		final PackedPolygon points = polygon.getContour();
+		final PhysicBody physics = polygon.getPhysics();
+		
+		append("<polygon><contour pointsCount=\"");
+		append(points.getPointsCount());
+		append("\">");
+		for (int i = 0; i < points.getPointsCount(); i++) {
+			append("<point x=\"");
+			append(points.getX(i));
+			append("\" y=\"");
+			append(points.getY(i));
+			append("\" />");
+		}
+		append("</contour><position x=\"");
+		append(physics.getPosition().i);
+		append("\" y=\"");
+		append(physics.getPosition().j);
+		append("\" /><angle value=\"");
+		append(physics.getAngle());
+		append("\" /><fixed value=\"");
+		append(physics.isFixed() ? 1 : 0);
+		append("\" /></polygon>");
+	}
+	
+	/**
+	 * Writes buffer content to writer
+	 */
+	public void flush() throws IOException {
+		mWriter.write(mBuffer, 0, mPosition);
+		mPosition = 0;
+		mWriter.flush();
+	}
+	
+	private void append(char c) throws IOException {
+		if (mPosition == BUFFER_SIZE) {
+			mWriter.write(mBuffer, 0, mPosition);
+			mPosition = 0;
+		}
+		mBuffer[mPosition++] = c;
+	}
+	
+	private void append(String s) throws IOException {
+		final int length = s.length();
+		for (int offset = 0; offset < length; ) {
+			if (mPosition == BUFFER_SIZE) {
+				mWriter.write(mBuffer, 0, mPosition);
+				mPosition = 0;
+			}
+			final int count = Math.min(length - offset, BUFFER_SIZE - mPosition);
+			s.getChars(offset, offset + count, mBuffer, mPosition);
+			mPosition += count;
+			offset += count;
+		}
+	}
+	
+	private void append(int value) throws IOException {
+		if (value < 0) {
+			append('-');
+			if (value == Integer.MIN_VALUE) {
+				append("2147483648");
+				return;
+			}
+			value = -value;
+		}
+		appendDigits(value, 0);
+	}
+	
+	/**
+	 * Writes digits of value, at least minDigits
+	 */
+	private void appendDigits(long value, int minDigits) throws IOException {
+		final char[] digits = mDigits;
+		int count = 0;
+		do {
+			digits[count++] = (char) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0 || count < minDigits);
+		while (count > 0)
+			append(digits[--count]);
+	}
+	
+	/**
+	 * Writes a float readable by {@link Float#parseFloat(String)}, 
+	 * in the same notation used by {@link Float#toString(float)}: 
+	 * decimal for magnitudes in [1e-3, 1e7), scientific else.
+	 */
+	private void append(float value) throws IOException {
+		if (value != value) {
+			append("NaN");
+			return;
+		}
+		if (Float.floatToIntBits(value) < 0) { // Negative, including -0
+			append('-');
+			value = -value;
+		}
+		if (value == Float.POSITIVE_INFINITY) {
+			append("Infinity");
+			return;
+		}
+		if (value == 0f) {
+			append("0.0");
+			return;
+		}
+		
+		/* Get decimal exponent */
+		final double v = value;
+		int exponent = (int) Math.floor(Math.log10(v));
+		final long significand9 = Math.round(scale(v, MAX_SIGNIFICANT_DIGITS - 1 - exponent));
+		if (significand9 >= 1000000000L) // log10 rounded down
+			exponent++;
+		else if (significand9 < 100000000L) // log10 rounded up
+			exponent--;
+		
+		/* Use the shortest significand that reads back same float */
+		long significand = 0;
+		int digitsCount;
+		for (digitsCount = MIN_SIGNIFICANT_DIGITS; ; digitsCount++) {
+			significand = Math.round(scale(v, digitsCount - 1 - exponent));
+			if (digitsCount == MAX_SIGNIFICANT_DIGITS
+					|| (float) scale(significand, exponent - digitsCount + 1) == value)
+				break;
+		}
+		if (significand >= POWERS_OF_TEN[digitsCount]) { // Rounded up to next power
+			significand /= 10;
+			exponent++;
+		}
+		while (digitsCount > 1 && significand % 10 == 0) {
+			significand /= 10;
+			digitsCount--;
+		}
+		
+		/* Split digits */
+		final char[] digits = mDigits;
+		for (int i = digitsCount - 1; i >= 0; i--) {
+			digits[i] = (char) ('0' + significand % 10);
+			significand /= 10;
+		}
+		
+		if (exponent >= -3 && exponent < 7) {
+			if (exponent >= 0) {
+				for (int i = 0; i <= exponent; i++)
+					append(i < digitsCount ? digits[i] : '0');
+				append('.');
+				if (digitsCount <= exponent + 1)
+					append('0');
+				for (int i = exponent + 1; i < digitsCount; i++)
+					append(digits[i]);
+			} else {
+				append("0.");
+				for (int i = -1; i > exponent; i--)
+					append('0');
+				for (int i = 0; i < digitsCount; i++)
+					append(digits[i]);
+			}
+		} else {
+			append(digits[0]);
+			append('.');
+			if (digitsCount == 1)
+				append('0');
+			for (int i = 1; i < digitsCount; i++)
+				append(digits[i]);
+			append('E');
+			append(exponent);
+		}
+	}
+	
+	/**
+	 * @return v * 10^power
+	 */
+	private static double scale(double v, int power) {
+		return power >= 0 ? v * Math.pow(10d, power) : v / Math.pow(10d, -power);
+	}
+}
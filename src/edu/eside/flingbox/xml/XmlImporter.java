@@ -37,8 +37,8 @@ public class XmlImporter {
 		XmlPullParser parser = Xml.newPullParser();
 		try {
 			parser.setInput(reader);
-			while (parser.getEventType() != XmlPullParser.START_DOCUMENT) { }
-			if (parser.next() != XmlPullParser.END_DOCUMENT)
+			if (parser.getEventType() == XmlPullParser.START_DOCUMENT 
+					&& parser.next() != XmlPullParser.END_DOCUMENT)
 				success |= parseable.readXml(parser);
 			
 		} catch (XmlPullParserException e) {
@@ -0,0 +1,100 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.io;
+
+import java.io.File;
+import java.io.FileReader;
+
+import edu.eside.flingbox.xml.SceneXmlReader;
+
+/**
+ * Compares load time of a scene as XML, read by 
+ * {@link SceneXmlReader}, as {@link SceneFile} and as 
+ * {@link CompressedSceneFile}. Times include building bodies.
+ * 
+ * Usage: SceneFileBenchmark scene.xml [iterations]
+ */
+public class SceneFileBenchmark {
+	
+	/** Only static methods */
+	private SceneFileBenchmark() { }
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: SceneFileBenchmark scene.xml [iterations]");
+			System.exit(2);
+		}
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		System.out.println(run(new File(args[0]), iterations));
+	}
+	
+	/**
+	 * Loads same scene from all formats. Binary scenes are 
+	 * converted from XML one into temporary files.
+	 * 
+	 * @param xmlFile		XML scene
+	 * @param iterations	loads of each format
+	 * @return summary of results
+	 * @throws Exception if any file can't be read or written
+	 */
+	public static String run(File xmlFile, int iterations) throws Exception {
+		final File binaryFile = File.createTempFile("scene", ".fbx");
+		final File compressedFile = File.createTempFile("scene", ".fbz");
+		try {
+			FileReader reader = new FileReader(xmlFile);
+			try {
+				SceneFile.fromXml(reader, binaryFile);
+			} finally {
+				reader.close();
+			}
+			CompressedSceneFile.write(compressedFile, SceneFile.read(binaryFile));
+			
+			int bodiesCount = 0;
+			long xmlTime = Long.MAX_VALUE, binaryTime = Long.MAX_VALUE, 
+				compressedTime = Long.MAX_VALUE;
+			for (int i = 0; i < iterations; i++) {
+				long start = System.nanoTime();
+				reader = new FileReader(xmlFile);
+				try {
+					SceneXmlReader.readScene(reader, new SceneFile.BodiesCollector());
+				} finally {
+					reader.close();
+				}
+				xmlTime = Math.min(xmlTime, System.nanoTime() - start);
+				
+				start = System.nanoTime();
+				bodiesCount = SceneFile.read(binaryFile).size();
+				binaryTime = Math.min(binaryTime, System.nanoTime() - start);
+				
+				start = System.nanoTime();
+				CompressedSceneFile.read(compressedFile);
+				compressedTime = Math.min(compressedTime, System.nanoTime() - start);
+			}
+			
+			return bodiesCount + " bodies, best of " + iterations + ":\n" 
+				+ "XML " + xmlFile.length() + " bytes in " + (xmlTime / 1000000) + " ms\n" 
+				+ "Binary " + binaryFile.length() + " bytes in " + (binaryTime / 1000000) + " ms\n" 
+				+ "Compressed " + compressedFile.length() + " bytes in " 
+				+ (compressedTime / 1000000) + " ms";
+		} finally {
+			binaryFile.delete();
+			compressedFile.delete();
+		}
+	}
+}
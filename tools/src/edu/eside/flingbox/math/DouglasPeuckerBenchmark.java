@@ -0,0 +1,83 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.math;
+
+import java.util.Random;
+
+/**
+ * Compares {@link PolygonUtils#douglasPeuckerReducer(Vector2D[], float)}
+ * with {@link DouglasPeuckerReducer} over long synthetic strokes.
+ * 
+ * Usage: DouglasPeuckerBenchmark [points [epsilon [iterations]]]
+ */
+public class DouglasPeuckerBenchmark {
+
+	/** Only static methods */
+	private DouglasPeuckerBenchmark() { }
+
+	public static void main(String[] args) {
+		final int pointsCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		final float epsilon = args.length > 1 ? Float.parseFloat(args[1]) : 2f;
+		final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		System.out.println(run(pointsCount, epsilon, iterations));
+	}
+
+	/**
+	 * Reduces the same noisy spiral stroke with both implementations.
+	 *
+	 * @param pointsCount	points of the stroke, such as 10000
+	 * @param epsilon		max distance to ignore a point
+	 * @param iterations	reductions with each implementation
+	 * @return summary of results
+	 */
+	public static String run(int pointsCount, float epsilon, int iterations) {
+		/* Same stroke each run */
+		final Random random = new Random(pointsCount);
+		final float[] xy = new float[2 * pointsCount];
+		for (int i = 0; i < pointsCount; i++) {
+			final double angle = 12.0 * Math.PI * i / pointsCount;
+			final double radius = 20.0 + 300.0 * i / pointsCount;
+			xy[2 * i] = (float) (radius * Math.cos(angle) + random.nextGaussian());
+			xy[2 * i + 1] = (float) (radius * Math.sin(angle) + random.nextGaussian());
+		}
+		final float[] result = new float[2 * pointsCount];
+		final DouglasPeuckerReducer reducer = new DouglasPeuckerReducer();
+
+		int vectorsKept = 0, arrayKept = 0;
+		long vectorsTime = 0, arrayTime = 0;
+		for (int i = 0; i < iterations; i++) {
+			/* Old reducer doesn't modify points, but it needs objects */
+			final Vector2D[] points = new Vector2D[pointsCount];
+			for (int j = 0; j < pointsCount; j++)
+				points[j] = new Vector2D(xy[2 * j], xy[2 * j + 1]);
+
+			long start = System.nanoTime();
+			vectorsKept = PolygonUtils.douglasPeuckerReducer(points, epsilon).length;
+			vectorsTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			arrayKept = reducer.reduce(xy, pointsCount, epsilon, result);
+			arrayTime += System.nanoTime() - start;
+		}
+
+		return pointsCount + " points, " + iterations + " iterations: "
+			+ "Vector2D[] " + (vectorsTime / 1000 / iterations) + " us (" + vectorsKept + " kept), "
+			+ "float[] " + (arrayTime / 1000 / iterations) + " us (" + arrayKept + " kept)";
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.physics;
+
+import edu.eside.flingbox.math.FastTrig;
+import edu.eside.flingbox.math.PackedPolygon;
+import edu.eside.flingbox.math.Rot2;
+import edu.eside.flingbox.math.Vector2D;
+import edu.eside.flingbox.physics.gravity.GravitySource;
+
+/**
+ * Compares exact and approximate rotations: cost of updating 
+ * rotations, cost of whole steps in a stacking test, and how 
+ * much the stacks differ. Contacts amplify any difference, so 
+ * differences are shown along the test, and also how many boxes 
+ * are still resting at the end.
+ * 
+ * Usage: CollisionBenchmark [columns [rows [steps]]]
+ */
+public class CollisionBenchmark {
+	/** Bodies don't need to notify anything */
+	private final static PhysicBody.OnMovementListener NO_LISTENER = 
+		new PhysicBody.OnMovementListener() {
+			public void onMovement(Vector2D position, float angle) { }
+		};
+	
+	/** Half side of stacked boxes */
+	private final static float BOX_SIZE = 40f;
+	
+	/** Only static methods */
+	private CollisionBenchmark() { }
+	
+	public static void main(String[] args) {
+		final int columnsCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		final int rowsCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		final int steps = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+		System.out.println(run(columnsCount, rowsCount, steps));
+	}
+	
+	/**
+	 * Runs the stacking test with both kinds of rotation.
+	 * 
+	 * @param columnsCount	columns of boxes, such as 4
+	 * @param rowsCount		boxes in each column, such as 8
+	 * @param steps			steps simulated, such as 500
+	 * @return summary of results
+	 */
+	public static String run(int columnsCount, int rowsCount, int steps) {
+		final StringBuilder summary = new StringBuilder();
+		summary.append("Table error: ").append(measureTableError())
+			.append(" (bound ").append(FastTrig.MAX_ERROR).append(")\n");
+		
+		/* Rotations alone, turning a little each time */
+		final int rotations = 100000;
+		final Rot2 rotation = new Rot2();
+		float sum = 0f;
+		long start = System.nanoTime();
+		for (int i = 0; i < rotations; i++)
+			sum += rotation.set(0.01f * i).cos;
+		final long exactTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < rotations; i++)
+			sum -= rotation.setApproximately(0.01f * i).cos;
+		final long approximateTime = System.nanoTime() - start;
+		summary.append("Rotation update: exact ").append(exactTime / rotations)
+			.append(" ns, approximate ").append(approximateTime / rotations)
+			.append(" ns, cosines differ by ").append(sum / rotations).append(" on average\n");
+		
+		/* Stacking test, same scene each time, simulated side by side */
+		final ScenePhysics exact = createStack(columnsCount, rowsCount, false);
+		final ScenePhysics approximate = createStack(columnsCount, rowsCount, true);
+		PhysicsSnapshot exactState = null, approximateState = null;
+		long exactStepTime = 0, approximateStepTime = 0;
+		for (int i = 1; i <= steps; i++) {
+			exactStepTime += step(exact);
+			approximateStepTime += step(approximate);
+			if (i % Math.max(1, steps / 5) == 0 || i == steps) {
+				exactState = exact.takeSnapshot(exactState);
+				approximateState = approximate.takeSnapshot(approximateState);
+				summary.append("Step ").append(i).append(": ");
+				appendDifference(summary, exactState, approximateState);
+			}
+		}
+		summary.append("Step time: exact ").append(exactStepTime / 1000 / steps)
+			.append(" us, approximate ").append(approximateStepTime / 1000 / steps)
+			.append(" us\n");
+		summary.append("Boxes resting: exact ").append(countResting(exactState, rowsCount))
+			.append(", approximate ").append(countResting(approximateState, rowsCount))
+			.append(" of ").append(columnsCount * rowsCount);
+		
+		return summary.toString();
+	}
+	
+	/**
+	 * Appends max position and angle differences. Bodies were added 
+	 * in the same order, so snapshots match by index.
+	 */
+	private static void appendDifference(StringBuilder summary, 
+			PhysicsSnapshot exact, PhysicsSnapshot approximate) {
+		final float[] exactValues = exact.values, approximateValues = approximate.values;
+		float maxPositionError = 0f, maxAngleError = 0f;
+		for (int i = 0; i < exact.bodiesCount; i++) {
+			final int offset = PhysicBody.STATE_SIZE * i;
+			final float dx = exactValues[offset] - approximateValues[offset];
+			final float dy = exactValues[offset + 1] - approximateValues[offset + 1];
+			maxPositionError = Math.max(maxPositionError, (float) Math.sqrt(dx * dx + dy * dy));
+			maxAngleError = Math.max(maxAngleError, 
+					Math.abs(exactValues[offset + 4] - approximateValues[offset + 4]));
+		}
+		summary.append("max position difference ").append(maxPositionError)
+			.append(", max angle difference ").append(maxAngleError).append('\n');
+	}
+	
+	/**
+	 * @return boxes over the ground, below stack's height and almost still
+	 */
+	private static int countResting(PhysicsSnapshot state, int rowsCount) {
+		final float[] values = state.values;
+		int resting = 0;
+		/* First body is the ground */
+		for (int i = 1; i < state.bodiesCount; i++) {
+			final int offset = PhysicBody.STATE_SIZE * i;
+			final float y = values[offset + 1];
+			final float vx = values[offset + 2], vy = values[offset + 3];
+			if (y > 0f && y < 2.1f * BOX_SIZE * (rowsCount + 1) 
+					&& vx * vx + vy * vy < BOX_SIZE * BOX_SIZE)
+				resting++;
+		}
+		return resting;
+	}
+	
+	/**
+	 * @return max difference of {@link FastTrig} with {@link StrictMath}
+	 */
+	private static float measureTableError() {
+		float maxError = 0f;
+		for (int i = -100000; i <= 100000; i++) {
+			final float angle = i * 1e-4f;
+			maxError = Math.max(maxError, Math.abs(FastTrig.sin(angle) - (float) StrictMath.sin(angle)));
+			maxError = Math.max(maxError, Math.abs(FastTrig.cos(angle) - (float) StrictMath.cos(angle)));
+		}
+		return maxError;
+	}
+	
+	/**
+	 * Creates columns of boxes over a fixed ground. Boxes are 
+	 * a bit shifted and turned, so they rotate while they settle.
+	 */
+	private static ScenePhysics createStack(int columnsCount, int rowsCount, boolean approximate) {
+		final ScenePhysics physics = new ScenePhysics(
+				GravitySource.getStaticGravity(0f, -9.8f));
+		physics.setApproximateRotations(approximate);
+		
+		final float size = BOX_SIZE;
+		final PhysicPolygon ground = createBox(0f, -size, 5f * size * columnsCount, size);
+		ground.setBodyFixed(true);
+		physics.add(ground);
+		for (int column = 0; column < columnsCount; column++)
+			for (int row = 0; row < rowsCount; row++) {
+				final float x = 3f * size * (column - columnsCount / 2) + (row % 2) * 0.2f * size;
+				final PhysicPolygon box = createBox(x, 2.1f * size * (row + 1), size, size);
+				box.setAngle(0.05f * ((row + column) % 3 - 1));
+				physics.add(box);
+			}
+		return physics;
+	}
+	
+	private static PhysicPolygon createBox(float x, float y, float halfWidth, float halfHeight) {
+		final PackedPolygon contour = new PackedPolygon(new float[] {
+				-halfWidth, -halfHeight, -halfWidth, halfHeight, 
+				halfWidth, halfHeight, halfWidth, -halfHeight }, 4);
+		return new PhysicPolygon(contour, 4f * halfWidth * halfHeight, 
+				new Vector2D(x, y), NO_LISTENER);
+	}
+	
+	/**
+	 * @return time spent simulating a step, in nanoseconds
+	 */
+	private static long step(ScenePhysics physics) {
+		final long start = System.nanoTime();
+		physics.step(ScenePhysics.FIXED_STEP_TIME, 0f, -9.8f * 80f);
+		return System.nanoTime() - start;
+	}
+}
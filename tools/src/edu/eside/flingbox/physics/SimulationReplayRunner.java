@@ -0,0 +1,61 @@
+/*
+ *  Flingbox - An OpenSource physics sandbox for Google's Android
+ *  Copyright (C) 2009  Jon Ander Peñalba & Endika Gutiérrez
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.eside.flingbox.physics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Headless runner of simulation logs written by 
+ * {@link SimulationRecorder}, such as flingbox/recording.fbr 
+ * recorded from the app's menu. Replays a log as many times as 
+ * requested, printing time spent and if final state matches 
+ * recorded one. Exits with 1 if it doesn't.
+ * 
+ * Usage: SimulationReplayRunner log [iterations]
+ */
+public class SimulationReplayRunner {
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: SimulationReplayRunner log [iterations]");
+			System.exit(2);
+		}
+		final File log = new File(args[0]);
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		
+		boolean matching = true;
+		long bestTime = Long.MAX_VALUE;
+		int stepsCount = 0;
+		for (int i = 0; i < iterations; i++) {
+			final SimulationReplayer replayer = new SimulationReplayer(
+					new FileInputStream(log), null);
+			final long startTime = System.nanoTime();
+			stepsCount = replayer.replayAll();
+			bestTime = Math.min(bestTime, System.nanoTime() - startTime);
+			matching &= replayer.isStateMatching();
+		}
+		System.out.println(stepsCount + " steps, best of " + iterations + ": " 
+				+ (bestTime / 1000000f) + " ms, " 
+				+ (bestTime / 1000f / Math.max(stepsCount, 1)) + " us/step");
+		System.out.println(matching ? "Final state matches" : "Final state DOESN'T match");
+		if (!matching)
+			System.exit(1);
+	}
+}